@@ -0,0 +1,151 @@
+package randomwebwalk;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import randomwebwalk.ui.WalkStatusDisplay;
+
+/**
+ *
+ * @author al
+ * Times the dwell on each page for every walker from one shared timer
+ * thread.
+ * A walker asks to dwell until a deadline (so the time taken by the step is
+ * taken off the dwell and the page changes keep a fixed cadence) and blocks
+ * until the timer wakes it or the dwell is cancelled by pause or stop - there
+ * is no polling.
+ * The count downs shown by all the walkers are updated by a single once a
+ * second tick.
+ * @invariant - the timer thread is a daemon so it does not keep the
+ * application alive.
+ */
+public class DwellScheduler {
+
+    private static final DwellScheduler SHARED = new DwellScheduler();
+    private static final long TICK_PERIOD = 1000;
+    private final ScheduledExecutorService theTimer;
+    private final Set<Dwell> theDwells = Collections.newSetFromMap(new ConcurrentHashMap<Dwell, Boolean>());
+    private ScheduledFuture<?> theTicker = null;
+
+    /**
+     * @return - the scheduler shared by all walkers in the process.
+     */
+    public static DwellScheduler getShared() {
+        return SHARED;
+    }
+
+    DwellScheduler() {
+        theTimer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+            public Thread newThread(Runnable theTask) {
+                Thread theThread = new Thread(theTask, "DwellTimer");
+                theThread.setDaemon(true);
+                return theThread;
+            }
+        });
+    }
+
+    /**
+     * @param theDeadline - when the dwell ends (ms since the epoch).
+     * @param theDisplay - shows the seconds remaining (or null).
+     * @return - the dwell (already timed, call await to wait for it).
+     */
+    public Dwell dwellUntil(long theDeadline, WalkStatusDisplay theDisplay) {
+        final Dwell theDwell = new Dwell(theDeadline, theDisplay);
+        long theDelay = theDeadline - System.currentTimeMillis();
+
+        if (theDelay <= 0) {
+            theDwell.wake();
+            return theDwell;
+        }
+
+        theDwells.add(theDwell);
+        startTicker();
+        theDwell.theWakeUp = theTimer.schedule(new Runnable() {
+
+            public void run() {
+                theDwells.remove(theDwell);
+                theDwell.wake();
+            }
+        }, theDelay, TimeUnit.MILLISECONDS);
+
+        return theDwell;
+    }
+
+    /**
+     * Starts the shared count down tick the first time it is needed.
+     */
+    private synchronized void startTicker() {
+        if (theTicker == null) {
+            theTicker = theTimer.scheduleAtFixedRate(new Runnable() {
+
+                public void run() {
+                    long theNow = System.currentTimeMillis();
+
+                    for (Dwell theDwell : theDwells) {
+                        theDwell.tick(theNow);
+                    }
+                }
+            }, TICK_PERIOD, TICK_PERIOD, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * A single walker's wait for its deadline.
+     */
+    public class Dwell {
+
+        private final long theDeadline;
+        private final WalkStatusDisplay theDisplay;
+        private final CountDownLatch theLatch = new CountDownLatch(1);
+        private volatile boolean isCancelled = false;
+        private volatile ScheduledFuture<?> theWakeUp = null;
+
+        Dwell(long newDeadline, WalkStatusDisplay newDisplay) {
+            theDeadline = newDeadline;
+            theDisplay = newDisplay;
+        }
+
+        /**
+         * @return - true if the deadline was reached, false if the dwell was
+         * cancelled.
+         * @throws InterruptedException - if the waiting thread is interrupted.
+         */
+        public boolean await() throws InterruptedException {
+            theLatch.await();
+            return !isCancelled;
+        }
+
+        /**
+         * @postcon - the waiting walker (if any) is woken at once.
+         */
+        public void cancel() {
+            isCancelled = true;
+            theDwells.remove(this);
+            ScheduledFuture<?> theTask = theWakeUp;
+
+            if (theTask != null) {
+                theTask.cancel(false);
+            }
+
+            wake();
+        }
+
+        private void wake() {
+            theLatch.countDown();
+        }
+
+        private void tick(long theNow) {
+            if (theDisplay != null) {
+                long theRemaining = (theDeadline - theNow + 500) / 1000;
+                theDisplay.setText("counter = " + Math.max(theRemaining, 0));
+            }
+        }
+    }
+}
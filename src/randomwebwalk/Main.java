@@ -54,8 +54,8 @@ public class Main {
 
         Logger theLogger = Main.makeLogger();
         RandomWebWalkUI theUI = new RandomWebWalkUI(images);
-        RandomWebWalkController theController = new RandomWebWalkController(properties, theLogger);
-        theUI.setController(theController);
+        WalkerFleet theFleet = new WalkerFleet(properties, theLogger);
+        theUI.setFleet(theFleet);
         theUI.start();
     }
 
@@ -1,10 +1,37 @@
 package randomwebwalk;
 
+import java.io.File;
+import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.Properties;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.ReentrantLock;
 import randomwebwalk.ui.PlayPauseDisplay;
 import randomwebwalk.ui.WalkStatusDisplay;
+import randomwebwalk.browser.BackendType;
+import randomwebwalk.browser.BloomFilter;
+import randomwebwalk.browser.BrowserPool;
+import randomwebwalk.browser.FailedUrlCache;
+import randomwebwalk.browser.HostScoreboard;
+import randomwebwalk.browser.LinkWeights;
+import randomwebwalk.browser.PageHistory;
+import randomwebwalk.browser.ProfileTemplateCache;
+import randomwebwalk.browser.UrlCanonicalizer;
+import randomwebwalk.browser.VisitedUrlSet;
+import randomwebwalk.dump.DumpArchive;
+import randomwebwalk.dump.FrameDeduplicator;
+import randomwebwalk.dump.ScreenDumper;
+import randomwebwalk.http.CandidateProber;
+import randomwebwalk.http.HttpFetcher;
+import randomwebwalk.http.HttpWalkRunner;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.openqa.selenium.WebDriverException;
@@ -23,15 +50,24 @@ public class RandomWebWalkController implements Runnable {
 
     private WalkStatusDisplay statusLabel = null; // status label passed from UI
     private PlayPauseDisplay playPauseDisplay = null; // play display passed from UI.
-    private final RandomWebWalkRunner theRunner;
+    private final WalkRunner theRunner;
     private final String idString;  // user id
     private final String passwordString; // corresponding password
     private volatile boolean taskStopped = false;
+    private final ReentrantLock theTaskLock = new ReentrantLock(); // serialises pause/stop without pinning a virtual thread
     private final int BETWEEN_PAGE_SLEEP_TIME; // time to wait between page refresh
     private final RandomWebWalkRunner.WalkType theType;
     private final Logger theLogger;
     private final String profileId; // the firefox profile identifier
     private String theBaseURL;  // the base URL 
+    private URL theStartURL = null; // start page from the properties (if any)
+    private volatile long theStepCount = 0; // steps taken (written by the walk thread only)
+    private final DwellScheduler theDwellScheduler = DwellScheduler.getShared();
+    private volatile DwellScheduler.Dwell theDwell = null; // current wait between pages
+    private final WalkerThreads.ExecutionMode theMode; // kind of thread for the preloader
+    private ExecutorService thePreloader = null; // runs the preload while the walk thread dwells (guarded by theTaskLock)
+    private Future<?> theBusyPreload = null; // an abandoned preload still on the browser (walk thread only)
+    private static final long PRELOAD_ABORT_LIMIT = 2000; // ms for an abandoned preload to return
 
     /**
      *
@@ -44,6 +80,7 @@ public class RandomWebWalkController implements Runnable {
     public RandomWebWalkController(Properties properties,
             Logger newLogger) throws MalformedURLException {
         theLogger = newLogger;
+        theMode = WalkerThreads.parseMode(properties.getProperty("ExecutionMode"), theLogger);
 
         // Type R(andom article), S(tumble upon), F(ree), (T)Trail
         String typeString = properties.getProperty("Type", "F");
@@ -68,7 +105,33 @@ public class RandomWebWalkController implements Runnable {
         }
          
         String trailFile = properties.getProperty("TrailFileName", "");
-        theRunner = new RandomWebWalkRunner(theType, trailFile, theLogger);
+        profileId = properties.getProperty("ProfileId");
+        String engineString = properties.getProperty("Engine", "browser").trim();
+
+        if (engineString.equalsIgnoreCase("http")
+                && (theType == RandomWebWalkRunner.WalkType.free
+                || theType == RandomWebWalkRunner.WalkType.trail)) {
+            HttpWalkRunner theHttpRunner = new HttpWalkRunner(theType, trailFile, theLogger);
+            String connectTimeoutString = properties.getProperty("HttpConnectTimeout");
+            String readTimeoutString = properties.getProperty("HttpReadTimeout");
+
+            if (connectTimeoutString != null || readTimeoutString != null) {
+                theHttpRunner.setFetcher(new HttpFetcher(
+                        connectTimeoutString == null ? HttpFetcher.CONNECT_TIMEOUT : Integer.parseInt(connectTimeoutString.trim()),
+                        readTimeoutString == null ? HttpFetcher.READ_TIMEOUT : Integer.parseInt(readTimeoutString.trim())));
+            }
+
+            theRunner = theHttpRunner;
+        } else {
+            if (!engineString.equalsIgnoreCase("browser")) {
+                theLogger.log(Level.WARNING, "Engine {0} can not walk {1} - using browser",
+                        new Object[]{engineString, theType});
+            }
+
+            RandomWebWalkRunner theBrowserRunner = new RandomWebWalkRunner(theType, trailFile, theLogger);
+            configureBrowserRunner(theBrowserRunner, properties);
+            theRunner = theBrowserRunner;
+        }
 
         idString = properties.getProperty("UserId");
         passwordString = properties.getProperty("Password");
@@ -82,19 +145,167 @@ public class RandomWebWalkController implements Runnable {
             BETWEEN_PAGE_SLEEP_TIME = 25;
         }
 
-        profileId = properties.getProperty("ProfileId");
-            
-        String shouldDumpScreenString = properties.getProperty("ShouldDumpScreen", "false");
-        
-        if(shouldDumpScreenString.equalsIgnoreCase("true")){
-            theRunner.setShouldDump(true);
+        theRunner.setCanonicalizer(new UrlCanonicalizer(properties.getProperty("TrackingParams",
+                UrlCanonicalizer.DEFAULT_TRACKING_PARAMS)));
+        theRunner.setVisitedUrls(makeVisitedUrls(properties));
+
+        int historyLimit = Integer.parseInt(properties.getProperty("HistoryLimit", "1000").trim());
+        String historySpillFile = properties.getProperty("HistorySpillFile");
+        theRunner.setHistory(new PageHistory(historyLimit,
+                historySpillFile == null ? null : new File(historySpillFile.trim())));
+
+        if (properties.getProperty("RememberFailedUrls", "true").trim().equalsIgnoreCase("true")) {
+            theRunner.setFailedUrls(FailedUrlCache.getShared());
+        }
+
+        String seedString = properties.getProperty("Seed");
+
+        if (seedString != null) {
+            theRunner.setSeed(Long.parseLong(seedString.trim()));
+        }
+
+        String startURLString = properties.getProperty("StartURL");
+
+        if (startURLString != null) {
+            theStartURL = new URL(startURLString.trim());
         }
 	}
 
+    /**
+     * Sets up what only a browser walk needs: the browser backend (launched
+     * in the background now if pooled) and the screen dumps.
+     * @param theBrowserRunner - the runner being built.
+     * @param properties - got from the Random.properties file.
+     */
+    private void configureBrowserRunner(RandomWebWalkRunner theBrowserRunner,
+            Properties properties) {
+        String backendString = properties.getProperty("Backend", "firefox").trim();
+
+        BackendType theBackendType = BackendType.firefox;
+
+        try {
+            theBackendType = BackendType.valueOf(backendString);
+        } catch (IllegalArgumentException ex) {
+            theLogger.log(Level.WARNING, "Unknown Backend {0} - using firefox", backendString);
+        }
+
+        theBrowserRunner.setBackendType(theBackendType);
+        theBrowserRunner.setExecutionMode(theMode);
+        if (properties.getProperty("HostScoring", "true").trim().equalsIgnoreCase("true")) {
+            theBrowserRunner.setScoreboard(HostScoreboard.getShared());
+        }
+
+        String linkWeightsString = properties.getProperty("LinkWeights");
+
+        if (linkWeightsString != null) {
+            try {
+                theBrowserRunner.setLinkWeights(LinkWeights.parse(linkWeightsString));
+            } catch (IllegalArgumentException ex) {
+                theLogger.log(Level.WARNING, "Bad LinkWeights {0} - using {1}",
+                        new Object[]{linkWeightsString, LinkWeights.DEFAULT});
+            }
+        }
+
+        int probeCount = Integer.parseInt(properties.getProperty("ProbeLinks", "0").trim());
+
+        if (probeCount > 0) {
+            theBrowserRunner.setProber(new CandidateProber(probeCount, theLogger), probeCount);
+        }
+
+        theBrowserRunner.setShouldPreload(properties.getProperty("Preload", "false").trim().equalsIgnoreCase("true"));
+        String templateDirString = properties.getProperty("ProfileTemplateDir");
+
+        if (templateDirString != null) {
+            ProfileTemplateCache.getShared().setCacheDir(new File(templateDirString.trim()));
+        }
+
+        if (properties.getProperty("BrowserPool", "true").trim().equalsIgnoreCase("true")) {
+            BrowserPool.getShared().setReusing(properties.getProperty("BrowserPoolReuse", "false").trim().equalsIgnoreCase("true"));
+            BrowserPool.getShared().reserve(theBackendType, profileId);
+            theBrowserRunner.setBrowserPool(BrowserPool.getShared());
+        }
+
+        theBrowserRunner.setDumpDirBase(properties.getProperty("DumpDir", "./dumpDir").trim());
+        String shouldDumpScreenString = properties.getProperty("ShouldDumpScreen", "false");
+
+        if (shouldDumpScreenString.equalsIgnoreCase("true")) {
+            theBrowserRunner.setScreenDumper(makeScreenDumper(properties));
+            theBrowserRunner.setShouldDump(true);
+        }
+    }
+
+    /**
+     * @param properties - got from the Random.properties file.
+     * @return - the set of visited URLs holding at most VisitedLimit URLs in
+     * memory and, if VisitedBloomFile is set, backed by a Bloom filter of
+     * VisitedBloomBits bits persisted in that file.
+     */
+    private VisitedUrlSet makeVisitedUrls(Properties properties) {
+        int visitedLimit = Integer.parseInt(properties.getProperty("VisitedLimit", "1000000").trim());
+        String bloomFileName = properties.getProperty("VisitedBloomFile");
+        BloomFilter theBloomFilter = null;
+
+        if (bloomFileName != null) {
+            long bloomBits = Long.parseLong(properties.getProperty("VisitedBloomBits", "134217728").trim());
+
+            try {
+                theBloomFilter = new BloomFilter(new File(bloomFileName.trim()), bloomBits);
+            } catch (IOException ex) {
+                theLogger.log(Level.WARNING, "Can not open visited file - not persisting", ex);
+            }
+        }
+
+        return new VisitedUrlSet(visitedLimit, theBloomFilter);
+    }
+
+    /**
+     * @param properties - got from the Random.properties file.
+     * @return - the pipeline for writing screen dumps as configured by the
+     * DumpQueueSize, DumpQueuePolicy (block, dropOldest or sample) and
+     * DumpWriterThreads properties. If DumpDedupDistance is set frames within
+     * that Hamming distance of one of the last DumpDedupWindow frames are
+     * stored as references. If DumpFormat is archive the frames are appended
+     * to the archive in DumpArchiveDir rather than written as png files.
+     */
+    private ScreenDumper makeScreenDumper(Properties properties) {
+        int queueSize = Integer.parseInt(properties.getProperty("DumpQueueSize", "16"));
+        int writerThreads = Integer.parseInt(properties.getProperty("DumpWriterThreads", "1"));
+        String policyString = properties.getProperty("DumpQueuePolicy", "block");
+        ScreenDumper.BackpressurePolicy thePolicy = ScreenDumper.BackpressurePolicy.block;
+
+        try {
+            thePolicy = ScreenDumper.BackpressurePolicy.valueOf(policyString);
+        } catch (IllegalArgumentException ex) {
+            theLogger.log(Level.WARNING, "Unknown DumpQueuePolicy {0} - using block", policyString);
+        }
+
+        ScreenDumper theDumper = new ScreenDumper(queueSize, thePolicy, writerThreads, theLogger);
+        String dedupDistanceString = properties.getProperty("DumpDedupDistance");
+
+        if (dedupDistanceString != null) {
+            int dedupDistance = Integer.parseInt(dedupDistanceString.trim());
+            int dedupWindow = Integer.parseInt(properties.getProperty("DumpDedupWindow", "32").trim());
+            theDumper.setDeduplicator(new FrameDeduplicator(dedupDistance, dedupWindow));
+        }
+
+        if (properties.getProperty("DumpFormat", "png").trim().equalsIgnoreCase("archive")) {
+            String archiveDir = properties.getProperty("DumpArchiveDir", "./dumpArchive").trim();
+
+            try {
+                theDumper.setArchive(new DumpArchive(new File(archiveDir)));
+            } catch (IOException ex) {
+                theLogger.log(Level.WARNING, "Can not open dump archive - dumping to png files", ex);
+            }
+        }
+
+        return theDumper;
+    }
+
     /**
      * starts the walker thread running (so calls start up and controls stepping).
      * @precon - as per invariant
      * @postcon - that the walker thread has finished.
+     * @postcon - the preloader thread (if any) is shut down.
      * @postcon - as per invariant. 
      */
     public void run() {
@@ -102,6 +313,7 @@ public class RandomWebWalkController implements Runnable {
         taskStopped = false;
 
         try {
+            long theStepStart = System.currentTimeMillis();
             start();
 
             RandomWebWalkRunner.WalkStatus runnerStatus = theRunner.checkStatus();
@@ -111,11 +323,21 @@ public class RandomWebWalkController implements Runnable {
                 statusLabel.setText("Walking failed");
                 return;
             } else {
-                pauseBetweenPages(runnerStatus);
+                pauseBetweenPages(runnerStatus, theStepStart);
             }
 
             while (!isTaskStopped()) {
+                theStepStart = System.currentTimeMillis();
+
+                if (isPreloadBusy()) {
+                    // the browser is still held by an abandoned preload
+                    theLogger.log(Level.INFO, "Preload still busy - page change skipped");
+                    pauseBetweenPages(RandomWebWalkRunner.WalkStatus.successfulStep, theStepStart);
+                    continue;
+                }
+
                 step();
+                ++theStepCount;
 
                 RandomWebWalkRunner.WalkStatus stepRunnerStatus = theRunner.checkStatus();
 
@@ -127,7 +349,7 @@ public class RandomWebWalkController implements Runnable {
                         pauseTask();
                         statusLabel.setText("Walking complete");
                     } else {
-                        pauseBetweenPages(stepRunnerStatus);
+                        pauseBetweenPages(stepRunnerStatus, theStepStart);
                     }
                 }
             }
@@ -137,6 +359,8 @@ public class RandomWebWalkController implements Runnable {
         } catch (Exception ex) {
             theLogger.log(Level.SEVERE, null, ex);
             pauseTask();
+        } finally {
+            shutdownPreloader();
         }
     }
 
@@ -147,7 +371,7 @@ public class RandomWebWalkController implements Runnable {
      * @postcon - no change to internal state.
      * @postcon - as per invariant.
      */
-    public synchronized boolean isTaskStopped() {
+    public boolean isTaskStopped() {
         return taskStopped;
     }
 
@@ -159,6 +383,22 @@ public class RandomWebWalkController implements Runnable {
         statusLabel = theStatusDisplay;
     }
 
+    /**
+     *
+     * @return - the number of steps taken since this controller was made.
+     */
+    public long getStepCount() {
+        return theStepCount;
+    }
+
+    /**
+     *
+     * @return - the start page given by the StartURL property (or null).
+     */
+    public URL getStartURL() {
+        return theStartURL;
+    }
+
     /**
      * Sets the URL that the walker should initially connect to to the input.
      * @param newInitialURL - a valid URL to connect to.
@@ -208,6 +448,11 @@ public class RandomWebWalkController implements Runnable {
 
         theRunner.step();
 
+        if (isTaskStopped()) {
+            // paused or stopped during the step - no recovery
+            return;
+        }
+
         RandomWebWalkRunner.WalkStatus theStatus = theRunner.checkStatus();
 
         if (theStatus != RandomWebWalkRunner.WalkStatus.successfulStep) {
@@ -232,42 +477,171 @@ public class RandomWebWalkController implements Runnable {
     }
 
     /**
-     * Perform pause for the required time between page change.
+     * Dwell on the page until the deadline for the next page change (or
+     * until paused or stopped), preloading the next page meanwhile.
+     * The preload runs on the preloader thread so it can not hold the page
+     * change back: one still running when the dwell ends is abandoned.
+     * @param runnerStatus - the status of the step just taken.
+     * @param theStepStart - when the step started, the dwell is measured
+     * from here so that the time taken by the step does not add to it.
+     * @postcon - no preload is running, other than one left busy (see
+     * finishPreload).
      */
-    private void pauseBetweenPages(RandomWebWalkRunner.WalkStatus runnerStatus) throws InterruptedException {
+    private void pauseBetweenPages(RandomWebWalkRunner.WalkStatus runnerStatus,
+            long theStepStart) throws InterruptedException {
         if (runnerStatus == RandomWebWalkRunner.WalkStatus.successfulStep) {
-            int counter = 0;
-            while (counter++ < (BETWEEN_PAGE_SLEEP_TIME * 10)
-                    && !isTaskStopped()) {
-                Thread.sleep(100);
-
-                if (counter % 10 == 0) {
-                    int downCounter = BETWEEN_PAGE_SLEEP_TIME - (counter / 10);
-                    statusLabel.setText("counter = " + downCounter);
+            long theDeadline = theStepStart + BETWEEN_PAGE_SLEEP_TIME * 1000L;
+            theDwell = theDwellScheduler.dwellUntil(theDeadline, statusLabel);
+            Future<?> thePreload = null;
+
+            if (isTaskStopped()) {
+                theDwell.cancel();
+            } else if (theRunner.isPreloading() && !isPreloadBusy()) {
+                // the next page loads out of sight while this one is shown
+                thePreload = submitPreload();
+            }
+
+            try {
+                theDwell.await();
+            } finally {
+                if (thePreload != null) {
+                    finishPreload(thePreload);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return - the preload submitted to the preloader thread (made on first
+     * use, as a virtual thread if the ExecutionMode says so), or null if the
+     * walk has been stopped meanwhile.
+     */
+    private Future<?> submitPreload() {
+        theTaskLock.lock();
+
+        try {
+            if (isTaskStopped()) {
+                return null;
+            }
+
+            if (thePreloader == null) {
+                thePreloader = Executors.newSingleThreadExecutor(new ThreadFactory() {
+
+                    public Thread newThread(Runnable theTask) {
+                        Thread theThread = WalkerThreads.newThread(theTask, "Preloader", theMode, theLogger);
+                        theThread.setDaemon(true);
+                        return theThread;
+                    }
+                });
+            }
+
+            return thePreloader.submit(new Runnable() {
+
+                public void run() {
+                    theRunner.preload();
                 }
+            });
+        } finally {
+            theTaskLock.unlock();
+        }
+    }
+
+    /**
+     * @postcon - the preloader thread (if any) is shut down (interrupting a
+     * preload still running), a new one is made by the next preload.
+     */
+    private void shutdownPreloader() {
+        theTaskLock.lock();
+
+        try {
+            if (thePreloader != null) {
+                thePreloader.shutdownNow();
+                thePreloader = null;
             }
+        } finally {
+            theTaskLock.unlock();
+        }
+    }
+
+    /**
+     * @param thePreload - the preload started for the dwell just over.
+     * @postcon - the preload has returned (aborted if it was still running),
+     * or is left as the busy preload if it has not returned within
+     * PRELOAD_ABORT_LIMIT (an engine that can not stop a load concurrently
+     * finishes it first).
+     */
+    private void finishPreload(Future<?> thePreload) {
+        if (!thePreload.isDone()) {
+            theLogger.log(Level.INFO, "Preload still running at the end of the dwell - abandoned");
+            theRunner.abortPreload();
+        }
+
+        try {
+            // the browser is not to be used by the step until the preload is off it
+            thePreload.get(PRELOAD_ABORT_LIMIT, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException ex) {
+            theLogger.log(Level.WARNING, "Preload still busy {0}ms after abort",
+                    Long.valueOf(PRELOAD_ABORT_LIMIT));
+            theBusyPreload = thePreload;
+        } catch (CancellationException ex) {
+            // the preloader was shut down by a stop
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException ex) {
+            theLogger.log(Level.WARNING, "Preload failed", ex.getCause());
         }
     }
 
+    /**
+     * @return - whether an abandoned preload is still running, in which case
+     * the browser can not be used yet.
+     */
+    private boolean isPreloadBusy() {
+        if (theBusyPreload != null && theBusyPreload.isDone()) {
+            theBusyPreload = null;
+        }
+
+        return theBusyPreload != null;
+    }
+
     /**
      * Stops the current walk (should interrupt any current processing).
      */
-    public synchronized void stopTask() {
-        theLogger.log(Level.INFO, "Stopping");
-        pauseTask();
-        statusLabel.setText("Walking stopped");
-        theRunner.stop();
+    public void stopTask() {
+        theTaskLock.lock();
+
+        try {
+            theLogger.log(Level.INFO, "Stopping");
+            pauseTask();
+            statusLabel.setText("Walking stopped");
+            theRunner.stop();
+            shutdownPreloader();
+        } finally {
+            theTaskLock.unlock();
+        }
     }
 
     /**
      * Pause the current task (should interrupt any current processing).
      */
-    public synchronized void pauseTask() {
-        theLogger.log(Level.INFO, "Pausing");
-        taskStopped = true;
-        statusLabel.setText("Walking interrupted/paused");
-        playPauseDisplay.setToPlay();
-        theRunner.pause();
+    public void pauseTask() {
+        theTaskLock.lock();
+
+        try {
+            theLogger.log(Level.INFO, "Pausing");
+            taskStopped = true;
+            DwellScheduler.Dwell theCurrentDwell = theDwell;
+
+            if (theCurrentDwell != null) {
+                theCurrentDwell.cancel();
+            }
+
+            statusLabel.setText("Walking interrupted/paused");
+            playPauseDisplay.setToPlay();
+            theRunner.pause();
+        } finally {
+            theTaskLock.unlock();
+        }
     }
 
     /**
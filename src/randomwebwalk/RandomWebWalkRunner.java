@@ -9,14 +9,32 @@ import java.net.SocketTimeoutException;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.security.auth.login.LoginException;
 import org.openqa.selenium.WebDriverException;
+import randomwebwalk.browser.BackendType;
 import randomwebwalk.browser.Browser;
+import randomwebwalk.browser.BrowserBackend;
+import randomwebwalk.browser.BrowserPool;
+import randomwebwalk.browser.FailedUrlCache;
+import randomwebwalk.browser.HostScoreboard;
 import randomwebwalk.browser.Hyperlink;
+import randomwebwalk.browser.LanguageVerdict;
+import randomwebwalk.browser.LinkWeights;
 import randomwebwalk.browser.Page;
+import randomwebwalk.browser.PageHistory;
+import randomwebwalk.browser.PageLoadTimeoutException;
+import randomwebwalk.browser.UrlCanonicalizer;
+import randomwebwalk.browser.VisitedUrlSet;
+import randomwebwalk.dump.ScreenCapture;
+import randomwebwalk.dump.ScreenDumper;
+import randomwebwalk.http.CandidateProber;
+import randomwebwalk.http.ProbeResult;
 
 /**
  *
@@ -31,7 +49,7 @@ import randomwebwalk.browser.Page;
  * incorrect states (see precons below for more details).
  * Normally expect to have only one object of this class in a program.
  */
-public class RandomWebWalkRunner {
+public class RandomWebWalkRunner implements WalkRunner {
 
     // enum indication of the current status of the walk
     public enum WalkStatus {
@@ -57,7 +75,7 @@ public class RandomWebWalkRunner {
         free
     };
     
-    private Browser webBrowser = null;
+    private volatile Browser webBrowser = null; // read by pause/stop from other threads
     private final Logger theLogger;
     private WalkStatus walkStatus = WalkStatus.successfulStep;
     private int failureCount = 0;
@@ -72,6 +90,28 @@ public class RandomWebWalkRunner {
     private String dumpDirBase = "./dumpDir";
     private String dumpDirName = dumpDirBase;    
     private int dumpFileNumber = 1;
+    private ScreenDumper screenDumper = null; // writes the dumps off the walk thread
+    private VisitedUrlSet visitedUrls = new VisitedUrlSet(DEFAULT_VISITED_LIMIT, null);
+    private static final int DEFAULT_VISITED_LIMIT = 1000000;
+    private PageHistory theHistory = new PageHistory(DEFAULT_HISTORY_LIMIT, null);
+    private static final int DEFAULT_HISTORY_LIMIT = 1000;
+    private UrlCanonicalizer theCanonicalizer = new UrlCanonicalizer();
+    private Random theRandom = new Random(); // picks the links on free walks
+    private BackendType theBackendType = BackendType.firefox;
+    private WalkerThreads.ExecutionMode theMode = WalkerThreads.ExecutionMode.platform; // kind of thread driving the browser
+    private BrowserPool theBrowserPool = null; // null - launch a browser on every start up
+    private String theProfileId = null; // profile of the current browser
+    private boolean shouldPreload = false; // load the next page hidden during the dwell
+    private static final int PRELOAD_CANDIDATE_LIMIT = 3; // links tried per preload
+    private volatile boolean isPreloadAborted = false; // set until the preload running returns
+    private CandidateProber theProber = null; // null - links are followed unprobed
+    private int probeCandidateCount = 0; // links probed per choice
+    private static final long PROBE_TIME_LIMIT = 6000; // ms for all the probes of a choice
+    private HostScoreboard theScoreboard = null; // null - links are chosen unweighted
+    private FailedUrlCache theFailedUrls = null; // null - failures are not remembered
+    private LinkWeights theLinkWeights = LinkWeights.DEFAULT;
+    private long theTriedCount = 0; // links followed (or preloaded)
+    private long theSucceededCount = 0; // of which succeeded
 
     /**
      *
@@ -142,7 +182,26 @@ public class RandomWebWalkRunner {
             String passwordString,
             String profileId) throws WebDriverException {
         theLogger.log(Level.INFO, "Start up");
-        webBrowser = new Browser(profileId, theLogger);
+        long theStartTime = System.currentTimeMillis();
+        theProfileId = profileId;
+        BrowserBackend theBackend = theBrowserPool == null
+                ? theBackendType.create(profileId)
+                : theBrowserPool.acquire(theBackendType, profileId);
+        webBrowser = new Browser(theBackend, theLogger, visitedUrls, theHistory, theCanonicalizer, theMode);
+        webBrowser.setScoreboard(theScoreboard);
+        webBrowser.setFailedUrls(theFailedUrls);
+        webBrowser.setLinkWeights(theLinkWeights);
+        webBrowser.setSeed(theRandom.nextLong());
+
+        if (shouldDumpScreen) {
+            if (screenDumper.isArchiving()) {
+                // the archive numbers each walk's steps from one
+                dumpFileNumber = 1;
+            }
+
+            screenDumper.start();
+        }
+
         boolean isStumbleUpon = (theType == WalkType.stumbleUpon);
 
         try {
@@ -159,6 +218,8 @@ public class RandomWebWalkRunner {
                 webBrowser.goForward(link);
             }
             setStatus(WalkStatus.successfulStep);
+            theLogger.log(Level.INFO, "Time to first page {0}ms",
+                    Long.valueOf(System.currentTimeMillis() - theStartTime));
         } catch (LoginException ex) {
             theLogger.log(Level.SEVERE, null, ex);
             setStatus(WalkStatus.loginFailure);
@@ -166,7 +227,7 @@ public class RandomWebWalkRunner {
             if (isExceptionTimeout(theEx)) {
                 theLogger.log(Level.WARNING,
                         "Socket Timeout exception", theEx);
-                webBrowser.stopPageLoad();
+                stopTimedOutLoad(theEx);
                 setStatus(WalkStatus.pageTimedOut);
             } else {
                 throw theEx;
@@ -192,6 +253,7 @@ public class RandomWebWalkRunner {
      * @postcon - as per invariant/return value
      */
     public void restore() {
+        webBrowser.discardPreload();
         Page theCurrentPage = webBrowser.getCurrentPage();
 
         if (theCurrentPage == null) {
@@ -206,9 +268,16 @@ public class RandomWebWalkRunner {
     /**
      * @precon - as per invariant
      * @postcon - as per invariant
+     * @postcon - any driver command in progress is abandoned.
      * @postcon - the status is set to successful
      */
     public void pause() {
+        Browser theBrowser = webBrowser;
+
+        if (theBrowser != null) {
+            theBrowser.abort();
+        }
+
         setStatus(RandomWebWalkRunner.WalkStatus.successfulStep);
     }
 
@@ -226,20 +295,50 @@ public class RandomWebWalkRunner {
     /**
      * @precon - as per invariant
      * @postcon - loading of the page in the browser has been interrupted.
-     * @postcon - browser is closed.
+     * @postcon - browser is closed (or reset and returned to the pool).
+     * @postcon - the screen dumps queued are written (for a bounded time)
+     * and the dump archive is closed.
+     * @postcon - the prober's threads (if any) are finishing.
      */
     public void stop() {
         theLogger.log(Level.INFO, "Stop");
 
+        if (theTriedCount > 0) {
+            theLogger.log(Level.INFO, "{0} of {1} links followed succeeded, hosts: {2}", new Object[]{
+                        Long.valueOf(theSucceededCount), Long.valueOf(theTriedCount),
+                        theScoreboard == null ? "unscored" : theScoreboard});
+        }
+
         if (webBrowser != null) {
+            webBrowser.flushVisited();
+
             try {
-                webBrowser.quit();
+                if (theBrowserPool == null) {
+                    webBrowser.quit();
+                } else {
+                    BrowserBackend theBackend = webBrowser.detach();
+
+                    if (theBackend == null) {
+                        theBrowserPool.discard(theBackendType, theProfileId);
+                    } else {
+                        theBrowserPool.release(theBackendType, theProfileId, theBackend);
+                    }
+                }
             } catch (WebDriverException ex) {
                 theLogger.log(Level.INFO, "WebDriverException caught on trying to close down - ignored");
             }
             webBrowser = null;
         }
 
+        if (theProber != null) {
+            theProber.shutdown();
+        }
+
+        if (screenDumper != null) {
+            // the browser has gone so no more captures can be submitted
+            screenDumper.shutdown();
+        }
+
         setStatus(WalkStatus.successfulStep);
     }
 
@@ -255,10 +354,13 @@ public class RandomWebWalkRunner {
      */
     public void step() throws WebDriverException {
         theLogger.log(Level.INFO, "Step");
-        String currentPageURL = webBrowser.getCurrentPageURL();
+        String currentPageURL = getLastKnownURL();
 
         theLogger.log(Level.INFO, "Current page: {0}",
                 currentPageURL);
+        long theStepStart = System.currentTimeMillis();
+        String theTargetURL = null; // the link or trail URL followed
+
         try {
             Page webPage = webBrowser.getCurrentPage();
             Hyperlink link = null;
@@ -278,8 +380,10 @@ public class RandomWebWalkRunner {
                 break;
                 case trail: {
                     if (trailIterator != null){
-                       if(trailIterator.hasNext()) {
-                            String theURL = trailIterator.next().toString();
+                       String theURL = nextTrailURL();
+
+                       if(theURL != null) {
+                            theTargetURL = theURL;
                             webBrowser.gotoURL(theURL);
                         } else {
                          // todo - need to stop at end 
@@ -289,14 +393,21 @@ public class RandomWebWalkRunner {
                 }
                 break;
                 default: {
-                    if (shouldRandomize) {
-                        link = webPage.getRandomLink();
-                        if (webBrowser.hasAlreadyBeenVisited(link)) {
-                            link = webPage.getRandomLink();
+                    if (webBrowser.hasPreload()) {
+                        // already loaded and checked - just swap it in
+                        webBrowser.showPreload();
+                    } else {
+                        if (shouldRandomize) {
+                            link = chooseLink(webPage);
                         }
-                    }
 
-                    webBrowser.goForward(link);
+                        if (link != null) {
+                            theTargetURL = link.getHref();
+                            noteFollowed(theTargetURL);
+                            webBrowser.goForward(link);
+                        }
+                        // else nothing to follow - the checks below find a dead end
+                    }
                 }
                 break;
             }
@@ -306,10 +417,13 @@ public class RandomWebWalkRunner {
             theLogger.log(Level.INFO, "New page: {0}", newPageURL);
 
             if (theType == WalkType.free) {
-                if (!newPage.isInEnglish()) {
+                LanguageVerdict theVerdict = newPage.getLanguageVerdict();
+                theLogger.log(Level.INFO, "Facts: {0}", newPage.getFacts());
+
+                if (!theVerdict.isEnglish()) {
                     setStatus(WalkStatus.pageNotEnglish);
                 } else {
-                    if (currentPageURL.equalsIgnoreCase(newPage.getURL())
+                    if (webBrowser.isSameURL(currentPageURL, newPage.getURL())
                             || newPage.isDeadEnd()) {
                         setStatus(WalkStatus.pageDeadEnd);
                     } else {
@@ -327,22 +441,36 @@ public class RandomWebWalkRunner {
             if (isExceptionTimeout(theEx)) {
                 theLogger.log(Level.WARNING,
                         "Socket Timeout exception", theEx);
-                webBrowser.stopPageLoad();
+                stopTimedOutLoad(theEx);
                 setStatus(WalkStatus.pageTimedOut);
             } else {
                 throw theEx;
             }
         }
 
+        recordOutcome(theTargetURL, checkStatus(), System.currentTimeMillis() - theStepStart);
+
         if (checkStatus() == WalkStatus.successfulStep) {
             if(shouldDumpScreen){
-                String dumpFilePath = dumpDirName + "/dump" + Integer.toString(dumpFileNumber) + ".png";
+                File dumpFile = null;
+
+                if (!screenDumper.isArchiving()) {
+                    dumpFile = new File(dumpDirName + "/dump" + Integer.toString(dumpFileNumber) + ".png");
+                }
                 
                 try {
-                    webBrowser.dumpScreen(dumpFilePath);
-                    ++dumpFileNumber;
-                } catch (IOException ex) {
+                    byte[] theImage = webBrowser.captureScreen();
+
+                    if (theImage != null) {
+                        screenDumper.submit(new ScreenCapture(theImage,
+                                dumpFileNumber,
+                                dumpFile,
+                                webBrowser.getCurrentPage().getURL()));
+                        ++dumpFileNumber;
+                    }
+                } catch (InterruptedException ex) {
                     theLogger.log(Level.WARNING, null, ex);
+                    Thread.currentThread().interrupt();
                 }
             }
         } else {
@@ -352,6 +480,101 @@ public class RandomWebWalkRunner {
         }
     }
 
+    /**
+     * Loads the next page of a free walk in the hidden window while the
+     * current page is shown, trying a few links until one passes the
+     * language and dead end checks. Candidates that fail are never shown.
+     * Runs on the controller's preloader thread while the walk thread
+     * dwells, and can be cut short by abortPreload.
+     * @precon - as per invariant
+     * @postcon - the browser has a preloaded page (which the next step
+     * swaps in) or none (the next step follows a link as usual).
+     * @postcon - the status is unchanged.
+     */
+    public void preload() {
+        try {
+            preloadNext();
+        } finally {
+            isPreloadAborted = false;
+        }
+    }
+
+    /**
+     * @return - whether preloads are wanted and the walk type uses them.
+     */
+    public boolean isPreloading() {
+        return shouldPreload && theType == WalkType.free;
+    }
+
+    /**
+     * @postcon - the browser is stopped and no further candidates are tried.
+     */
+    public void abortPreload() {
+        isPreloadAborted = true;
+        Browser theBrowser = webBrowser;
+
+        if (theBrowser != null) {
+            theBrowser.abort();
+        }
+    }
+
+    private void preloadNext() {
+        if (!shouldPreload || theType != WalkType.free || webBrowser == null) {
+            return;
+        }
+
+        Page webPage = webBrowser.getCurrentPage();
+
+        if (webPage == null) {
+            return;
+        }
+
+        long theStart = System.currentTimeMillis();
+
+        for (int i = 0; i < PRELOAD_CANDIDATE_LIMIT && !isPreloadAborted; ++i) {
+            Hyperlink link = chooseLink(webPage);
+
+            if (link == null || isPreloadAborted) {
+                return;
+            }
+
+            long theLoadStart = System.currentTimeMillis();
+            noteFollowed(link.getHref());
+
+            try {
+                Page thePage = webBrowser.preload(link);
+                theLogger.log(Level.INFO, "Facts (preload): {0}", thePage.getFacts());
+                long theLoadTime = System.currentTimeMillis() - theLoadStart;
+
+                if (!thePage.getLanguageVerdict().isEnglish()) {
+                    theLogger.log(Level.INFO, "Preload not english: {0}", thePage.getURL());
+                    recordOutcome(link.getHref(), WalkStatus.pageNotEnglish, theLoadTime);
+                } else if (webBrowser.isSameURL(webPage.getURL(), thePage.getURL())
+                        || thePage.isDeadEnd()) {
+                    theLogger.log(Level.INFO, "Preload dead end: {0}", thePage.getURL());
+                    recordOutcome(link.getHref(), WalkStatus.pageDeadEnd, theLoadTime);
+                } else {
+                    theLogger.log(Level.INFO, "Preloaded {0} in {1}ms", new Object[]{
+                                thePage.getURL(), Long.valueOf(System.currentTimeMillis() - theStart)});
+                    recordOutcome(link.getHref(), WalkStatus.successfulStep, theLoadTime);
+                    return;
+                }
+            } catch (WebDriverException theEx) {
+                theLogger.log(Level.INFO, "Preload failed: {0}", theEx.getMessage());
+
+                if (isExceptionTimeout(theEx)) {
+                    recordOutcome(link.getHref(), WalkStatus.pageTimedOut, 0);
+                } else {
+                    // aborted (pause or stop) or the browser has gone
+                    webBrowser.discardPreload();
+                    return;
+                }
+            }
+
+            webBrowser.discardPreload();
+        }
+    }
+
     /**
      * causes the browser to refresh the current page.
      * @precon - as per invariant
@@ -360,7 +583,7 @@ public class RandomWebWalkRunner {
      */
     public void refresh() throws WebDriverException {
         theLogger.log(Level.INFO, "Refresh");
-        String currentPageURL = webBrowser.getCurrentPageURL();
+        String currentPageURL = getLastKnownURL();
 
         try {
             webBrowser.refresh();
@@ -371,10 +594,13 @@ public class RandomWebWalkRunner {
                     || theType == WalkType.stumbleUpon) {
                 setStatus(WalkStatus.successfulStep);
             } else {
-                if (!newPage.isInEnglish()) {
+                LanguageVerdict theVerdict = newPage.getLanguageVerdict();
+                theLogger.log(Level.INFO, "Facts: {0}", newPage.getFacts());
+
+                if (!theVerdict.isEnglish()) {
                     setStatus(WalkStatus.pageNotEnglish);
                 } else {
-                    if (currentPageURL.equalsIgnoreCase(newPage.getURL())
+                    if (webBrowser.isSameURL(currentPageURL, newPage.getURL())
                             || newPage.isDeadEnd()) {
                         setStatus(WalkStatus.pageDeadEnd);
                     } else {
@@ -386,7 +612,7 @@ public class RandomWebWalkRunner {
             if (isExceptionTimeout(theEx)) {
                 theLogger.log(Level.WARNING,
                         "Socket Timeout exception", theEx);
-                webBrowser.stopPageLoad();
+                stopTimedOutLoad(theEx);
                 setStatus(WalkStatus.pageTimedOut);
             } else {
                 throw theEx;
@@ -410,7 +636,7 @@ public class RandomWebWalkRunner {
             if (isExceptionTimeout(theEx)) {
                 theLogger.log(Level.WARNING,
                         "Socket Timeout exception", theEx);
-                webBrowser.stopPageLoad();
+                stopTimedOutLoad(theEx);
                 setStatus(WalkStatus.pageTimedOut);
             } else {
                 throw theEx;
@@ -474,12 +700,146 @@ public class RandomWebWalkRunner {
         walkStatus = newStatus;
     }
     
+    /**
+     * 
+     * @param newVisitedUrls - the set that records the URLs visited (which
+     * may hold URLs from earlier walks).
+     */
+    public void setVisitedUrls(VisitedUrlSet newVisitedUrls) {
+        visitedUrls = newVisitedUrls;
+    }
+
+    /**
+     * 
+     * @param newHistory - the history the pages visited are recorded in.
+     */
+    public void setHistory(PageHistory newHistory) {
+        theHistory = newHistory;
+    }
+
+    /**
+     * 
+     * @param newFailedUrls - the URLs that recently failed: never chosen as
+     * links or followed on a trail, and added to on every failure.
+     */
+    public void setFailedUrls(FailedUrlCache newFailedUrls) {
+        theFailedUrls = newFailedUrls;
+    }
+
+    /**
+     * 
+     * @param newLinkWeights - how the random choice of links is biased.
+     */
+    public void setLinkWeights(LinkWeights newLinkWeights) {
+        theLinkWeights = newLinkWeights;
+    }
+
+    /**
+     * 
+     * @param newBackendType - the browser engine started by startUp.
+     */
+    public void setBackendType(BackendType newBackendType) {
+        theBackendType = newBackendType;
+    }
+
+    /**
+     * 
+     * @param newMode - the kind of thread the browser's driver commands run
+     * on (as the walk thread itself).
+     */
+    public void setExecutionMode(WalkerThreads.ExecutionMode newMode) {
+        theMode = newMode;
+    }
+
+    /**
+     * 
+     * @param newBrowserPool - where startUp takes its browser from and stop
+     * returns it to (null to launch and quit a browser each time).
+     */
+    public void setBrowserPool(BrowserPool newBrowserPool) {
+        theBrowserPool = newBrowserPool;
+    }
+
+    /**
+     * 
+     * @param newScoreboard - how links to each host have gone, updated with
+     * every link followed and used to bias the choice of links (or null).
+     */
+    public void setScoreboard(HostScoreboard newScoreboard) {
+        theScoreboard = newScoreboard;
+    }
+
+    /**
+     * 
+     * @param newProber - probes candidate links before one is followed (or
+     * null to follow links unprobed). Probing takes up to PROBE_TIME_LIMIT
+     * of each step (or preload) and, as the dwell is measured from the start
+     * of the step, comes out of the time the page is shown - with a
+     * SleepTime below the limit a slow probe delays the next page.
+     * @param candidateCount - the number of links probed for each choice.
+     */
+    public void setProber(CandidateProber newProber, int candidateCount) {
+        theProber = newProber;
+        probeCandidateCount = Math.max(candidateCount, 1);
+    }
+
+    /**
+     * 
+     * @param newShouldPreload - whether free walks load the next page in a
+     * hidden window during the dwell (see preload).
+     */
+    public void setShouldPreload(boolean newShouldPreload) {
+        shouldPreload = newShouldPreload;
+    }
+
+    /**
+     * 
+     * @param theSeed - seed for the link choices so that a free walk can be
+     * repeated.
+     */
+    public void setSeed(long theSeed) {
+        theRandom = new Random(theSeed);
+    }
+
+    /**
+     * 
+     * @param newDumpDirBase - the dump directories are this name followed by
+     * a number.
+     */
+    public void setDumpDirBase(String newDumpDirBase) {
+        dumpDirBase = newDumpDirBase;
+        dumpDirName = dumpDirBase;
+    }
+
+    /**
+     * 
+     * @param newCanonicalizer - puts the URLs met on the walk into canonical
+     * form.
+     */
+    public void setCanonicalizer(UrlCanonicalizer newCanonicalizer) {
+        theCanonicalizer = newCanonicalizer;
+    }
+
+    /**
+     * 
+     * @param newScreenDumper - the pipeline that screen dumps are handed to.
+     */
+    public void setScreenDumper(ScreenDumper newScreenDumper) {
+        screenDumper = newScreenDumper;
+    }
+
     /**
      * 
      * @param shouldDumpScreen
+     * @precon - the screen dumper has been set.
+     * @postcon - if the dumper is archiving the dumps go to its archive
+     * otherwise to the next free dump directory.
      */
     public void setShouldDump(boolean shouldDumpScreen) {
-        if (shouldDumpScreen) {
+        if (shouldDumpScreen && screenDumper != null && screenDumper.isArchiving()) {
+            dumpFileNumber = 1;
+            this.shouldDumpScreen = shouldDumpScreen;
+        } else if (shouldDumpScreen && screenDumper != null) {
             boolean exists = true;
             int dirNumber = 1;
 
@@ -500,12 +860,179 @@ public class RandomWebWalkRunner {
         }
     }
 
+    /**
+     * @return - the URL of the last page successfully visited (from cache)
+     * or if there is none the URL the browser is pointing to.
+     * @precon - as per invariant
+     * @postcon - as per invariant/return value
+     */
+    private String getLastKnownURL() {
+        Page theCurrentPage = webBrowser.getCurrentPage();
+
+        if (theCurrentPage != null) {
+            return theCurrentPage.getURL();
+        }
+
+        return webBrowser.getCurrentPageURL();
+    }
+
+    /**
+     * @param theURL - a link about to be followed (or preloaded).
+     * @postcon - the scoreboard (if any) knows a link to its host is out.
+     */
+    private void noteFollowed(String theURL) {
+        if (theScoreboard != null) {
+            theScoreboard.noteFollowed(theURL);
+        }
+    }
+
+    /**
+     * @param theURL - a link whose probe found a failure.
+     * @param theOutcome - the failure.
+     */
+    private void recordProbe(String theURL, HostScoreboard.Outcome theOutcome) {
+        if (theScoreboard != null) {
+            theScoreboard.record(theURL, theOutcome, 0);
+        }
+
+        if (theFailedUrls != null) {
+            theFailedUrls.record(theCanonicalizer.fingerprint(theURL), theOutcome);
+        }
+    }
+
+    /**
+     * Adds the outcome of following a link to the scoreboard and the failed
+     * URLs (if there are any) and to the counts of steps tried and
+     * succeeded.
+     * @param theTargetURL - the link followed (or null if none was).
+     * @param theStatus - how it went.
+     * @param theLoadTime - how long it took (ms).
+     */
+    private void recordOutcome(String theTargetURL, WalkStatus theStatus, long theLoadTime) {
+        if (theTargetURL == null) {
+            return;
+        }
+
+        ++theTriedCount;
+
+        if (theStatus == WalkStatus.successfulStep) {
+            ++theSucceededCount;
+        }
+
+        HostScoreboard.Outcome theOutcome = null;
+
+        switch (theStatus) {
+            case successfulStep:
+                theOutcome = HostScoreboard.Outcome.success;
+                break;
+            case pageNotEnglish:
+                theOutcome = HostScoreboard.Outcome.notEnglish;
+                break;
+            case permissionDenied:
+                theOutcome = HostScoreboard.Outcome.permissionDenied;
+                break;
+            case pageTimedOut:
+                theOutcome = HostScoreboard.Outcome.timedOut;
+                break;
+            case pageNotFound:
+                theOutcome = HostScoreboard.Outcome.notFound;
+                break;
+            case pageDeadEnd:
+                theOutcome = HostScoreboard.Outcome.deadEnd;
+                break;
+        }
+
+        if (theOutcome == null) {
+            return;
+        }
+
+        if (theScoreboard != null) {
+            theScoreboard.record(theTargetURL, theOutcome, theLoadTime);
+        }
+
+        if (theFailedUrls != null) {
+            theFailedUrls.record(theCanonicalizer.fingerprint(theTargetURL), theOutcome);
+        }
+    }
+
+    /**
+     * @param webPage - the current page.
+     * @return - the link to follow: with a prober, the best of a few random
+     * links probed in parallel (null if none is predicted to succeed),
+     * otherwise a random link (links already visited are made unlikely by
+     * the visited link weight, not excluded).
+     */
+    private Hyperlink chooseLink(Page webPage) {
+        if (theProber == null) {
+            return webPage.getRandomLink(theRandom);
+        }
+
+        Map<String, Hyperlink> theCandidates = new LinkedHashMap<String, Hyperlink>();
+
+        for (int i = 0; i < probeCandidateCount * 2
+                && theCandidates.size() < probeCandidateCount; ++i) {
+            Hyperlink link = webPage.getRandomLink(theRandom);
+
+            if (link == null) {
+                break;
+            }
+
+            theCandidates.put(link.getHref(), link);
+        }
+
+        if (theCandidates.isEmpty()) {
+            return null;
+        }
+
+        List<ProbeResult> theResults = theProber.probe(
+                new ArrayList<String>(theCandidates.keySet()), PROBE_TIME_LIMIT);
+
+        for (ProbeResult theResult : theResults) {
+            switch (theResult.getOutcome()) {
+                case notFound:
+                    recordProbe(theResult.getURL(), HostScoreboard.Outcome.notFound);
+                    break;
+                case permissionDenied:
+                    recordProbe(theResult.getURL(), HostScoreboard.Outcome.permissionDenied);
+                    break;
+                case timedOut:
+                    recordProbe(theResult.getURL(), HostScoreboard.Outcome.timedOut);
+                    break;
+                case notEnglish:
+                    recordProbe(theResult.getURL(), HostScoreboard.Outcome.notEnglish);
+                    break;
+                default:
+                    // not a fault of the host or nothing learnt
+            }
+        }
+        ProbeResult theBest = theResults.get(0);
+
+        if (!theBest.isPredictedToSucceed()) {
+            theLogger.log(Level.INFO, "No link predicted to succeed from {0}", webPage.getURL());
+            return null;
+        }
+
+        return theCandidates.get(theBest.getURL());
+    }
+
+    /**
+     * Stops the load behind a socket timeout. A load stopped at its deadline
+     * has already been stopped by the watchdog (or, for an engine that cannot
+     * be stopped, is still blocking the driver) so nothing is queued for it.
+     * @param theEx - a timeout, as per isExceptionTimeout.
+     */
+    private void stopTimedOutLoad(WebDriverException theEx) {
+        if (!(theEx instanceof PageLoadTimeoutException)) {
+            webBrowser.stopPageLoad();
+        }
+    }
+
     /**
      * checks whether the exception to be examined is a timeout. So this has
      * nothing to do with the state of this object.
      * @param ex - the exception to be examined
-     * @return - whether that exception is actually a timeout (usually a socket
-     * timeout).
+     * @return - whether that exception is actually a timeout (a load stopped
+     * at its deadline by the watchdog or a socket timeout).
      * @precon - as per invariant
      * @postcon - as per invariant
      * @postcon - no change to internal state.
@@ -514,7 +1041,9 @@ public class RandomWebWalkRunner {
         boolean theResult = false;
 
         Throwable theCause = ex; //.getCause();
-        if (theCause != null) {
+        if (theCause instanceof PageLoadTimeoutException) {
+            theResult = true;
+        } else if (theCause != null) {
             if (theCause instanceof WebDriverException) {
                 Throwable theRealCause = theCause.getCause();
 
@@ -527,6 +1056,27 @@ public class RandomWebWalkRunner {
         return theResult;
     }
     
+    /**
+     * @return - the next URL of the trail that has not recently failed, or
+     * null at the end of the trail.
+     */
+    private String nextTrailURL() {
+        while (trailIterator.hasNext()) {
+            String theURL = trailIterator.next().toString();
+            HostScoreboard.Outcome theFailure = theFailedUrls == null ? null
+                    : theFailedUrls.getFailure(theCanonicalizer.fingerprint(theURL));
+
+            if (theFailure == null) {
+                return theURL;
+            }
+
+            theLogger.log(Level.INFO, "Trail URL that recently failed ({0}) skipped: {1}",
+                    new Object[]{theFailure, theURL});
+        }
+
+        return null;
+    }
+
     /**
      *
      * @precon - as per invariant
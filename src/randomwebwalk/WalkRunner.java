@@ -0,0 +1,137 @@
+package randomwebwalk;
+
+import java.net.URL;
+import randomwebwalk.browser.FailedUrlCache;
+import randomwebwalk.browser.PageHistory;
+import randomwebwalk.browser.UrlCanonicalizer;
+import randomwebwalk.browser.VisitedUrlSet;
+
+/**
+ *
+ * @author al
+ * The basic actions of a walk (go forward, back, refresh, error status etc.)
+ * as used by the controller, whatever engine performs them.
+ * RandomWebWalkRunner walks in a real browser, HttpWalkRunner fetches pages
+ * directly over http.
+ * @invariant - the status reflects the last action performed.
+ */
+public interface WalkRunner {
+
+    /**
+     * @param newInitialURL - the page the walk starts from.
+     */
+    void setInitialURL(URL newInitialURL);
+
+    /**
+     * @param idString - user id (for walks that need a login).
+     * @param passwordString - the corresponding password.
+     * @param profileId - the browser profile (for engines that have one).
+     * @postcon - the walk is on its first page or the status says why not.
+     */
+    void startUp(String idString, String passwordString, String profileId);
+
+    /**
+     * @return - the type of walk.
+     */
+    RandomWebWalkRunner.WalkType getType();
+
+    /**
+     * @postcon - the walk is back on the last page successfully visited.
+     */
+    void restore();
+
+    /**
+     * @postcon - anything in progress is abandoned and the status is set to
+     * successful.
+     */
+    void pause();
+
+    /**
+     * @return - whether the engine has moved off the last page successfully
+     * visited other than by a step.
+     */
+    boolean hasPageMoved();
+
+    /**
+     * @postcon - the engine is shut down and anything recorded is flushed.
+     */
+    void stop();
+
+    /**
+     * Gets the next step ready while the current page is shown (engines that
+     * can not do this do nothing).
+     * @postcon - the status is unchanged.
+     */
+    void preload();
+
+    /**
+     * @return - whether preload does anything (so is worth a thread of its
+     * own).
+     */
+    boolean isPreloading();
+
+    /**
+     * Abandons a preload still running (called from another thread when the
+     * dwell it was to fill is over).
+     * @postcon - the preload returns soon, with no page preloaded.
+     */
+    void abortPreload();
+
+    /**
+     * @postcon - moved to the next page or the status says why not.
+     */
+    void step();
+
+    /**
+     * @postcon - the current page is reloaded or the status says why not.
+     */
+    void refresh();
+
+    /**
+     * @postcon - moved back to the last page successfully visited.
+     */
+    void goBack();
+
+    /**
+     * @return - whether the walk has been started.
+     */
+    boolean isStarted();
+
+    /**
+     * @return - the status of the last action.
+     */
+    RandomWebWalkRunner.WalkStatus checkStatus();
+
+    /**
+     * @param newStatus - the status to record.
+     */
+    void setStatus(RandomWebWalkRunner.WalkStatus newStatus);
+
+    /**
+     * @param newCanonicalizer - puts the URLs met on the walk into canonical
+     * form.
+     */
+    void setCanonicalizer(UrlCanonicalizer newCanonicalizer);
+
+    /**
+     * @param newVisitedUrls - the set that records the URLs visited.
+     */
+    void setVisitedUrls(VisitedUrlSet newVisitedUrls);
+
+    /**
+     * @param newHistory - the history the pages visited are recorded in.
+     */
+    void setHistory(PageHistory newHistory);
+
+    /**
+     * @param newFailedUrls - the URLs that recently failed: they are never
+     * chosen as links or followed on a trail, and every failure is added.
+     */
+    void setFailedUrls(FailedUrlCache newFailedUrls);
+
+    /**
+     * @param theSeed - seed for the link choices so that a walk can be
+     * repeated.
+     */
+    void setSeed(long theSeed);
+}
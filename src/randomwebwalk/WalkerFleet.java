@@ -0,0 +1,342 @@
+package randomwebwalk;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Properties;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import randomwebwalk.ui.PlayPauseDisplay;
+import randomwebwalk.ui.WalkStatusDisplay;
+
+/**
+ *
+ * @author al
+ * Runs a number of walkers (each a controller, runner and browser on its own
+ * thread) from the one set of properties.
+ * FleetSize gives the number of walkers (auto for one per processor). Each
+ * walker gets a copy of the properties in which WalkerN.Key (N from 1)
+ * overrides Key, so walkers can have their own Type, Seed, StartURL etc.
+ * With more than one walker the dump directory and the archive, history and
+ * visited files that are not overridden (the default archive directory
+ * included) get the walker number appended so that walkers do not write
+ * over each other.
+ * Play, pause and stop apply to the whole fleet and the steps per minute are
+ * summed over the fleet. The walkers are stopped in parallel, each on a
+ * thread of its own, so stopping does not hold up the caller (the UI).
+ * ExecutionMode (platform or virtual) chooses the kind of thread each walk
+ * runs on, see WalkerThreads.
+ * @invariant - there is at least one walker.
+ * @invariant - the Logger is a valid logger.
+ */
+public class WalkerFleet {
+
+    // per walker file properties and their defaults (null - no file)
+    private static final String[][] PER_WALKER_FILES = {
+        {"DumpArchiveDir", "./dumpArchive"},
+        {"HistorySpillFile", null},
+        {"VisitedBloomFile", null}};
+    private final List<Walker> theWalkers = new ArrayList<Walker>();
+    private final Logger theLogger;
+    private final WalkerThreads.ExecutionMode theMode;
+    private WalkStatusDisplay statusDisplay = null; // fleet wide status from UI
+    private PlayPauseDisplay playPauseDisplay = null; // fleet wide play display from UI
+    private long playStartTime = 0;
+    private long playStartSteps = 0;
+
+    /**
+     *
+     * @param properties - got from the Random.properties file.
+     * @param newLogger - valid logger (each walker logs to a child of it).
+     * @throws MalformedURLException - if a walker's start URL is invalid.
+     * @precon - as per param spec.
+     * @postcon - as per invariant.
+     */
+    public WalkerFleet(Properties properties,
+            Logger newLogger) throws MalformedURLException {
+        theLogger = newLogger;
+        String fleetSizeString = properties.getProperty("FleetSize", "1").trim();
+        int fleetSize = fleetSizeString.equalsIgnoreCase("auto")
+                ? Runtime.getRuntime().availableProcessors()
+                : Integer.parseInt(fleetSizeString);
+        fleetSize = Math.max(fleetSize, 1);
+        theMode = WalkerThreads.parseMode(properties.getProperty("ExecutionMode"), theLogger);
+
+        for (int i = 1; i <= fleetSize; ++i) {
+            Properties walkerProperties = makeWalkerProperties(properties, i, fleetSize);
+            Logger walkerLogger = fleetSize == 1
+                    ? theLogger
+                    : Logger.getLogger(theLogger.getName() + ".Walker" + i);
+            theWalkers.add(new Walker(i,
+                    new RandomWebWalkController(walkerProperties, walkerLogger)));
+        }
+
+        theLogger.log(Level.INFO, "Fleet of {0} walkers on {1} threads",
+                new Object[]{Integer.valueOf(fleetSize), theMode});
+    }
+
+    /**
+     * @param properties - the fleet properties.
+     * @param walkerNumber - the walker (from 1).
+     * @param fleetSize - the number of walkers.
+     * @return - the properties with the WalkerN. overrides applied.
+     */
+    private static Properties makeWalkerProperties(Properties properties,
+            int walkerNumber,
+            int fleetSize) {
+        Properties theResult = new Properties();
+        String thePrefix = "Walker" + walkerNumber + ".";
+        List<String> theOverrides = new ArrayList<String>();
+
+        for (Enumeration<?> e = properties.propertyNames(); e.hasMoreElements();) {
+            String theKey = (String) e.nextElement();
+
+            if (!theKey.startsWith("Walker")) {
+                theResult.setProperty(theKey, properties.getProperty(theKey));
+            }
+        }
+
+        for (Enumeration<?> e = properties.propertyNames(); e.hasMoreElements();) {
+            String theKey = (String) e.nextElement();
+
+            if (theKey.startsWith(thePrefix)) {
+                String theOverriddenKey = theKey.substring(thePrefix.length());
+                theResult.setProperty(theOverriddenKey, properties.getProperty(theKey));
+                theOverrides.add(theOverriddenKey);
+            }
+        }
+
+        if (fleetSize > 1) {
+            if (!theOverrides.contains("DumpDir")) {
+                theResult.setProperty("DumpDir",
+                        theResult.getProperty("DumpDir", "./dumpDir").trim() + "Walker" + walkerNumber + "-");
+            }
+
+            for (String[] theFile : PER_WALKER_FILES) {
+                String theKey = theFile[0];
+                String theValue = theResult.getProperty(theKey, theFile[1]);
+
+                if (theValue != null && !theOverrides.contains(theKey)) {
+                    theResult.setProperty(theKey, theValue.trim() + ".walker" + walkerNumber);
+                }
+            }
+        }
+
+        return theResult;
+    }
+
+    /**
+     *
+     * @return - the number of walkers.
+     */
+    public int size() {
+        return theWalkers.size();
+    }
+
+    /**
+     *
+     * @return - whether any walker needs a start page that is not set by its
+     * StartURL property.
+     */
+    public boolean needsStartPage() {
+        for (Walker theWalker : theWalkers) {
+            if (theWalker.theController.needsStartPage()
+                    && theWalker.theController.getStartURL() == null) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     *
+     * @return - the base URL of the first walker.
+     */
+    public String getBaseURL() {
+        return theWalkers.get(0).theController.getBaseURL();
+    }
+
+    /**
+     * Connects the fleet to the displays of the UI.
+     * @param newStatusDisplay - shows the latest walker status.
+     * @param newPlayPauseDisplay - set to play once every walker has stopped.
+     */
+    public void setDisplays(WalkStatusDisplay newStatusDisplay,
+            PlayPauseDisplay newPlayPauseDisplay) {
+        statusDisplay = newStatusDisplay;
+        playPauseDisplay = newPlayPauseDisplay;
+    }
+
+    /**
+     * Starts every walker that is not already running.
+     * @param initialURL - the start page for walkers that need one and have
+     * no StartURL property (may be null if none need it).
+     * @precon - the displays have been set.
+     * @postcon - every walker has a running thread.
+     */
+    public synchronized void play(URL initialURL) {
+        playStartTime = System.currentTimeMillis();
+        playStartSteps = getStepCount();
+
+        for (Walker theWalker : theWalkers) {
+            if (!theWalker.isAlive()) {
+                URL theStartURL = theWalker.theController.getStartURL();
+                theWalker.start(theStartURL != null ? theStartURL : initialURL);
+            }
+        }
+    }
+
+    /**
+     * Pauses every walker.
+     */
+    public void pause() {
+        for (Walker theWalker : theWalkers) {
+            theWalker.theController.pauseTask();
+        }
+    }
+
+    /**
+     * Stops every walker, in parallel and in the background (each stop can
+     * wait for its browser to quit).
+     * @postcon - a thread is stopping each walker.
+     */
+    public void stop() {
+        for (final Walker theWalker : theWalkers) {
+            Thread theStopper = new Thread(new Runnable() {
+
+                public void run() {
+                    theWalker.theController.stopTask();
+                }
+            }, "Stopper-" + theWalker.theNumber);
+            theStopper.setDaemon(true);
+            theStopper.start();
+        }
+    }
+
+    /**
+     *
+     * @return - whether any walker thread is running.
+     */
+    public boolean isPlaying() {
+        for (Walker theWalker : theWalkers) {
+            if (theWalker.isAlive()) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     *
+     * @return - the steps taken by the whole fleet.
+     */
+    public long getStepCount() {
+        long theResult = 0;
+
+        for (Walker theWalker : theWalkers) {
+            theResult += theWalker.theController.getStepCount();
+        }
+
+        return theResult;
+    }
+
+    /**
+     *
+     * @return - the steps per minute of the whole fleet since it was last
+     * played.
+     */
+    public synchronized double getStepsPerMinute() {
+        long theElapsed = System.currentTimeMillis() - playStartTime;
+
+        if (playStartTime == 0 || theElapsed <= 0) {
+            return 0.0;
+        }
+
+        return (getStepCount() - playStartSteps) * 60000.0 / theElapsed;
+    }
+
+    /**
+     * @param theWalker - the walker whose status has changed.
+     * @param theText - its new status.
+     */
+    private void showStatus(Walker theWalker, String theText) {
+        if (statusDisplay == null) {
+            return;
+        }
+
+        if (theWalkers.size() == 1) {
+            statusDisplay.setText(theText);
+        } else {
+            statusDisplay.setText(String.format("%d: %s (%.1f/min)",
+                    Integer.valueOf(theWalker.theNumber), theText,
+                    Double.valueOf(getStepsPerMinute())));
+        }
+    }
+
+    /**
+     * Sets the UI to play once no walker is running.
+     */
+    private synchronized void walkerStopped(Walker theWalker) {
+        theWalker.isRunning = false;
+
+        for (Walker theOtherWalker : theWalkers) {
+            if (theOtherWalker.isRunning) {
+                return;
+            }
+        }
+
+        theLogger.log(Level.INFO, "Fleet stopped after {0} steps", Long.valueOf(getStepCount()));
+
+        if (playPauseDisplay != null) {
+            playPauseDisplay.setToPlay();
+        }
+    }
+
+    /**
+     * A controller, its thread and the displays it reports to.
+     */
+    private class Walker implements WalkStatusDisplay, PlayPauseDisplay {
+
+        private final int theNumber;
+        private final RandomWebWalkController theController;
+        private Thread theThread = null;
+        private volatile String theText = "";
+        private volatile boolean isRunning = false;
+
+        Walker(int newNumber, RandomWebWalkController newController) {
+            theNumber = newNumber;
+            theController = newController;
+            theController.setNotificationDisplay(this);
+            theController.setPlayPauseDisplay(this);
+        }
+
+        void start(URL initialURL) {
+            theController.setInitialURL(initialURL);
+            isRunning = true;
+            theThread = WalkerThreads.newThread(theController, "Walker-" + theNumber,
+                    theMode, theLogger);
+            theThread.start();
+        }
+
+        boolean isAlive() {
+            return theThread != null && theThread.isAlive();
+        }
+
+        public void setText(String newText) {
+            theText = newText;
+            showStatus(this, newText);
+        }
+
+        public String getText() {
+            return theText;
+        }
+
+        public void setToPlay() {
+            walkerStopped(this);
+        }
+    }
+}
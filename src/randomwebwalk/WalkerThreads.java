@@ -0,0 +1,105 @@
+package randomwebwalk;
+
+import java.lang.reflect.Method;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ *
+ * @author al
+ * Makes the threads that walks run on.
+ * In virtual mode each walk runs on a virtual thread, so the time a walker
+ * spends blocked on the driver or waiting between pages does not hold a
+ * platform thread. Virtual threads are created reflectively so that this
+ * still builds and runs on JVMs without them, where virtual mode falls back
+ * to platform threads.
+ */
+public class WalkerThreads {
+
+    /**
+     * The kind of thread a walk runs on.
+     */
+    public enum ExecutionMode {
+
+        platform, virtual
+    };
+    private static final Method OF_VIRTUAL = findMethod(Thread.class, "ofVirtual");
+    private static final Method BUILDER_NAME = findBuilderMethod("name", String.class);
+    private static final Method BUILDER_UNSTARTED = findBuilderMethod("unstarted", Runnable.class);
+
+    private WalkerThreads() {
+    }
+
+    /**
+     * @return - whether this JVM supports virtual threads.
+     */
+    public static boolean isVirtualSupported() {
+        return OF_VIRTUAL != null && BUILDER_NAME != null && BUILDER_UNSTARTED != null;
+    }
+
+    /**
+     * @param theModeString - platform or virtual (null or unknown for
+     * platform).
+     * @param theLogger - where an unknown mode is reported.
+     * @return - the mode.
+     */
+    public static ExecutionMode parseMode(String theModeString, Logger theLogger) {
+        if (theModeString == null) {
+            return ExecutionMode.platform;
+        }
+
+        try {
+            return ExecutionMode.valueOf(theModeString.trim());
+        } catch (IllegalArgumentException ex) {
+            theLogger.log(Level.WARNING, "Unknown ExecutionMode {0} - using platform", theModeString);
+            return ExecutionMode.platform;
+        }
+    }
+
+    /**
+     * @param theTask - what the thread runs.
+     * @param theName - the name of the thread.
+     * @param theMode - the kind of thread wanted.
+     * @param theLogger - where a fall back to a platform thread is reported.
+     * @return - an unstarted thread (a platform thread if a virtual one was
+     * wanted but can not be made).
+     */
+    public static Thread newThread(Runnable theTask,
+            String theName,
+            ExecutionMode theMode,
+            Logger theLogger) {
+        if (theMode == ExecutionMode.virtual) {
+            if (isVirtualSupported()) {
+                try {
+                    Object theBuilder = OF_VIRTUAL.invoke(null);
+                    theBuilder = BUILDER_NAME.invoke(theBuilder, theName);
+                    return (Thread) BUILDER_UNSTARTED.invoke(theBuilder, theTask);
+                } catch (Exception ex) {
+                    theLogger.log(Level.WARNING, "Virtual thread creation failed - using platform thread", ex);
+                }
+            } else {
+                theLogger.log(Level.INFO, "Virtual threads not supported by this JVM - using platform thread");
+            }
+        }
+
+        Thread theThread = new Thread(theTask, theName);
+        theThread.setPriority(Thread.NORM_PRIORITY);
+        return theThread;
+    }
+
+    private static Method findMethod(Class<?> theClass, String theName, Class<?>... theParameters) {
+        try {
+            return theClass.getMethod(theName, theParameters);
+        } catch (NoSuchMethodException ex) {
+            return null;
+        }
+    }
+
+    private static Method findBuilderMethod(String theName, Class<?>... theParameters) {
+        try {
+            return findMethod(Class.forName("java.lang.Thread$Builder"), theName, theParameters);
+        } catch (ClassNotFoundException ex) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package randomwebwalk.browser;
+
+import java.util.Random;
+
+/**
+ *
+ * @author al
+ * Draws indexes with probability proportional to fixed weights in constant
+ * time per draw (Vose's alias method): each of the n columns holds its own
+ * index with some probability and an alias index otherwise, so a draw is a
+ * uniform column and one biased coin.
+ * Building the table is linear in the number of weights.
+ * @invariant - immutable after construction.
+ */
+class AliasSampler {
+
+    private final double[] theProbabilities;
+    private final int[] theAliases;
+
+    /**
+     * @param theWeights - one positive weight per index (at least one).
+     * @precon - as per param spec.
+     */
+    AliasSampler(double[] theWeights) {
+        int n = theWeights.length;
+        theProbabilities = new double[n];
+        theAliases = new int[n];
+        double theTotal = 0;
+
+        for (int i = 0; i < n; ++i) {
+            theTotal += theWeights[i];
+        }
+
+        // scaled so that the average column is 1
+        double[] theScaled = new double[n];
+        int[] theSmall = new int[n];
+        int[] theLarge = new int[n];
+        int theSmallCount = 0;
+        int theLargeCount = 0;
+
+        for (int i = 0; i < n; ++i) {
+            theScaled[i] = theWeights[i] * n / theTotal;
+
+            if (theScaled[i] < 1.0) {
+                theSmall[theSmallCount++] = i;
+            } else {
+                theLarge[theLargeCount++] = i;
+            }
+        }
+
+        while (theSmallCount > 0 && theLargeCount > 0) {
+            int theLess = theSmall[--theSmallCount];
+            int theMore = theLarge[--theLargeCount];
+            theProbabilities[theLess] = theScaled[theLess];
+            theAliases[theLess] = theMore;
+            theScaled[theMore] = (theScaled[theMore] + theScaled[theLess]) - 1.0;
+
+            if (theScaled[theMore] < 1.0) {
+                theSmall[theSmallCount++] = theMore;
+            } else {
+                theLarge[theLargeCount++] = theMore;
+            }
+        }
+
+        // what is left is 1 bar rounding error
+        while (theLargeCount > 0) {
+            int i = theLarge[--theLargeCount];
+            theProbabilities[i] = 1.0;
+            theAliases[i] = i;
+        }
+
+        while (theSmallCount > 0) {
+            int i = theSmall[--theSmallCount];
+            theProbabilities[i] = 1.0;
+            theAliases[i] = i;
+        }
+    }
+
+    /**
+     * @param generator - the source of randomness.
+     * @return - an index, drawn in proportion to its weight.
+     */
+    int sample(Random generator) {
+        int theColumn = generator.nextInt(theProbabilities.length);
+        return generator.nextDouble() < theProbabilities[theColumn]
+                ? theColumn : theAliases[theColumn];
+    }
+
+    /**
+     * @return - the number of indexes drawn from.
+     */
+    int size() {
+        return theProbabilities.length;
+    }
+}
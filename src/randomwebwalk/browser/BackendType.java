@@ -0,0 +1,31 @@
+package randomwebwalk.browser;
+
+/**
+ *
+ * @author al
+ * The browser engines that can be selected (by the Backend property).
+ */
+public enum BackendType {
+
+    firefox {
+
+        @Override
+        public BrowserBackend create(String profileId) {
+            return new FirefoxBackend(profileId);
+        }
+    },
+    htmlunit {
+
+        @Override
+        public BrowserBackend create(String profileId) {
+            return new HtmlUnitBackend();
+        }
+    };
+
+    /**
+     * @param profileId - the browser profile to use (ignored by engines that
+     * have none).
+     * @return - a newly started engine.
+     */
+    public abstract BrowserBackend create(String profileId);
+}
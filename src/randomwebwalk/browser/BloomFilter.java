@@ -0,0 +1,100 @@
+package randomwebwalk.browser;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ *
+ * @author al
+ * Bloom filter over 64 bit URL fingerprints, optionally backed by a memory
+ * mapped file so that it persists between walks.
+ * The bit positions are derived from the two halves of the fingerprint
+ * (double hashing) so no further hashing is done.
+ * @invariant - the bit array size is a positive multiple of 8.
+ */
+public class BloomFilter {
+
+    private static final int HASH_COUNT = 7;
+    private final ByteBuffer theBits;
+    private final long bitCount;
+
+    /**
+     * @param newBitCount - the number of bits in the filter.
+     * @postcon - an empty in memory filter.
+     */
+    public BloomFilter(long newBitCount) {
+        bitCount = roundBits(newBitCount);
+        theBits = ByteBuffer.allocate((int) (bitCount / 8));
+    }
+
+    /**
+     * @param theFile - the file backing the filter (created if need be).
+     * @param newBitCount - the number of bits in the filter (ignored if the
+     * file already exists, its size is used).
+     * @throws IOException - if the file can not be mapped.
+     * @postcon - a filter holding whatever was added in earlier walks.
+     */
+    public BloomFilter(File theFile, long newBitCount) throws IOException {
+        RandomAccessFile theMappedFile = new RandomAccessFile(theFile, "rw");
+
+        try {
+            long theSize = theMappedFile.length() > 0 ? theMappedFile.length() * 8 : newBitCount;
+            bitCount = roundBits(theSize);
+            theBits = theMappedFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, bitCount / 8);
+        } finally {
+            theMappedFile.close();  // the mapping stays valid
+        }
+    }
+
+    /**
+     * @param theFingerprint - 64 bit fingerprint of a URL.
+     */
+    public synchronized void add(long theFingerprint) {
+        long first = theFingerprint & 0xffffffffL;
+        long second = theFingerprint >>> 32;
+
+        for (int i = 0; i < HASH_COUNT; ++i) {
+            long theBit = ((first + i * second) & Long.MAX_VALUE) % bitCount;
+            int theIndex = (int) (theBit >>> 3);
+            theBits.put(theIndex, (byte) (theBits.get(theIndex) | (1 << (theBit & 7))));
+        }
+    }
+
+    /**
+     * @param theFingerprint - 64 bit fingerprint of a URL.
+     * @return - whether the fingerprint may have been added (false means it
+     * certainly has not).
+     */
+    public synchronized boolean mightContain(long theFingerprint) {
+        long first = theFingerprint & 0xffffffffL;
+        long second = theFingerprint >>> 32;
+
+        for (int i = 0; i < HASH_COUNT; ++i) {
+            long theBit = ((first + i * second) & Long.MAX_VALUE) % bitCount;
+
+            if ((theBits.get((int) (theBit >>> 3)) & (1 << (theBit & 7))) == 0) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * @postcon - a file backed filter is written through to its file.
+     */
+    public synchronized void flush() {
+        if (theBits instanceof MappedByteBuffer) {
+            ((MappedByteBuffer) theBits).force();
+        }
+    }
+
+    private static long roundBits(long theBitCount) {
+        long theBytes = Math.max(1, (theBitCount + 7) / 8);
+        return Math.min(theBytes, Integer.MAX_VALUE) * 8;
+    }
+}
@@ -1,17 +1,13 @@
 package randomwebwalk.browser;
 
-import java.io.IOException;
-import java.net.MalformedURLException;
 import java.net.URL;
-import java.util.ArrayList;
-import java.util.Iterator;
-import java.util.List;
-import java.util.ListIterator;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.security.auth.login.LoginException;
 import org.openqa.selenium.By;
+import org.openqa.selenium.WebDriverException;
 import org.openqa.selenium.WebElement;
+import randomwebwalk.WalkerThreads;
 
 /**
  *
@@ -20,7 +16,20 @@ import org.openqa.selenium.WebElement;
  * that the WebDriver is connected to.
  * Used to cache data that otherwise would have to be obtained through
  * the web driver each time.
- * Contains a list of the pages (URLs) already successfully visited.
+ * Holds the current page, a bounded history of the pages already
+ * successfully visited and the set of every URL visited during the walk.
+ * Only the current page keeps any heavy state (its facts), earlier pages
+ * are just PageRecords, but the facts of the pages recently left are kept
+ * (detached from the browser) so that going back, refreshing or restoring
+ * reuses them rather than harvesting the links again, if the document still
+ * matches them.
+ * URLs are compared (and fingerprinted for the history and visited set) in
+ * their canonical form.
+ * Every page load is given a deadline learnt from the load times of its
+ * host (see HostLoadTimes) and is stopped if it runs past it.
+ * The next page can be preloaded in a second, hidden, window while the
+ * current one is shown and then swapped in front, so the load is not seen;
+ * the preloaded page is only added to the history when it is shown.
  * @invariant - WebDriver is valid (this requires the invariants of the
  * WebDriver class) or (after quit) is null.
  * @invariant - the Logger is a valid logger.
@@ -28,19 +37,49 @@ import org.openqa.selenium.WebElement;
 public class Browser {
 
     private WebDriverWrapper webDriver;
-    private List<Page> pageList = new ArrayList<Page>();
+    private Page currentPage = null;    // last page successfully visited
+    private final PageHistory theHistory;
     private final Logger theLogger;
-    private final int HISTORY_LIMIT = 15;
+    private static final int HOST_LANGUAGE_CACHE_SIZE = 1024;
+    private final HostLanguageCache hostLanguages;
+    private static final int HOST_LOAD_TIMES_SIZE = 1024;
+    private final HostLoadTimes hostLoadTimes;
+    private static final int PAGE_FACTS_CACHE_SIZE = 64;
+    private final PageFactsCache leftPages;
+    private final LinkWeigher theWeigher;
+    private final VisitedUrlSet visitedUrls;
+    private final UrlCanonicalizer theCanonicalizer;
+    private static final String BUFFER_WINDOW_NAME = "randomWebWalkBuffer";
+    private String shownWindow = null; // handle of the window in front
+    private String bufferWindow = null; // handle of the hidden window pages are preloaded in
+    private Page preloadedPage = null; // next page, loaded in the buffer window
 
     /**
      *
-     * @param profileId
+     * @param newBackend - the (started) engine the browser drives.
      * @param newLogger
+     * @param newVisitedUrls - the URLs visited so far (added to as the
+     * browser moves on).
+     * @param newHistory - the history of the walk (added to as the browser
+     * moves on).
+     * @param newCanonicalizer - puts URLs into canonical form.
+     * @param theMode - the kind of thread the driver's commands run on.
      */
-    public Browser(String profileId,
-            Logger newLogger) {
-        webDriver = new WebDriverWrapper(profileId);
+    public Browser(BrowserBackend newBackend,
+            Logger newLogger,
+            VisitedUrlSet newVisitedUrls,
+            PageHistory newHistory,
+            UrlCanonicalizer newCanonicalizer,
+            WalkerThreads.ExecutionMode theMode) {
+        webDriver = new WebDriverWrapper(newBackend, theMode);
         theLogger = newLogger;
+        visitedUrls = newVisitedUrls;
+        theHistory = newHistory;
+        theCanonicalizer = newCanonicalizer;
+        hostLanguages = new HostLanguageCache(HOST_LANGUAGE_CACHE_SIZE, theCanonicalizer);
+        hostLoadTimes = new HostLoadTimes(HOST_LOAD_TIMES_SIZE, theCanonicalizer);
+        leftPages = new PageFactsCache(PAGE_FACTS_CACHE_SIZE);
+        theWeigher = new LinkWeigher(hostLanguages, visitedUrls, theCanonicalizer);
     }
 
     /**
@@ -92,6 +131,36 @@ public class Browser {
         return false;
     }
 
+    /**
+     * @param newScoreboard - how links to each host have gone, used to bias
+     * the choice of links (or null for no bias).
+     */
+    public void setScoreboard(HostScoreboard newScoreboard) {
+        theWeigher.setScoreboard(newScoreboard);
+    }
+
+    /**
+     * @param newFailedUrls - the URLs that recently failed, never chosen as
+     * links (or null).
+     */
+    public void setFailedUrls(FailedUrlCache newFailedUrls) {
+        theWeigher.setFailedUrls(newFailedUrls);
+    }
+
+    /**
+     * @param theSeed - seeds the samples of links taken from large pages.
+     */
+    public void setSeed(long theSeed) {
+        webDriver.setSampleSeed(theSeed);
+    }
+
+    /**
+     * @param newWeights - how the choice of links is biased.
+     */
+    public void setLinkWeights(LinkWeights newWeights) {
+        theWeigher.setWeights(newWeights);
+    }
+
     /**
      * 
      * @param initialURL - the URL that is the login page must be non-null
@@ -108,7 +177,7 @@ public class Browser {
             String idString,
             String passwordString) throws LoginException {
         if (isStumbleUpon) {
-            webDriver.get(initialURL.toString());
+            get(initialURL.toString());
 
             WebElement userNameElement = findElement(By.name("username"));
             webDriver.sendKeysToElement(userNameElement, idString);
@@ -117,7 +186,7 @@ public class Browser {
             webDriver.sendKeysToElement(passwordElement, passwordString);
 
             WebElement loginButtonElement = findElement(By.name("login"));
-            webDriver.clickElement(loginButtonElement);
+            click(loginButtonElement, initialURL.toString());
 
             theLogger.log(Level.INFO, "Page title is: {0}", getPageTitle());
             if (getPageTitle().equalsIgnoreCase("StumbleUpon.com: Discover the Best of the Web")) {
@@ -139,13 +208,7 @@ public class Browser {
      * @postcon - as per invariant/return value
      */
     public Page getCurrentPage() {
-        if (pageList.isEmpty()) {
-            return null;
-        }
-
-        Page theCurrentPage = getLastPage();
-
-        return theCurrentPage;
+        return currentPage;
     }
 
     /**
@@ -155,10 +218,16 @@ public class Browser {
      * @postcon -as per invariant
      */
     public void goBack() {
-        webDriver.goBack();
+        timedLoad(null, new Load() {
 
-        if (hasPageMoved()) {
-            addNewPage();
+            void run(long theDeadline) {
+                webDriver.goBack(theDeadline);
+            }
+        });
+        String theURL = getCurrentPageURL();
+
+        if (hasPageMoved(theURL)) {
+            addNewPage(theURL, PageRecord.Arrival.back);
         }
     }
 
@@ -171,10 +240,18 @@ public class Browser {
      * @postcon -as per invariant
      */
     public void refresh() {
-        webDriver.refresh();
+        timedLoad(currentPage == null ? null : currentPage.getURL(), new Load() {
+
+            void run(long theDeadline) {
+                webDriver.refresh(theDeadline);
+            }
+        });
+        String theURL = getCurrentPageURL();
 
-        if (hasPageMoved()) {
-            addNewPage();
+        if (hasPageMoved(theURL)) {
+            addNewPage(theURL, PageRecord.Arrival.refresh);
+        } else if (currentPage != null) {
+            reloadCurrentPage();
         }
     }
 
@@ -185,10 +262,36 @@ public class Browser {
      * @postcon -as per invariant
      */
     public void quit() {
+        preloadedPage = null;
         webDriver.quit();
         webDriver = null;
     }
 
+    /**
+     *
+     * @return - the engine, still running and down to one window, for reuse
+     * (see BrowserPool) or null if it would not stop and has been quit.
+     * @precon - as per invariant spec
+     * @postcon - the browser no longer drives the engine.
+     */
+    public BrowserBackend detach() {
+        discardPreload();
+
+        if (bufferWindow != null) {
+            try {
+                webDriver.closeWindow(bufferWindow, shownWindow);
+            } catch (WebDriverException ex) {
+                theLogger.log(Level.INFO, "Can not close the buffer window - ignored");
+            }
+
+            bufferWindow = null;
+        }
+
+        BrowserBackend theBackend = webDriver.detach();
+        webDriver = null;
+        return theBackend;
+    }
+
     /**
      *
      * @param theLink a valid (non-null and contained in the current page)
@@ -199,10 +302,91 @@ public class Browser {
      * @postcon -as per invariant
      */
     public void goForward(Hyperlink theLink) {
-        WebElement theElement = theLink.getElement();
-        webDriver.clickElement(theElement);
+        if (theLink.isDetached()) {
+            // from facts reused on coming back - there is no element to click
+            get(theLink.getHref());
+        } else {
+            click(theLink.getElement(), theLink.getHref());
+        }
 
-        addNewPage();
+        addNewPage(getCurrentPageURL(), PageRecord.Arrival.forward);
+    }
+
+    /**
+     * Loads the page a link leads to in the hidden buffer window (opened the
+     * first time) and collects its facts there.
+     * @param theLink - a link on the current page.
+     * @return - the preloaded page, to be checked before it is shown.
+     * @throws WebDriverException - if the load fails or times out (there is
+     * then no preloaded page).
+     * @precon - as per invariant spec
+     * @postcon - the driver is back on the shown window and nothing on
+     * screen has changed.
+     */
+    public Page preload(Hyperlink theLink) {
+        discardPreload();
+
+        if (bufferWindow == null) {
+            shownWindow = webDriver.getWindowHandle();
+            bufferWindow = webDriver.openWindow(BUFFER_WINDOW_NAME);
+        }
+
+        webDriver.switchToWindow(bufferWindow, false);
+
+        try {
+            get(theLink.getHref());
+            Page thePage = new Page(webDriver, theLogger, hostLanguages, theWeigher, theCanonicalizer,
+                    getCurrentPageURL());
+            thePage.getFacts();
+            preloadedPage = thePage;
+            return thePage;
+        } finally {
+            webDriver.switchToWindow(shownWindow, false);
+        }
+    }
+
+    /**
+     * @return - whether a page is waiting in the buffer window.
+     */
+    public boolean hasPreload() {
+        return preloadedPage != null;
+    }
+
+    /**
+     * Brings the preloaded page to the front (the window it replaces becomes
+     * the buffer window).
+     * @precon - hasPreload()
+     * @postcon - the preloaded page is the current page and has been added
+     * to the visited list.
+     */
+    public void showPreload() {
+        webDriver.switchToWindow(bufferWindow, true);
+        String theOldShownWindow = shownWindow;
+        shownWindow = bufferWindow;
+        bufferWindow = theOldShownWindow;
+        Page thePage = preloadedPage;
+        preloadedPage = null;
+
+        if (currentPage != null) {
+            leave(currentPage);
+        }
+
+        currentPage = thePage;
+        long theFingerprint = theCanonicalizer.fingerprint(thePage.getURL());
+        visitedUrls.add(theFingerprint);
+        theHistory.add(new PageRecord(theFingerprint,
+                System.currentTimeMillis(), PageRecord.Arrival.forward));
+    }
+
+    /**
+     * @postcon - there is no preloaded page (the buffer window is left as it
+     * is, hidden).
+     */
+    public void discardPreload() {
+        if (preloadedPage != null) {
+            leave(preloadedPage);
+            preloadedPage = null;
+        }
     }
 
     /**
@@ -223,8 +407,87 @@ public class Browser {
      * @postcon -as per invariant.
      */
     public void addNewPage() {
-        Page theNewPage = new Page(webDriver, theLogger);
-        pageList.add(theNewPage);
+        addNewPage(getCurrentPageURL(), PageRecord.Arrival.direct);
+    }
+
+    /**
+     *
+     * @param theURL - the URL that the browser is pointing to.
+     * @param theArrival - how the browser got there.
+     * @precon - as per invariant spec
+     * @postcon -that the current page is added to the visited list.
+     * @postcon -the state held by the previous page is released (and its
+     * facts kept).
+     * @postcon -on coming back to a page, facts kept from an earlier visit
+     * are reused if the document still matches them.
+     * @postcon -as per invariant.
+     */
+    private void addNewPage(String theURL, PageRecord.Arrival theArrival) {
+        if (currentPage != null) {
+            leave(currentPage);
+        }
+
+        currentPage = new Page(webDriver, theLogger, hostLanguages, theWeigher, theCanonicalizer, theURL);
+        long theFingerprint = theCanonicalizer.fingerprint(theURL);
+        visitedUrls.add(theFingerprint);
+        theHistory.add(new PageRecord(theFingerprint,
+                System.currentTimeMillis(), theArrival));
+
+        if (theArrival == PageRecord.Arrival.back
+                || theArrival == PageRecord.Arrival.refresh) {
+            reuseFacts(currentPage);
+        }
+    }
+
+    /**
+     * Replaces the current page once the browser has loaded it again (its
+     * elements are then stale) without recording a new visit.
+     * @precon - the current page is not null and the browser is on it.
+     * @postcon -the current page's facts are reused if the document still
+     * matches them, otherwise they are collected again when needed.
+     */
+    private void reloadCurrentPage() {
+        String theURL = currentPage.getURL();
+        leave(currentPage);
+        currentPage = new Page(webDriver, theLogger, hostLanguages, theWeigher, theCanonicalizer, theURL);
+        reuseFacts(currentPage);
+    }
+
+    /**
+     * @param thePage - a page the browser has left (or is leaving).
+     * @postcon -its state is released and any facts collected are kept.
+     */
+    private void leave(Page thePage) {
+        PageFacts theFacts = thePage.release();
+
+        if (theFacts != null) {
+            leftPages.put(theCanonicalizer.fingerprint(thePage.getURL()), theFacts);
+        }
+    }
+
+    /**
+     * @param thePage - a page just come back to (the browser is on it).
+     * @postcon -the facts kept for it are reused if the document still
+     * matches their validator, otherwise they are dropped.
+     */
+    private void reuseFacts(Page thePage) {
+        long theFingerprint = theCanonicalizer.fingerprint(thePage.getURL());
+        PageFacts theFacts = leftPages.get(theFingerprint);
+
+        if (theFacts == null) {
+            return;
+        }
+
+        boolean isValid = theFacts.getValidator().equals(webDriver.readPageValidator());
+        leftPages.count(isValid);
+
+        if (isValid) {
+            thePage.reuseFacts(theFacts);
+            theLogger.log(Level.INFO, "Reused the facts of {0} ({1})",
+                    new Object[]{thePage.getURL(), leftPages});
+        } else {
+            leftPages.remove(theFingerprint);
+        }
     }
 
     /**
@@ -238,6 +501,19 @@ public class Browser {
         webDriver.stopPageLoad();
     }
 
+    /**
+     * Abandon whatever the browser is doing.
+     * @precon - as per invariant spec
+     * @postcon -queued driver commands are cancelled and any load in flight
+     * is stopped (the walk thread gets a WebDriverException).
+     * @postcon -as per invariant.
+     */
+    public void abort() {
+        if (webDriver != null) {
+            webDriver.abort();
+        }
+    }
+
     /**
      * Restore the browser to the last page successfully visited.
      * @precon - as per invariant
@@ -245,9 +521,9 @@ public class Browser {
      * @postcon -as per invariant.
      */
     public void restorePage() {
-        Page theLastPage = getLastPage();
-        String theLastKnownURL = theLastPage.getURL();
-        webDriver.get(theLastKnownURL);
+        String theLastKnownURL = currentPage.getURL();
+        get(theLastKnownURL);
+        reloadCurrentPage();
     }
 
     /**
@@ -259,8 +535,8 @@ public class Browser {
      * @postcon -as per invariant.
      */
     public void gotoURL(String theNewURL) {
-        webDriver.get(theNewURL);
-        addNewPage();
+        get(theNewURL);
+        addNewPage(getCurrentPageURL(), PageRecord.Arrival.direct);
     }
 
     /**
@@ -271,13 +547,24 @@ public class Browser {
      * @postcon -as per invariant.
      */
     public boolean hasPageMoved() {
-        String storedCurrentPageURL = getCurrentPageURL();
+        return hasPageMoved(getCurrentPageURL());
+    }
+
+    /**
+     *
+     * @param storedCurrentPageURL - the URL that the browser is pointing to.
+     * @return - whether that URL is different from the last page
+     * successfully visited.
+     * @precon - as per invariant.
+     * @postcon -as per invariant.
+     */
+    private boolean hasPageMoved(String storedCurrentPageURL) {
         Page currentPage = getCurrentPage();
         boolean theResult = false;
 
         if (currentPage != null) {
             String realCurrentPageURL = currentPage.getURL();
-            if (!storedCurrentPageURL.equalsIgnoreCase(realCurrentPageURL)) {
+            if (!isSameURL(storedCurrentPageURL, realCurrentPageURL)) {
                 theLogger.log(Level.INFO, "Moved to new page: {0}",
                         realCurrentPageURL);
                 theLogger.log(Level.INFO, "from page: {0}",
@@ -291,49 +578,102 @@ public class Browser {
     
     /**
      * @param link - a valid hyperlink
-     * @return - whether the URL referred to in the link has recently been
-     * visited.
+     * @return - whether the URL referred to in the link has been visited
+     * during the walk.
      * @precon - as per invariant.
      * @postcon -as per invariant/return spec.
      */
-
     public boolean hasAlreadyBeenVisited(Hyperlink link) {
         boolean isFound = false;
         theLogger.log(Level.INFO, "Checking the link {0}", link.theLinkIdStr);
 
-        if (!pageList.isEmpty()) {
+        if (currentPage != null) {
             String theLinkHref = link.getHref();
+            long theFingerprint = theCanonicalizer.fingerprint(currentPage.getURL(), theLinkHref);
 
-            if(theLinkHref.indexOf('/') == 0){
-                String theCurrentPagesURL = getCurrentPage().getURL();
-                try {
-                    URL theURL = new URL(theCurrentPagesURL);
-                    String webSite = theURL.getProtocol() + "://";
-                    webSite += theURL.getHost();
-                    theLinkHref = webSite + theLinkHref;
-                } catch (MalformedURLException ex) {
-                    // no action taken here because there is nothing that can
-                    // usefully be done
-                }
+            if (visitedUrls.contains(theFingerprint)) {
+                theLogger.log(Level.INFO, "The link {0} already visited", theLinkHref);
+                isFound = true;
             }
+        }
 
-            ListIterator<Page> iter = pageList.listIterator(pageList.size());
-            int i = 0;
-
-            while (iter.hasPrevious()
-                    && !isFound
-                    && i < HISTORY_LIMIT) {
-                Page thePage = iter.previous();
-                ++i;
-//                theLogger.log(Level.INFO, "The page URL is {0}", thePage.getURL());
-                if (thePage.getURL().equalsIgnoreCase(link.theLinkIdStr)) {
-                    theLogger.log(Level.INFO, "The link {0}already visited", link.theLinkIdStr);
-                    isFound = true;
-                }
+        return isFound;
+    }
+
+    /**
+     * @param firstURL - a URL.
+     * @param secondURL - another URL.
+     * @return - whether the URLs have the same canonical form.
+     */
+    public boolean isSameURL(String firstURL, String secondURL) {
+        return theCanonicalizer.fingerprint(firstURL)
+                == theCanonicalizer.fingerprint(secondURL);
+    }
+
+    /**
+     * @postcon - the visited URLs are written through to any backing file.
+     */
+    public void flushVisited() {
+        visitedUrls.flush();
+        theHistory.flush();
+    }
+
+    /**
+     * @param theURL - the page to load.
+     * @throws PageLoadTimeoutException - if it takes longer than the deadline
+     * for its host.
+     */
+    private void get(final String theURL) {
+        timedLoad(theURL, new Load() {
+
+            void run(long theDeadline) {
+                webDriver.get(theURL, theDeadline);
+            }
+        });
+    }
+
+    /**
+     * @param theElement - the element to click.
+     * @param theTargetURL - the page the click is expected to load.
+     * @throws PageLoadTimeoutException - if it takes longer than the deadline
+     * for its host.
+     */
+    private void click(final WebElement theElement, String theTargetURL) {
+        timedLoad(theTargetURL, new Load() {
+
+            void run(long theDeadline) {
+                webDriver.clickElement(theElement, theDeadline);
             }
+        });
+    }
+
+    /**
+     * Runs a page load with the deadline learnt for the host it goes to and
+     * learns from how long it took.
+     * @param theTargetURL - the page expected (null if not known, the
+     * deadline learnt over all hosts is used).
+     * @param theLoad - the load.
+     */
+    private void timedLoad(String theTargetURL, Load theLoad) {
+        long theDeadline = hostLoadTimes.getDeadline(theTargetURL);
+        long theStart = System.currentTimeMillis();
+
+        try {
+            theLoad.run(theDeadline);
+        } catch (PageLoadTimeoutException ex) {
+            hostLoadTimes.recordTimeout(theTargetURL, theDeadline);
+            throw ex;
         }
 
-        return isFound;
+        hostLoadTimes.record(theTargetURL, System.currentTimeMillis() - theStart);
+    }
+
+    /**
+     * A page load given its deadline.
+     */
+    private abstract static class Load {
+
+        abstract void run(long theDeadline);
     }
 
     /**
@@ -358,22 +698,12 @@ public class Browser {
     }
 
     /**
-     * @return - the last successfully visited page.
+     * @return - a screenshot of the browser as png encoded bytes (nothing is
+     * written to disk) or null if the backend can not take one.
      * @precon - as per invariant.
      * @postcon -as per invariant/return spec.
      */
-    private Page getLastPage() {
-        int index = pageList.size() - 1;
-        Page theResult = null;
-
-        if (index >= 0) {
-            theResult = pageList.get(index);
-        }
-
-        return theResult;
-    }
-
-    public void dumpScreen(String dumpFilePath) throws IOException {
-        webDriver.screenDump(dumpFilePath);
+    public byte[] captureScreen() {
+        return webDriver.screenCapture();
     }
 }
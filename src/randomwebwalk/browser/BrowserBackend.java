@@ -0,0 +1,38 @@
+package randomwebwalk.browser;
+
+import org.openqa.selenium.WebDriver;
+
+/**
+ *
+ * @author al
+ * The browser engine that a WebDriverWrapper drives.
+ * Hides which WebDriver is used (and how it is set up) so that walks that
+ * do not need to be seen can run on a headless engine.
+ * @invariant - the driver is valid until it is quit.
+ */
+public interface BrowserBackend {
+
+    /**
+     * @return - the driver for this engine.
+     */
+    WebDriver getDriver();
+
+    /**
+     * @return - whether a command (window.stop()) may be sent to the engine
+     * from another thread while a driver call is in flight on the owner
+     * thread of its command queue. Engines whose driver is not safe for
+     * concurrent use return false and their loads are never stopped early.
+     */
+    boolean canStopConcurrently();
+
+    /**
+     * @return - whether the engine can take screen captures.
+     */
+    boolean canCaptureScreen();
+
+    /**
+     * @return - a screenshot as png encoded bytes or null if the engine can
+     * not take one.
+     */
+    byte[] captureScreen();
+}
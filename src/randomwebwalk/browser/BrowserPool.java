@@ -0,0 +1,345 @@
+package randomwebwalk.browser;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.openqa.selenium.WebDriver;
+
+/**
+ *
+ * @author al
+ * Pool of started browser engines so that play (and the restart after a
+ * failed walk) does not wait for a browser to launch.
+ * Each walker reserves an engine for its backend and profile when it is
+ * built, which launches one in the background straight away. Start up takes
+ * an idle engine (waiting for one being launched or reset rather than
+ * launching another) and stop gives it back.
+ * By default an engine given back is quit and a fresh one launched in its
+ * place in the background, so each walk starts with a new session and the
+ * next play still does not wait for a launch.
+ * With reuse on the engine given back is reset instead (the cookies of the
+ * page it was left on deleted, then left on about:blank) and becomes idle
+ * again. WebDriver can only delete the cookies of the current document, so
+ * cookies (and other storage) of the other sites visited stay in the
+ * session: reused engines are faster to get back but walks are not isolated
+ * from each other.
+ * Engines that have died while idle or fail their reset are quit and a new
+ * one is launched in their place.
+ * @invariant - for each backend and profile, idle + pending + in use engines
+ * never exceeds the number reserved (other than engines started inline when
+ * none could be waited for).
+ */
+public class BrowserPool {
+
+    private static final BrowserPool SHARED = new BrowserPool();
+    private static final long PENDING_WAIT = 60000; // ms to wait for a launch or reset
+    private static final String RESET_PAGE = "about:blank";
+    private static final AtomicInteger LAUNCHER_NUMBER = new AtomicInteger();
+    private final Map<String, Slot> theSlots = new HashMap<String, Slot>();
+    private final ExecutorService theLaunchers;
+    private final Logger theLogger = Logger.getLogger(BrowserPool.class.getName());
+    private volatile boolean isReusing = false; // false - engines given back are quit and replaced
+
+    /**
+     * @return - the pool shared by all walkers in the process.
+     */
+    public static BrowserPool getShared() {
+        return SHARED;
+    }
+
+    BrowserPool() {
+        theLaunchers = Executors.newCachedThreadPool(new ThreadFactory() {
+
+            public Thread newThread(Runnable theTask) {
+                Thread theThread = new Thread(theTask, "BrowserLauncher-" + LAUNCHER_NUMBER.incrementAndGet());
+                theThread.setDaemon(true);
+                return theThread;
+            }
+        });
+
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+
+            @Override
+            public void run() {
+                quitIdle();
+            }
+        });
+    }
+
+    /**
+     * @param shouldReuse - whether engines given back are reset and reused
+     * (sharing the cookies of other sites between walks) rather than quit
+     * and replaced.
+     */
+    public void setReusing(boolean shouldReuse) {
+        isReusing = shouldReuse;
+    }
+
+    /**
+     * Reserves an engine for a walker and starts launching it.
+     * @param theType - the backend.
+     * @param profileId - the browser profile (or null).
+     * @postcon - one more engine of this kind is kept and one is being
+     * launched in the background if needed.
+     */
+    public void reserve(BackendType theType, String profileId) {
+        Slot theSlot = getSlot(theType, profileId);
+
+        synchronized (theSlot) {
+            ++theSlot.theReserved;
+        }
+
+        topUp(theSlot);
+    }
+
+    /**
+     * @param theType - the backend.
+     * @param profileId - the browser profile (or null).
+     * @return - a started engine at about:blank (idle if there is one, else
+     * the next launched or reset, else a newly launched one).
+     */
+    public BrowserBackend acquire(BackendType theType, String profileId) {
+        long theStart = System.currentTimeMillis();
+        Slot theSlot = getSlot(theType, profileId);
+        BrowserBackend theResult = null;
+        String theSource = "pooled";
+
+        while (theResult == null) {
+            boolean isPending;
+
+            synchronized (theSlot) {
+                theResult = theSlot.theIdle.poll();
+                isPending = theSlot.thePending > 0;
+            }
+
+            if (theResult == null && isPending) {
+                try {
+                    theResult = theSlot.theIdle.poll(PENDING_WAIT, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            if (theResult == null) {
+                theSource = "cold";
+                theResult = theType.create(profileId);
+            } else if (!isAlive(theResult)) {
+                theLogger.log(Level.INFO, "Pooled {0} browser died while idle", theSlot.theKey);
+                quit(theResult);
+                theResult = null;
+            }
+        }
+
+        synchronized (theSlot) {
+            ++theSlot.theInUse;
+        }
+
+        topUp(theSlot);
+        theLogger.log(Level.INFO, "Acquired {0} {1} browser in {2}ms",
+                new Object[]{theSource, theSlot.theKey,
+                    Long.valueOf(System.currentTimeMillis() - theStart)});
+        return theResult;
+    }
+
+    /**
+     * Gives an engine back to the pool.
+     * @param theType - the backend it was acquired for.
+     * @param profileId - the profile it was acquired for.
+     * @param theBackend - the engine (no longer driven by anyone).
+     * @postcon - with reuse on, the engine is reset in the background and
+     * made idle, or quit if it is no longer wanted or can not be reset;
+     * otherwise it is quit in the background and a replacement launched.
+     */
+    public void release(BackendType theType, String profileId, final BrowserBackend theBackend) {
+        final Slot theSlot = getSlot(theType, profileId);
+        boolean isWanted;
+
+        synchronized (theSlot) {
+            theSlot.theInUse = Math.max(theSlot.theInUse - 1, 0);
+            isWanted = isReusing
+                    && theSlot.theIdle.size() + theSlot.thePending + theSlot.theInUse < theSlot.theReserved;
+
+            if (isWanted) {
+                ++theSlot.thePending;
+            }
+        }
+
+        if (!isWanted) {
+            theLaunchers.execute(new Runnable() {
+
+                public void run() {
+                    quit(theBackend);
+                }
+            });
+            topUp(theSlot);
+            return;
+        }
+
+        theLaunchers.execute(new Runnable() {
+
+            public void run() {
+                boolean isReset = reset(theBackend);
+
+                synchronized (theSlot) {
+                    --theSlot.thePending;
+
+                    if (isReset) {
+                        theSlot.theIdle.add(theBackend);
+                    }
+                }
+
+                if (!isReset) {
+                    quit(theBackend);
+                    topUp(theSlot);
+                }
+            }
+        });
+    }
+
+    /**
+     * Gives up an engine that can no longer be used (e.g. it did not stop).
+     * @param theType - the backend it was acquired for.
+     * @param profileId - the profile it was acquired for.
+     * @postcon - a replacement is launched in the background.
+     */
+    public void discard(BackendType theType, String profileId) {
+        Slot theSlot = getSlot(theType, profileId);
+
+        synchronized (theSlot) {
+            theSlot.theInUse = Math.max(theSlot.theInUse - 1, 0);
+        }
+
+        topUp(theSlot);
+    }
+
+    private synchronized Slot getSlot(BackendType theType, String profileId) {
+        String theKey = theType + "/" + profileId;
+        Slot theSlot = theSlots.get(theKey);
+
+        if (theSlot == null) {
+            theSlot = new Slot(theKey, theType, profileId);
+            theSlots.put(theKey, theSlot);
+        }
+
+        return theSlot;
+    }
+
+    /**
+     * Launches engines in the background until the reservation is met.
+     */
+    private void topUp(final Slot theSlot) {
+        while (true) {
+            synchronized (theSlot) {
+                if (theSlot.theIdle.size() + theSlot.thePending + theSlot.theInUse >= theSlot.theReserved) {
+                    return;
+                }
+
+                ++theSlot.thePending;
+            }
+
+            theLaunchers.execute(new Runnable() {
+
+                public void run() {
+                    long theStart = System.currentTimeMillis();
+                    BrowserBackend theBackend = null;
+
+                    try {
+                        theBackend = theSlot.theType.create(theSlot.theProfileId);
+                        theLogger.log(Level.INFO, "Launched {0} browser in {1}ms",
+                                new Object[]{theSlot.theKey,
+                                    Long.valueOf(System.currentTimeMillis() - theStart)});
+                    } catch (RuntimeException ex) {
+                        theLogger.log(Level.WARNING, "Failed to launch " + theSlot.theKey + " browser", ex);
+                    } finally {
+                        synchronized (theSlot) {
+                            --theSlot.thePending;
+
+                            if (theBackend != null) {
+                                theSlot.theIdle.add(theBackend);
+                            }
+                        }
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * @return - whether the engine was reset to a blank page (the cookies of
+     * the page it was left on are deleted first - those are the only ones
+     * WebDriver can reach).
+     */
+    private boolean reset(BrowserBackend theBackend) {
+        try {
+            WebDriver theDriver = theBackend.getDriver();
+            theDriver.manage().deleteAllCookies();
+            theDriver.get(RESET_PAGE);
+            return true;
+        } catch (RuntimeException ex) {
+            theLogger.log(Level.INFO, "Browser reset failed", ex);
+            return false;
+        }
+    }
+
+    private boolean isAlive(BrowserBackend theBackend) {
+        try {
+            return theBackend.getDriver().getCurrentUrl() != null;
+        } catch (RuntimeException ex) {
+            return false;
+        }
+    }
+
+    private void quit(BrowserBackend theBackend) {
+        try {
+            theBackend.getDriver().quit();
+        } catch (RuntimeException ex) {
+            theLogger.log(Level.INFO, "Browser quit failed - ignored", ex);
+        }
+    }
+
+    /**
+     * Quits every idle engine (on exit).
+     */
+    private void quitIdle() {
+        List<BrowserBackend> theIdle = new ArrayList<BrowserBackend>();
+
+        synchronized (this) {
+            for (Slot theSlot : theSlots.values()) {
+                theSlot.theIdle.drainTo(theIdle);
+            }
+        }
+
+        for (BrowserBackend theBackend : theIdle) {
+            quit(theBackend);
+        }
+    }
+
+    /**
+     * The engines of one backend and profile.
+     */
+    private static class Slot {
+
+        private final String theKey;
+        private final BackendType theType;
+        private final String theProfileId;
+        private final LinkedBlockingQueue<BrowserBackend> theIdle = new LinkedBlockingQueue<BrowserBackend>();
+        private int thePending = 0; // being launched or reset
+        private int theInUse = 0;
+        private int theReserved = 0;
+
+        Slot(String newKey, BackendType newType, String newProfileId) {
+            theKey = newKey;
+            theType = newType;
+            theProfileId = newProfileId;
+        }
+    }
+}
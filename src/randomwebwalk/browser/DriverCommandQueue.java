@@ -0,0 +1,286 @@
+package randomwebwalk.browser;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.openqa.selenium.WebDriverException;
+import randomwebwalk.WalkerThreads;
+
+/**
+ *
+ * @author al
+ * Queue of commands for one WebDriver, run in order by a single owner
+ * thread so that callers never hold a lock while the driver is busy.
+ * Each command is a future. Urgent commands jump ahead of normal ones and
+ * abort cancels every queued normal command and runs an abort action (e.g.
+ * window.stop()) straight away on the calling thread so that an in-flight
+ * page load returns early - the only driver call not made on the owner
+ * thread, so the caller must only give one for drivers that are safe to
+ * call concurrently. The time from an abort to the owner being idle
+ * is measured and logged. Waiting for the owner to be idle uses a lock
+ * rather than a monitor so that a virtual thread waiting is not pinned.
+ * @invariant - the pending count is the number of commands queued or
+ * running, so the owner is idle exactly when it is zero.
+ * @invariant - at most one command is running at a time, on the owner
+ * thread (an abort action aside).
+ */
+class DriverCommandQueue {
+
+    /**
+     * The order in which queued commands run.
+     */
+    enum Priority {
+
+        urgent, normal
+    };
+    private final PriorityBlockingQueue<Command<?>> theQueue = new PriorityBlockingQueue<Command<?>>();
+    private final AtomicLong theSequence = new AtomicLong();
+    private final Thread theOwner;
+    private final ReentrantLock theIdleLock = new ReentrantLock();
+    private final Condition becameIdle = theIdleLock.newCondition();
+    private final AtomicInteger thePendingCount = new AtomicInteger(); // queued or running
+    private volatile Command<?> theInFlight = null;
+    private volatile boolean isShutdown = false;
+    private volatile long abortRequestedAt = 0;
+    private volatile long lastAbortLatency = -1;
+
+    /**
+     * @param theName - the name of the owner thread.
+     * @param theMode - the kind of thread the owner is.
+     * @postcon - the owner thread is running.
+     */
+    DriverCommandQueue(String theName, WalkerThreads.ExecutionMode theMode) {
+        theOwner = WalkerThreads.newThread(new Runnable() {
+
+            public void run() {
+                runCommands();
+            }
+        }, theName, theMode, Logger.getLogger(DriverCommandQueue.class.getName()));
+        theOwner.setDaemon(true);
+        theOwner.start();
+    }
+
+    /**
+     * @param thePriority - where the command goes in the queue.
+     * @param theCommand - the driver call.
+     * @return - the future result of the call.
+     * @throws WebDriverException - if the queue has been shut down.
+     */
+    <T> Future<T> submit(Priority thePriority, Callable<T> theCommand) {
+        if (isShutdown) {
+            throw new WebDriverException("driver command queue shut down");
+        }
+
+        Command<T> theResult = new Command<T>(thePriority, theSequence.getAndIncrement(), theCommand);
+        thePendingCount.incrementAndGet();
+        theQueue.add(theResult);
+        return theResult;
+    }
+
+    /**
+     * Runs a normal priority command and waits for it.
+     * @param theCommand - the driver call.
+     * @return - its result.
+     * @throws WebDriverException - if the call fails, is cancelled by an
+     * abort or the caller is interrupted.
+     */
+    <T> T call(Callable<T> theCommand) {
+        return await(submit(Priority.normal, theCommand), 0);
+    }
+
+    /**
+     * @param theFuture - a submitted command.
+     * @param theTimeout - the longest to wait in ms (zero for no limit).
+     * @return - the result of the command.
+     * @throws WebDriverException - if the command failed, was cancelled,
+     * timed out or the caller was interrupted.
+     */
+    <T> T await(Future<T> theFuture, long theTimeout) {
+        try {
+            return theTimeout > 0
+                    ? theFuture.get(theTimeout, TimeUnit.MILLISECONDS)
+                    : theFuture.get();
+        } catch (CancellationException ex) {
+            throw new WebDriverException("driver command cancelled");
+        } catch (TimeoutException ex) {
+            throw new WebDriverException("driver command timed out after " + theTimeout + "ms");
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new WebDriverException("interrupted waiting for driver", ex);
+        } catch (ExecutionException ex) {
+            Throwable theCause = ex.getCause();
+
+            if (theCause instanceof RuntimeException) {
+                throw (RuntimeException) theCause;
+            }
+
+            if (theCause instanceof Error) {
+                throw (Error) theCause;
+            }
+
+            throw new WebDriverException(theCause);
+        }
+    }
+
+    /**
+     * @param theAbortAction - run on this thread if a command is in flight
+     * (or null), concurrently with that command.
+     * @return - the number of queued commands cancelled.
+     * @postcon - no normal priority command is queued.
+     */
+    int abort(Runnable theAbortAction) {
+        abortRequestedAt = System.currentTimeMillis();
+        List<Command<?>> theCommands = new ArrayList<Command<?>>();
+        theQueue.drainTo(theCommands);
+        int theCancelled = 0;
+
+        for (Command<?> theCommand : theCommands) {
+            if (theCommand.thePriority == Priority.normal) {
+                theCommand.cancel(false);
+                thePendingCount.decrementAndGet();
+                ++theCancelled;
+            } else {
+                theQueue.add(theCommand);
+            }
+        }
+
+        if (theInFlight != null && theAbortAction != null) {
+            try {
+                theAbortAction.run();
+            } catch (RuntimeException ex) {
+                Logger.getLogger(DriverCommandQueue.class.getName()).log(Level.INFO, "abort action failed", ex);
+            }
+        }
+
+        notifyIfIdle();
+        return theCancelled;
+    }
+
+    /**
+     * @param theTimeout - the longest to wait in ms.
+     * @return - whether the owner is idle (nothing running or queued).
+     * @throws InterruptedException - if the caller is interrupted.
+     */
+    boolean awaitIdle(long theTimeout) throws InterruptedException {
+        long theDeadline = System.currentTimeMillis() + theTimeout;
+
+        theIdleLock.lock();
+
+        try {
+            while (!isIdle()) {
+                long theRemaining = theDeadline - System.currentTimeMillis();
+
+                if (theRemaining <= 0) {
+                    return false;
+                }
+
+                becameIdle.await(theRemaining, TimeUnit.MILLISECONDS);
+            }
+        } finally {
+            theIdleLock.unlock();
+        }
+
+        return true;
+    }
+
+    /**
+     * @return - how long (ms) the owner took to become idle after the last
+     * abort, -1 if it has not yet.
+     */
+    long getLastAbortLatency() {
+        return lastAbortLatency;
+    }
+
+    /**
+     * @postcon - queued commands are cancelled, the owner thread finishes
+     * once any in-flight command returns and no more commands are accepted.
+     */
+    void shutdown() {
+        isShutdown = true;
+        abort(null);
+        theOwner.interrupt();
+    }
+
+    private boolean isIdle() {
+        return thePendingCount.get() == 0;
+    }
+
+    private void notifyIfIdle() {
+        if (isIdle()) {
+            long theAbortTime = abortRequestedAt;
+
+            if (theAbortTime != 0) {
+                abortRequestedAt = 0;
+                lastAbortLatency = System.currentTimeMillis() - theAbortTime;
+                Logger.getLogger(DriverCommandQueue.class.getName()).log(Level.INFO,
+                        "Driver idle {0}ms after abort", Long.valueOf(lastAbortLatency));
+            }
+
+            theIdleLock.lock();
+
+            try {
+                becameIdle.signalAll();
+            } finally {
+                theIdleLock.unlock();
+            }
+        }
+    }
+
+    private void runCommands() {
+        while (!isShutdown || !theQueue.isEmpty()) {
+            try {
+                Command<?> theCommand = theQueue.take();
+                theInFlight = theCommand;
+
+                try {
+                    theCommand.run();
+                } finally {
+                    theInFlight = null;
+                    // counted down only once run, so a taken command is never idle
+                    thePendingCount.decrementAndGet();
+                }
+
+                notifyIfIdle();
+            } catch (InterruptedException ex) {
+                // shut down (or spurious) - loop condition decides
+            }
+        }
+    }
+
+    /**
+     * A queued driver call.
+     */
+    private static class Command<T> extends FutureTask<T> implements Comparable<Command<?>> {
+
+        private final Priority thePriority;
+        private final long theSequenceNumber;
+
+        Command(Priority newPriority, long newSequenceNumber, Callable<T> theCall) {
+            super(theCall);
+            thePriority = newPriority;
+            theSequenceNumber = newSequenceNumber;
+        }
+
+        public int compareTo(Command<?> other) {
+            if (thePriority != other.thePriority) {
+                return thePriority.compareTo(other.thePriority);
+            }
+
+            return theSequenceNumber < other.theSequenceNumber ? -1
+                    : (theSequenceNumber == other.theSequenceNumber ? 0 : 1);
+        }
+    }
+}
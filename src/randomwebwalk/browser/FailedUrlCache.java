@@ -0,0 +1,128 @@
+package randomwebwalk.browser;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ *
+ * @author al
+ * Remembers the URLs that recently failed (not found, permission denied, a
+ * dead end, not english or timed out) so that after the walk goes back to
+ * the page the link was on the same link is not picked and navigated to
+ * again.
+ * URLs are held by fingerprint (see UrlCanonicalizer). Each failure is
+ * forgotten after a time to live that depends on why it failed - a timeout
+ * may well be transient, a missing page is not - and the least recently
+ * used URL is evicted once the capacity is reached.
+ * Shared by every walker (and engine) in the process.
+ * @invariant - holds at most capacity URLs.
+ * @invariant - safe for concurrent use.
+ */
+public class FailedUrlCache {
+
+    private static final int DEFAULT_CAPACITY = 10000;
+    private static final FailedUrlCache SHARED = new FailedUrlCache(DEFAULT_CAPACITY);
+    private static final long MINUTE = 60 * 1000L;
+    private final Map<Long, Failure> theFailures;
+
+    /**
+     * @return - the cache shared by all walkers in the process.
+     */
+    public static FailedUrlCache getShared() {
+        return SHARED;
+    }
+
+    /**
+     * @param capacity - the most URLs remembered.
+     */
+    FailedUrlCache(final int capacity) {
+        theFailures = new LinkedHashMap<Long, Failure>(capacity, 0.75f, true) {
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Failure> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * @param theOutcome - why a URL failed.
+     * @return - how long the failure is remembered (ms), 0 if it is not.
+     */
+    static long getTimeToLive(HostScoreboard.Outcome theOutcome) {
+        switch (theOutcome) {
+            case notFound:
+                return 6 * 60 * MINUTE;
+            case notEnglish:
+                return 6 * 60 * MINUTE;
+            case permissionDenied:
+                return 60 * MINUTE;
+            case deadEnd:
+                return 60 * MINUTE;
+            case timedOut:
+                return 10 * MINUTE;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * @param theFingerprint - fingerprint of the URL followed.
+     * @param theOutcome - how it went.
+     * @postcon - a failure is remembered for its time to live, a success
+     * forgets any failure of the URL.
+     */
+    public synchronized void record(long theFingerprint, HostScoreboard.Outcome theOutcome) {
+        long theTimeToLive = getTimeToLive(theOutcome);
+
+        if (theTimeToLive == 0) {
+            theFailures.remove(Long.valueOf(theFingerprint));
+        } else {
+            theFailures.put(Long.valueOf(theFingerprint),
+                    new Failure(theOutcome, System.currentTimeMillis() + theTimeToLive));
+        }
+    }
+
+    /**
+     * @param theFingerprint - fingerprint of a candidate URL.
+     * @return - why the URL recently failed or null if it has not (or the
+     * failure has expired).
+     */
+    public synchronized HostScoreboard.Outcome getFailure(long theFingerprint) {
+        Long theKey = Long.valueOf(theFingerprint);
+        Failure theFailure = theFailures.get(theKey);
+
+        if (theFailure == null) {
+            return null;
+        }
+
+        if (theFailure.theExpiry <= System.currentTimeMillis()) {
+            theFailures.remove(theKey);
+            return null;
+        }
+
+        return theFailure.theOutcome;
+    }
+
+    /**
+     * @return - the number of URLs remembered (expired ones included until
+     * they are next looked up or evicted).
+     */
+    public synchronized int size() {
+        return theFailures.size();
+    }
+
+    /**
+     * A remembered failure.
+     */
+    private static class Failure {
+
+        private final HostScoreboard.Outcome theOutcome;
+        private final long theExpiry; // ms since the epoch
+
+        Failure(HostScoreboard.Outcome newOutcome, long newExpiry) {
+            theOutcome = newOutcome;
+            theExpiry = newExpiry;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package randomwebwalk.browser;
+
+import java.io.File;
+import org.openqa.selenium.OutputType;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.firefox.FirefoxDriver;
+import org.openqa.selenium.firefox.FirefoxProfile;
+import org.openqa.selenium.firefox.internal.ProfilesIni;
+
+/**
+ *
+ * @author al
+ * Firefox (visible window) engine, using the named firefox profile if it
+ * exists (launched from its stripped template, see ProfileTemplateCache).
+ */
+class FirefoxBackend implements BrowserBackend {
+
+    private final FirefoxDriver ffWebDriver;
+
+    /**
+     * @param profileId - the name of the firefox profile (default profile
+     * if there is none with this name).
+     */
+    FirefoxBackend(String profileId) {
+        ProfileTemplateCache theTemplates = ProfileTemplateCache.getShared();
+        File theTemplate = theTemplates.getTemplate(profileId);
+        FirefoxProfile theProfile;
+
+        try {
+            if (theTemplate != null) {
+                theProfile = new FirefoxProfile(theTemplate);
+            } else {
+                ProfilesIni allProfiles = new ProfilesIni();
+                theProfile = allProfiles.getProfile(profileId);
+            }
+
+            if(theProfile == null){
+                ffWebDriver = new FirefoxDriver();
+            } else {
+                ffWebDriver = new FirefoxDriver(theProfile);
+            }
+        } finally {
+            if (theTemplate != null) {
+                // the driver has copied the template by now
+                theTemplates.releaseTemplate(theTemplate);
+            }
+        }
+    }
+
+    public WebDriver getDriver() {
+        return ffWebDriver;
+    }
+
+    /**
+     * The driver only relays each command to the browser, which handles
+     * window.stop() while a load is in progress. If the connection
+     * serialises the commands the stop waits behind the load instead (see
+     * WebDriverWrapper.navigate), it does no harm.
+     */
+    public boolean canStopConcurrently() {
+        return true;
+    }
+
+    public boolean canCaptureScreen() {
+        return true;
+    }
+
+    public byte[] captureScreen() {
+        return ffWebDriver.getScreenshotAs(OutputType.BYTES);
+    }
+}
@@ -0,0 +1,104 @@
+package randomwebwalk.browser;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ *
+ * @author al
+ * Remembers the language verdicts of the hosts visited so that links to
+ * hosts already known not to be in english can be rejected before the
+ * browser navigates to them (or the http engine fetches them).
+ * Verdicts from a language declaration count DECLARED_WEIGHT and those
+ * classified from the text of a page CONTENT_WEIGHT (a guess from the text
+ * says less about the rest of the host, one from the charset or none at all
+ * nothing). A host is known not to be in english only while most of the
+ * weight of its pages is not - so one foreign page on a mostly english host
+ * does not rule the host out.
+ * The least recently used host is evicted once the capacity is reached.
+ * @invariant - holds at most capacity hosts.
+ */
+public class HostLanguageCache {
+
+    private final Map<String, Counts> theHosts;
+    private static final int DECLARED_WEIGHT = 2; // weight of a declared verdict
+    private static final int CONTENT_WEIGHT = 1; // weight of a verdict from the text
+    private final UrlCanonicalizer theCanonicalizer;
+
+    /**
+     * @param capacity - the maximum number of hosts remembered.
+     * @param newCanonicalizer - used to find the host of a URL.
+     */
+    public HostLanguageCache(final int capacity, UrlCanonicalizer newCanonicalizer) {
+        theCanonicalizer = newCanonicalizer;
+        theHosts = new LinkedHashMap<String, Counts>(capacity, 0.75f, true) {
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Counts> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * @param theURL - the URL of a page.
+     * @param theVerdict - the language verdict for that page.
+     * @postcon - if the verdict is declared or from the text it is counted
+     * (at its weight) against the host of the URL.
+     */
+    public synchronized void record(String theURL, LanguageVerdict theVerdict) {
+        int theWeight = weightOf(theVerdict);
+
+        if (theWeight == 0) {
+            return;
+        }
+
+        String theHost = theCanonicalizer.hostOf(theURL);
+
+        if (!theHost.isEmpty()) {
+            Counts theCounts = theHosts.get(theHost);
+
+            if (theCounts == null) {
+                theCounts = new Counts();
+                theHosts.put(theHost, theCounts);
+            }
+
+            if (theVerdict.isEnglish()) {
+                theCounts.theEnglishWeight += theWeight;
+            } else {
+                theCounts.theOtherWeight += theWeight;
+            }
+        }
+    }
+
+    /**
+     * @param theVerdict - the language verdict for a page.
+     * @return - how much it counts towards the verdict on its host.
+     */
+    private static int weightOf(LanguageVerdict theVerdict) {
+        if (theVerdict.isDeclared()) {
+            return DECLARED_WEIGHT;
+        }
+
+        return theVerdict.getBasis() == LanguageVerdict.Basis.content ? CONTENT_WEIGHT : 0;
+    }
+
+    /**
+     * @param theURL - the URL of a candidate page.
+     * @return - whether most of the weight of the pages seen on the URL's
+     * host is not in english (false if none have been seen).
+     */
+    public synchronized boolean isKnownNotEnglish(String theURL) {
+        Counts theCounts = theHosts.get(theCanonicalizer.hostOf(theURL));
+        return theCounts != null && theCounts.theOtherWeight > theCounts.theEnglishWeight;
+    }
+
+    /**
+     * The weighted verdicts of one host.
+     */
+    private static class Counts {
+
+        private int theEnglishWeight = 0;
+        private int theOtherWeight = 0;
+    }
+}
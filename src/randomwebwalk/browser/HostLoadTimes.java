@@ -0,0 +1,120 @@
+package randomwebwalk.browser;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ *
+ * @author al
+ * Learns how long pages take to load on each host so that every navigation
+ * can be given a deadline suited to its host rather than waiting for the
+ * driver's socket timeout.
+ * As for TCP retransmission timers, each host keeps an exponentially
+ * weighted moving average of its load times and of their deviation, and the
+ * deadline is the average plus four deviations (kept within fixed bounds).
+ * Hosts not yet seen get the deadline learnt over all hosts. A load that
+ * hits its deadline counts as a load of twice the deadline so that the
+ * deadline for a slow host backs off.
+ * The least recently used host is evicted once the capacity is reached.
+ * @invariant - holds at most capacity hosts.
+ */
+class HostLoadTimes {
+
+    private static final double GAIN = 0.125;           // weight of a new load time
+    private static final double DEVIATION_GAIN = 0.25;  // weight of a new deviation
+    private static final int DEVIATIONS = 4;
+    static final long MIN_DEADLINE = 5000;   // ms
+    static final long MAX_DEADLINE = 60000;  // ms
+    private static final long INITIAL_DEADLINE = 30000;  // ms before anything is learnt
+    private final Map<String, Estimate> theHosts;
+    private final Estimate theOverall = new Estimate();
+    private final UrlCanonicalizer theCanonicalizer;
+
+    /**
+     * @param capacity - the maximum number of hosts remembered.
+     * @param newCanonicalizer - used to find the host of a URL.
+     */
+    HostLoadTimes(final int capacity, UrlCanonicalizer newCanonicalizer) {
+        theCanonicalizer = newCanonicalizer;
+        theHosts = new LinkedHashMap<String, Estimate>(capacity, 0.75f, true) {
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Estimate> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * @param theURL - the page being loaded (or null if not known).
+     * @return - how long (ms) to let the load run before stopping it.
+     */
+    synchronized long getDeadline(String theURL) {
+        Estimate theEstimate = theURL == null ? null : theHosts.get(theCanonicalizer.hostOf(theURL));
+
+        if (theEstimate == null) {
+            theEstimate = theOverall;
+        }
+
+        return theEstimate.getDeadline();
+    }
+
+    /**
+     * @param theURL - the page loaded.
+     * @param theLoadTime - how long it took (ms).
+     * @postcon - the estimates for the host and for all hosts take the load
+     * time into account.
+     */
+    synchronized void record(String theURL, long theLoadTime) {
+        String theHost = theURL == null ? "" : theCanonicalizer.hostOf(theURL);
+
+        if (!theHost.isEmpty()) {
+            Estimate theEstimate = theHosts.get(theHost);
+
+            if (theEstimate == null) {
+                theEstimate = new Estimate();
+                theHosts.put(theHost, theEstimate);
+            }
+
+            theEstimate.add(theLoadTime);
+        }
+
+        theOverall.add(theLoadTime);
+    }
+
+    /**
+     * @param theURL - the page whose load was stopped.
+     * @param theDeadline - the deadline it hit (ms).
+     */
+    void recordTimeout(String theURL, long theDeadline) {
+        record(theURL, Math.min(2 * theDeadline, MAX_DEADLINE));
+    }
+
+    /**
+     * Smoothed load time and deviation of one host.
+     */
+    private static class Estimate {
+
+        private double theAverage = -1;
+        private double theDeviation = 0;
+
+        void add(long theSample) {
+            if (theAverage < 0) {
+                theAverage = theSample;
+                theDeviation = theSample / 2.0;
+            } else {
+                theDeviation += DEVIATION_GAIN * (Math.abs(theSample - theAverage) - theDeviation);
+                theAverage += GAIN * (theSample - theAverage);
+            }
+        }
+
+        long getDeadline() {
+            if (theAverage < 0) {
+                return INITIAL_DEADLINE;
+            }
+
+            long theDeadline = (long) (theAverage + DEVIATIONS * theDeviation);
+            return Math.max(MIN_DEADLINE, Math.min(MAX_DEADLINE, theDeadline));
+        }
+    }
+}
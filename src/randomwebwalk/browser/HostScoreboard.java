@@ -0,0 +1,300 @@
+package randomwebwalk.browser;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ *
+ * @author al
+ * Remembers how following links to each host has gone (for every walker in
+ * the process) so that link selection can favour hosts that work and avoid
+ * hosts that keep failing.
+ * Each host keeps counts of its successes and failures and an average load
+ * time, all decaying with a half life so that old outcomes fade. A host's
+ * weight is its (smoothed) success rate scaled down by its load time.
+ * A circuit breaker trips on a host after several failures in a row with
+ * no success between them: the host is excluded for a cool down (doubled on
+ * each trip, up to a limit), after which one trial link is let through - a
+ * success closes the breaker, a failure trips it again. The trial starts
+ * when a link to the host is followed (noteFollowed), weighing links has no
+ * effect on the breaker.
+ * Outcomes are recorded by the runners and the weights are used by
+ * LinkWeigher for Page.getRandomLink.
+ * The hosts updated least recently are evicted once the capacity is
+ * exceeded.
+ * @invariant - holds about capacity hosts at most.
+ * @invariant - isExcluded and getWeight do not change the scoreboard.
+ * @invariant - safe for concurrent use.
+ */
+public class HostScoreboard {
+
+    // how following a link to a host went
+    public enum Outcome {
+
+        success,
+        notFound,
+        permissionDenied,
+        timedOut,
+        deadEnd,
+        notEnglish
+    };
+    private static final int DEFAULT_CAPACITY = 4096;
+    private static final HostScoreboard SHARED = new HostScoreboard(DEFAULT_CAPACITY);
+    private static final long HALF_LIFE = 30 * 60 * 1000L;       // ms
+    private static final int TRIP_FAILURES = 3;                  // failures in a row
+    private static final long COOL_DOWN = 5 * 60 * 1000L;        // ms for the first trip
+    private static final long MAX_COOL_DOWN = 60 * 60 * 1000L;   // ms
+    private static final long TRIAL_TIME = 2 * 60 * 1000L;       // ms a trial is waited for
+    private static final long REFERENCE_LOAD_TIME = 5000;        // ms that halves the weight
+    private static final double MIN_WEIGHT = 0.05;
+    private final int theCapacity;
+    private final ConcurrentHashMap<String, Score> theScores = new ConcurrentHashMap<String, Score>();
+    private final UrlCanonicalizer theCanonicalizer = new UrlCanonicalizer();
+
+    /**
+     * @return - the scoreboard shared by all walkers in the process.
+     */
+    public static HostScoreboard getShared() {
+        return SHARED;
+    }
+
+    /**
+     * @param capacity - the most hosts kept.
+     */
+    HostScoreboard(int capacity) {
+        theCapacity = capacity;
+    }
+
+    /**
+     * @param theURL - the link followed (or the page it led to).
+     * @param theOutcome - how it went.
+     * @param theLoadTime - how long it took (ms), ignored for failures.
+     */
+    public void record(String theURL, Outcome theOutcome, long theLoadTime) {
+        String theHost = theCanonicalizer.hostOf(theURL);
+
+        if (theHost.isEmpty()) {
+            return;
+        }
+
+        Score theScore = theScores.get(theHost);
+
+        if (theScore == null) {
+            evictIfFull();
+            theScore = new Score();
+            Score theExisting = theScores.putIfAbsent(theHost, theScore);
+
+            if (theExisting != null) {
+                theScore = theExisting;
+            }
+        }
+
+        theScore.record(theOutcome, theLoadTime, System.currentTimeMillis());
+    }
+
+    /**
+     * @param theURL - a link about to be followed (or preloaded).
+     * @postcon - if its host's cool down is over it is on trial: further links
+     * to it are excluded until the outcome is recorded (or the trial has been
+     * waited for too long).
+     */
+    public void noteFollowed(String theURL) {
+        Score theScore = theScores.get(theCanonicalizer.hostOf(theURL));
+
+        if (theScore != null) {
+            theScore.noteFollowed(System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * @param theURL - a candidate link.
+     * @return - whether the breaker for its host is open (the link should
+     * not be followed).
+     */
+    public boolean isExcluded(String theURL) {
+        Score theScore = theScores.get(theCanonicalizer.hostOf(theURL));
+        return theScore != null && theScore.isOpen(System.currentTimeMillis());
+    }
+
+    /**
+     * @param theURL - a candidate link.
+     * @return - the weight of its host, from MIN_WEIGHT to 1 (0 if it is
+     * excluded, 1 for hosts not seen).
+     */
+    public double getWeight(String theURL) {
+        Score theScore = theScores.get(theCanonicalizer.hostOf(theURL));
+
+        if (theScore == null) {
+            return 1.0;
+        }
+
+        return theScore.getWeight(System.currentTimeMillis());
+    }
+
+    /**
+     * @return - the number of hosts kept.
+     */
+    public int size() {
+        return theScores.size();
+    }
+
+    /**
+     * @return - the number of hosts whose breaker is open and cooling down.
+     */
+    public int getOpenCount() {
+        long theNow = System.currentTimeMillis();
+        int theResult = 0;
+
+        for (Score theScore : theScores.values()) {
+            if (theScore.isCoolingDown(theNow)) {
+                ++theResult;
+            }
+        }
+
+        return theResult;
+    }
+
+    @Override
+    public String toString() {
+        return size() + " hosts, " + getOpenCount() + " excluded";
+    }
+
+    /**
+     * Drops the tenth of the hosts updated least recently once the capacity
+     * is reached.
+     */
+    private void evictIfFull() {
+        if (theScores.size() < theCapacity) {
+            return;
+        }
+
+        synchronized (this) {
+            if (theScores.size() < theCapacity) {
+                return;
+            }
+
+            // snapshot the update times - other walkers keep updating while this sorts
+            List<Map.Entry<String, Long>> theEntries = new ArrayList<Map.Entry<String, Long>>(theScores.size());
+
+            for (Map.Entry<String, Score> theEntry : theScores.entrySet()) {
+                theEntries.add(new AbstractMap.SimpleImmutableEntry<String, Long>(theEntry.getKey(),
+                        Long.valueOf(theEntry.getValue().getLastUpdate())));
+            }
+
+            Collections.sort(theEntries, new Comparator<Map.Entry<String, Long>>() {
+
+                public int compare(Map.Entry<String, Long> first, Map.Entry<String, Long> second) {
+                    return first.getValue().compareTo(second.getValue());
+                }
+            });
+
+            int theCount = Math.max(theCapacity / 10, 1);
+
+            for (int i = 0; i < theCount && i < theEntries.size(); ++i) {
+                theScores.remove(theEntries.get(i).getKey());
+            }
+        }
+    }
+
+    /**
+     * The decayed record of one host.
+     */
+    private static class Score {
+
+        private double theSuccesses = 0;
+        private double theFailures = 0;
+        private double theLoadTime = -1;       // average of successful loads (ms)
+        private int theFailuresInRow = 0;
+        private long theLastUpdate = 0;
+        private long theOpenUntil = 0;         // breaker open until (0 - closed)
+        private long theCoolDown = COOL_DOWN;  // for the next trip
+        private boolean isOnTrial = false;     // a trial link is out after a cool down
+        private long theTrialStart = 0;
+
+        synchronized void record(Outcome theOutcome, long theLoad, long theNow) {
+            decay(theNow);
+
+            if (theOutcome == Outcome.success) {
+                theSuccesses += 1;
+                theLoadTime = theLoadTime < 0 ? theLoad : 0.75 * theLoadTime + 0.25 * theLoad;
+                theFailuresInRow = 0;
+                theOpenUntil = 0;
+                theCoolDown = COOL_DOWN;
+                isOnTrial = false;
+            } else {
+                theFailures += 1;
+                ++theFailuresInRow;
+
+                if (isOnTrial || theFailuresInRow >= TRIP_FAILURES) {
+                    theOpenUntil = theNow + theCoolDown;
+                    theCoolDown = Math.min(2 * theCoolDown, MAX_COOL_DOWN);
+                    isOnTrial = false;
+                }
+            }
+        }
+
+        synchronized boolean isOpen(long theNow) {
+            if (theOpenUntil == 0) {
+                return false;
+            }
+
+            if (theNow < theOpenUntil) {
+                return true;
+            }
+
+            // cool down over - open only while a trial is out (and has not
+            // been waited for too long)
+            return isOnTrial && theNow - theTrialStart <= TRIAL_TIME;
+        }
+
+        synchronized void noteFollowed(long theNow) {
+            if (theOpenUntil != 0 && !isOpen(theNow)) {
+                isOnTrial = true;
+                theTrialStart = theNow;
+            }
+        }
+
+        synchronized boolean isCoolingDown(long theNow) {
+            return theNow < theOpenUntil;
+        }
+
+        synchronized double getWeight(long theNow) {
+            if (isOpen(theNow)) {
+                return 0.0;
+            }
+
+            double theFactor = decayFactor(theNow);
+            double theRate = (theSuccesses * theFactor + 1)
+                    / ((theSuccesses + theFailures) * theFactor + 2);
+            double theSpeed = theLoadTime < 0 ? 1.0 : REFERENCE_LOAD_TIME / (REFERENCE_LOAD_TIME + theLoadTime);
+            return Math.max(MIN_WEIGHT, Math.min(1.0, 2 * theRate * theSpeed));
+        }
+
+        synchronized long getLastUpdate() {
+            return theLastUpdate;
+        }
+
+        private void decay(long theNow) {
+            double theFactor = decayFactor(theNow);
+            theSuccesses *= theFactor;
+            theFailures *= theFactor;
+            theLastUpdate = theNow;
+        }
+
+        /**
+         * @return - how much the counts have faded since the last update.
+         */
+        private double decayFactor(long theNow) {
+            if (theLastUpdate > 0 && theNow > theLastUpdate) {
+                return Math.pow(0.5, (double) (theNow - theLastUpdate) / HALF_LIFE);
+            }
+
+            return 1.0;
+        }
+    }
+}
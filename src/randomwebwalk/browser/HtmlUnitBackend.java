@@ -0,0 +1,39 @@
+package randomwebwalk.browser;
+
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.htmlunit.HtmlUnitDriver;
+
+/**
+ *
+ * @author al
+ * Headless HtmlUnit engine - no window and no display needed, much lighter
+ * than firefox but it can not take screen captures.
+ * Javascript is enabled since the page facts are collected by script.
+ * The driver works on the page in the calling thread with no
+ * synchronisation, so nothing may be sent to it while a load is in
+ * flight: its loads run to completion.
+ */
+class HtmlUnitBackend implements BrowserBackend {
+
+    private final HtmlUnitDriver theDriver;
+
+    HtmlUnitBackend() {
+        theDriver = new HtmlUnitDriver(true);
+    }
+
+    public WebDriver getDriver() {
+        return theDriver;
+    }
+
+    public boolean canStopConcurrently() {
+        return false;
+    }
+
+    public boolean canCaptureScreen() {
+        return false;
+    }
+
+    public byte[] captureScreen() {
+        return null;
+    }
+}
@@ -9,7 +9,8 @@ import org.openqa.selenium.WebElement;
  * have to be obtained through the web driver each time.
  * @invariant - WebElement is valid (thus requires the invariants of the
  * WebDriver class and also that the browser has not moved from the page
- * that contains this link).
+ * that contains this link) or null for a detached link (one kept after the
+ * browser left its page, see detach).
  * @invariant - the id string matches the href of this element
  */
 public class Hyperlink {
@@ -18,6 +19,8 @@ public class Hyperlink {
     WebElement webElement = null;
     String theLinkIdStr = null;
     String theLinkText = null;
+    Boolean isVisible = null;   // null until known
+    Boolean isEnabled = null;   // null until known
 
     /**
      * @param newDriver - correctly initialised WebDriver
@@ -35,24 +38,79 @@ public class Hyperlink {
         // todo - use this to disallow edit/login etc
     }
 
+    /**
+     * @param newDriver - correctly initialised WebDriver
+     * @param newElement - WebElement obtained from the page that the
+     * WebDriver browser is pointing to.
+     * @param newHref - the (resolved) href of the element.
+     * @param newText - the text displayed for the element.
+     * @param newVisible - whether the element is displayed.
+     * @param newEnabled - whether the element is enabled.
+     * @postcon - as per invariant, no calls are made to the WebDriver (the
+     * values are from a snapshot taken by the caller).
+     */
+    Hyperlink(WebDriverWrapper newDriver,
+            WebElement newElement,
+            String newHref,
+            String newText,
+            boolean newVisible,
+            boolean newEnabled) {
+        webDriver = newDriver;
+        webElement = newElement;
+        theLinkIdStr = newHref;
+        theLinkText = newText;
+        isVisible = Boolean.valueOf(newVisible);
+        isEnabled = Boolean.valueOf(newEnabled);
+    }
+
+    /**
+     *
+     * @return - a copy that does not refer to the element (which goes stale
+     * once the browser leaves the page), followed by loading its href. A
+     * link whose visibility was not known is taken to be hidden.
+     */
+    Hyperlink detach() {
+        return new Hyperlink(webDriver, null, theLinkIdStr, theLinkText,
+                Boolean.TRUE.equals(isVisible), Boolean.TRUE.equals(isEnabled));
+    }
+
+    /**
+     *
+     * @return - whether the link no longer refers to an element in the
+     * browser.
+     */
+    boolean isDetached() {
+        return webElement == null;
+    }
+
     /**
      *
-     * @return whether the link is visitable (can be seen on the current web
-     * page, is the correct protocol and is not a subsection of the current
-     * page).
+     * @param theCanonicalizer - used to compare the link with its page.
+     * @param hostLanguages - the language verdicts of the hosts visited.
+     * @param thePageURL - the URL of the page the link is on.
+     * @return whether the link is visitable (is walkable, see isWalkable,
+     * and can be seen on the current web page).
      * @precon - as per invariant
      * @postcon - as per invariant/return value
      */
-    boolean canBeFollowed() {
-        boolean linkIncludesProtocol = theLinkIdStr.contains(":/");
-        boolean linkToOtherSection = theLinkIdStr.contains(":") && !linkIncludesProtocol;
-
-        if (webDriver.isElementVisible(webElement)) {
-            if (webDriver.isElementEnabled(webElement)) {
-                if (!(theLinkIdStr.contains("#")
-                        || linkToOtherSection)) {
-                    return true;
-                }
+    boolean canBeFollowed(UrlCanonicalizer theCanonicalizer,
+            HostLanguageCache hostLanguages,
+            String thePageURL) {
+        if (!isWalkable(theCanonicalizer, hostLanguages, thePageURL, theLinkIdStr, theLinkText)) {
+            return false;
+        }
+
+        if (isVisible == null) {
+            isVisible = Boolean.valueOf(webDriver.isElementVisible(webElement));
+        }
+
+        if (isVisible.booleanValue()) {
+            if (isEnabled == null) {
+                isEnabled = Boolean.valueOf(webDriver.isElementEnabled(webElement));
+            }
+
+            if (isEnabled.booleanValue()) {
+                return true;
             }
         } else {
             System.out.println("Element not displayed");
@@ -61,6 +119,39 @@ public class Hyperlink {
         return false;
     }
 
+    /**
+     * The rules on which links a walk may take that do not depend on how the
+     * page was loaded - shared by the browser and the http engine.
+     * @param theCanonicalizer - used to compare the link with its page.
+     * @param hostLanguages - the language verdicts of the hosts visited.
+     * @param thePageURL - the URL of the page the link is on.
+     * @param theHref - the href of the link, resolved against its page.
+     * @param theLinkText - the text displayed for the link.
+     * @return - whether the link is http(s), does not just point back into
+     * its page, is not for editing or logging in and is not to a host known
+     * not to be in english.
+     */
+    public static boolean isWalkable(UrlCanonicalizer theCanonicalizer,
+            HostLanguageCache hostLanguages,
+            String thePageURL,
+            String theHref,
+            String theLinkText) {
+        return theCanonicalizer.isFollowable(thePageURL, theHref)
+                && !isEditingText(theLinkText)
+                && !hostLanguages.isKnownNotEnglish(theHref);
+    }
+
+    /**
+     *
+     * @param theLinkText - the text displayed for a link.
+     * @return - whether the text marks a link to editing or logging in
+     * (which a walk should not follow).
+     */
+    public static boolean isEditingText(String theLinkText) {
+        return theLinkText.equals("edit")
+                || theLinkText.equalsIgnoreCase("log in");
+    }
+
     /**
      * 
      * @return - the associated selenium WebElement
@@ -78,7 +169,7 @@ public class Hyperlink {
      * @precon - as per invariant
      * @postcon - as per invariant/return value
      */
-    String getHref() {
+    public String getHref() {
         return theLinkIdStr;
     }
 
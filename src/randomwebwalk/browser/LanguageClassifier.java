@@ -0,0 +1,201 @@
+package randomwebwalk.browser;
+
+/**
+ *
+ * @author al
+ * Small in process language identifier working on character trigrams of a
+ * sample of the page text. Used when a page does not declare its language
+ * (or only declares a charset) so that foreign pages can be rejected without
+ * relying on the declarations.
+ * Characters are folded into a 28 symbol alphabet (space, a-z and 'any
+ * other letter') so each trigram maps to an int key which indexes directly
+ * into a primitive weight table per language - nothing is allocated per
+ * lookup.
+ * The profiles are the most frequent trigrams of each language in rank
+ * order ('_' stands for a word boundary).
+ * @invariant - the profile tables are built once and never modified.
+ */
+public class LanguageClassifier {
+
+    public static final String ENGLISH = "en";
+    public static final String UNDETERMINED = "und";   // not enough text to say
+    public static final String NON_LATIN = "zxx";      // mostly non latin script
+
+    private static final int ALPHABET_SIZE = 28;
+    private static final int SPACE = 0;
+    private static final int OTHER_LETTER = ALPHABET_SIZE - 1;
+    private static final int TABLE_SIZE = ALPHABET_SIZE * ALPHABET_SIZE * ALPHABET_SIZE;
+    private static final int MIN_TRIGRAMS = 40;       // below this the text is too short
+    private static final double NON_LATIN_RATIO = 0.3; // fraction of letters
+    private static final double MIN_SCORE = 2.0;      // mean weight per trigram
+
+    private static final String[] LANGUAGES = {"en", "fr", "de", "es", "it", "pt", "nl"};
+    private static final String[] PROFILES = {
+        // en
+        "_th the he_ _an and nd_ _of of_ ing ng_ _to to_ _in in_ ion tio ed_ er_ _a_ is_ "
+        + "ent on_ re_ es_ at_ _co for _fo or_ ati hat tha _ha _be _wh his _wa as_ _is ly_ "
+        + "ter _re _on it_ con all her _wi wit ith th_ ere _st ver _pr al_ rs_ nt_ ate _se",
+        // fr
+        "_de de_ es_ _le ent le_ nt_ la_ _la ion on_ _et et_ re_ tio _co les _qu que ue_ "
+        + "_pa ans _da dan _un _pr men _po our ait ur_ par des _re ne_ _en en_ eme _il _su "
+        + "lle ell est st_ _au au_ ous pou _se une un_ ons qui _ce res ux_ _du du_ _pl",
+        // de
+        "en_ er_ _de der ich ein sch die ie_ _di che ch_ nd_ und _un _ei den _ge gen cht "
+        + "te_ ine _be ter ung ng_ _da das _in in_ _zu zu_ _ve ver ist st_ es_ _si sie nde "
+        + "ten _au auf _mi mit it_ _we nic ht_ ere eit lic ers ste ach _wi _ni hen ige",
+        // es
+        "_de de_ os_ _la la_ _qu que ue_ ent es_ _el el_ _en en_ as_ _co ci\u00f3 i\u00f3n on_ _es "
+        + "_lo los _se _pa con nte ado _po por or_ ara par ra_ ta_ aci _un do_ ida nto res "
+        + "est _ca tra ien ero _al del _re las _ha sta una an_ _su ues _pr dad _y_ ica",
+        // it
+        "_di di_ _la la_ _il il_ che he_ _ch to_ _de del ell lla le_ _co ent _in ion one "
+        + "ne_ re_ _pe per er_ _e_ zio ato tto _un _ne nte con no_ ta_ _pr ere are ri_ all "
+        + "_al eri _so ant sta _si gli _gl lo_ ti_ io_ _st ola ono _ma ssi _qu",
+        // pt
+        "_de de_ os_ _qu que ue_ _a_ _co ent _e_ do_ da_ _da _do \u00e7\u00e3o \u00e3o_ as_ es_ _se _pa "
+        + "ara par ra_ _em em_ com _es men nte ado est _no _um um_ uma ma_ _pr con _po por "
+        + "or_ ida dos das _na na_ \u00f5es res sta ter ica _ma ais _o_ ent _ta",
+        // nl
+        "en_ _de de_ an_ _he het et_ _va van _en _in in_ er_ _ee een ijk _ve ver ing ng_ "
+        + "_zi oor _vo voo nde sch _ge gen aar ter den _te te_ _op op_ _da dat at_ ie_ lij "
+        + "_me met _is is_ cht _on ond _wo and ere ten ord _ni nie iet _aa _di die eer ijn"
+    };
+
+    private static final short[][] WEIGHTS = buildWeights();
+
+    private LanguageClassifier() {
+    }
+
+    /**
+     * @param theText - a sample of the visible text of a page.
+     * @return - the code of the most likely language, UNDETERMINED if there is
+     * too little text or no profile matches well, NON_LATIN if most of the
+     * letters are outside the latin alphabet.
+     */
+    public static String identify(CharSequence theText) {
+        long[] theScores = new long[LANGUAGES.length];
+        int theTrigramCount = 0;
+        int theLetterCount = 0;
+        int theNonLatinCount = 0;
+        int first = SPACE;
+        int second = SPACE;
+
+        for (int i = 0; i <= theText.length(); ++i) {
+            int third = SPACE;
+
+            if (i < theText.length()) {
+                char theChar = theText.charAt(i);
+                third = encode(theChar);
+
+                if (third != SPACE) {
+                    ++theLetterCount;
+
+                    if (third == OTHER_LETTER && !isLatinExtension(theChar)) {
+                        ++theNonLatinCount;
+                    }
+                }
+            }
+
+            if (third == SPACE && second == SPACE) {
+                continue;   // collapse runs of separators
+            }
+
+            if (!(first == SPACE && second == SPACE)) {
+                int theKey = (first * ALPHABET_SIZE + second) * ALPHABET_SIZE + third;
+
+                for (int lang = 0; lang < LANGUAGES.length; ++lang) {
+                    theScores[lang] += WEIGHTS[lang][theKey];
+                }
+
+                ++theTrigramCount;
+            }
+
+            first = second;
+            second = third;
+        }
+
+        if (theLetterCount > 0
+                && theNonLatinCount > theLetterCount * NON_LATIN_RATIO) {
+            return NON_LATIN;
+        }
+
+        if (theTrigramCount < MIN_TRIGRAMS) {
+            return UNDETERMINED;
+        }
+
+        int theBest = 0;
+
+        for (int lang = 1; lang < LANGUAGES.length; ++lang) {
+            if (theScores[lang] > theScores[theBest]) {
+                theBest = lang;
+            }
+        }
+
+        if (theScores[theBest] < MIN_SCORE * theTrigramCount) {
+            return UNDETERMINED;
+        }
+
+        return LANGUAGES[theBest];
+    }
+
+    /**
+     * @param theChar - any character.
+     * @return - the symbol for the character in the folded alphabet.
+     */
+    private static int encode(char theChar) {
+        if (theChar >= 'a' && theChar <= 'z') {
+            return theChar - 'a' + 1;
+        }
+
+        if (theChar >= 'A' && theChar <= 'Z') {
+            return theChar - 'A' + 1;
+        }
+
+        if (theChar == '_') {
+            return SPACE;
+        }
+
+        if (Character.isLetter(theChar)) {
+            return OTHER_LETTER;
+        }
+
+        return SPACE;
+    }
+
+    /**
+     * @param theChar - a letter outside a-z.
+     * @return - whether it is an accented latin letter (rather than another
+     * script).
+     */
+    private static boolean isLatinExtension(char theChar) {
+        return theChar >= '\u00c0' && theChar <= '\u024f';
+    }
+
+    /**
+     * @return - the weight tables, one per language indexed by trigram key
+     * (the top ranked trigram has the highest weight, absent ones are zero).
+     */
+    private static short[][] buildWeights() {
+        short[][] theWeights = new short[LANGUAGES.length][TABLE_SIZE];
+
+        for (int lang = 0; lang < LANGUAGES.length; ++lang) {
+            String[] theTrigrams = PROFILES[lang].split(" ");
+
+            for (int rank = 0; rank < theTrigrams.length; ++rank) {
+                String theTrigram = theTrigrams[rank];
+
+                if (theTrigram.length() == 3) {
+                    int theKey = (encode(theTrigram.charAt(0)) * ALPHABET_SIZE
+                            + encode(theTrigram.charAt(1))) * ALPHABET_SIZE
+                            + encode(theTrigram.charAt(2));
+
+                    if (theWeights[lang][theKey] == 0) {
+                        theWeights[lang][theKey] = (short) (theTrigrams.length - rank);
+                    }
+                }
+            }
+        }
+
+        return theWeights;
+    }
+}
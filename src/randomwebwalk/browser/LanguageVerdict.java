@@ -0,0 +1,149 @@
+package randomwebwalk.browser;
+
+/**
+ *
+ * @author al
+ * The decision on whether a page is in english together with what the
+ * decision was based on. Built from the values collected by the single
+ * language probe (see WebDriverWrapper.collectPageFacts).
+ * The declarations are considered in the order html lang, xml:lang,
+ * document lang and Content-Language meta, the first one present decides.
+ * Otherwise the sample of the page text is classified (see
+ * LanguageClassifier) and only if that is inconclusive does the charset (or
+ * failing that the lack of any declaration) decide.
+ * @invariant - immutable.
+ */
+public class LanguageVerdict {
+
+    // what the verdict was based on
+    public enum Basis {
+
+        htmlLang,
+        xmlLang,
+        documentLang,
+        contentLanguage,
+        content,
+        charset,
+        undeclared
+    };
+
+    private final boolean english;
+    private final Basis theBasis;
+    private final String theDeclaration;
+
+    /**
+     * @param isEnglish - the verdict.
+     * @param newBasis - what it was based on.
+     * @param newDeclaration - the declared value it was based on (or empty).
+     */
+    LanguageVerdict(boolean isEnglish,
+            Basis newBasis,
+            String newDeclaration) {
+        english = isEnglish;
+        theBasis = newBasis;
+        theDeclaration = newDeclaration == null ? "" : newDeclaration;
+    }
+
+    /**
+     * @param htmlLang - the lang attribute of the html element or null.
+     * @param xmlLang - the xml:lang attribute of the html element or null.
+     * @param documentLang - document.documentElement.lang or null.
+     * @param contentLanguage - the content of the Content-Language meta or
+     * null.
+     * @param charset - the charset (or Content-Type) meta content or null.
+     * @param textSample - a sample of the page text or null.
+     * @return - the verdict on the declarations.
+     */
+    public static LanguageVerdict fromDeclarations(String htmlLang,
+            String xmlLang,
+            String documentLang,
+            String contentLanguage,
+            String charset,
+            String textSample) {
+        if (htmlLang != null && htmlLang.length() > 1) {
+            return new LanguageVerdict(isEnglishCode(htmlLang), Basis.htmlLang, htmlLang);
+        }
+
+        if (xmlLang != null && xmlLang.length() > 1) {
+            return new LanguageVerdict(isEnglishCode(xmlLang), Basis.xmlLang, xmlLang);
+        }
+
+        if (documentLang != null && documentLang.length() > 1) {
+            return new LanguageVerdict(isEnglishCode(documentLang), Basis.documentLang, documentLang);
+        }
+
+        if (contentLanguage != null) {
+            return new LanguageVerdict(isEnglishCode(contentLanguage), Basis.contentLanguage, contentLanguage);
+        }
+
+        if (textSample != null) {
+            String theLanguage = LanguageClassifier.identify(textSample);
+
+            if (!theLanguage.equals(LanguageClassifier.UNDETERMINED)) {
+                return new LanguageVerdict(theLanguage.equals(LanguageClassifier.ENGLISH),
+                        Basis.content, theLanguage);
+            }
+        }
+
+        if (charset != null) {
+            String theCharset = charset.toLowerCase();
+            boolean isWestern = theCharset.contains("utf-8")
+                    || theCharset.contains("iso-8859-1");
+            return new LanguageVerdict(isWestern, Basis.charset, charset);
+        }
+
+        return new LanguageVerdict(true, Basis.undeclared, "");
+    }
+
+    /**
+     * @return - whether the page is in english.
+     */
+    public boolean isEnglish() {
+        return english;
+    }
+
+    /**
+     * @return - what the verdict is based on.
+     */
+    public Basis getBasis() {
+        return theBasis;
+    }
+
+    /**
+     * @return - whether the verdict is from a declaration of the page's
+     * language (rather than from classifying its text, its charset or no
+     * declaration at all).
+     */
+    public boolean isDeclared() {
+        return theBasis == Basis.htmlLang
+                || theBasis == Basis.xmlLang
+                || theBasis == Basis.documentLang
+                || theBasis == Basis.contentLanguage;
+    }
+
+    /**
+     * @return - the declared value that the verdict is based on (or empty).
+     */
+    public String getDeclaration() {
+        return theDeclaration;
+    }
+
+    /**
+     * @param theCode - language code (e.g. en-GB).
+     * @return - whether the code is an english one.
+     */
+    private static boolean isEnglishCode(String theCode) {
+        String theTrimmedCode = theCode.trim();
+
+        if (theTrimmedCode.length() > 1) {
+            return theTrimmedCode.substring(0, 2).equalsIgnoreCase("en");
+        }
+
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return "LanguageVerdict{" + "english=" + english + ", basis=" + theBasis + ", declaration=" + theDeclaration + '}';
+    }
+}
@@ -0,0 +1,64 @@
+package randomwebwalk.browser;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ *
+ * @author al
+ * In JVM copy of the hyperlinks harvested from a page in a single round trip
+ * to the browser (see WebDriverWrapper.collectPageFacts).
+ * @invariant - the links list is non-null and unmodifiable.
+ * @invariant - the link count is the number of anchors on the page which may
+ * be greater than the number of links held if the harvest was sampled.
+ */
+class LinkSnapshot {
+
+    private final List<Hyperlink> theLinks;
+    private final int theLinkCount;
+
+    /**
+     * @param newLinks - the (possibly sampled) links harvested.
+     * @param newLinkCount - the total number of anchors on the page.
+     */
+    LinkSnapshot(List<Hyperlink> newLinks,
+            int newLinkCount) {
+        theLinks = Collections.unmodifiableList(newLinks);
+        theLinkCount = newLinkCount;
+    }
+
+    /**
+     * @return - the harvested links.
+     */
+    List<Hyperlink> getLinks() {
+        return theLinks;
+    }
+
+    /**
+     * @return - the number of anchors on the page (not just those harvested).
+     */
+    int getLinkCount() {
+        return theLinkCount;
+    }
+
+    /**
+     * @return - a copy whose links no longer refer to elements in the browser.
+     */
+    LinkSnapshot detach() {
+        List<Hyperlink> theDetached = new ArrayList<Hyperlink>(theLinks.size());
+
+        for (Hyperlink theLink : theLinks) {
+            theDetached.add(theLink.detach());
+        }
+
+        return new LinkSnapshot(theDetached, theLinkCount);
+    }
+
+    /**
+     * @return - whether any links were harvested.
+     */
+    boolean isEmpty() {
+        return theLinks.isEmpty();
+    }
+}
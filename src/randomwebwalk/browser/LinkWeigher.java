@@ -0,0 +1,102 @@
+package randomwebwalk.browser;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ *
+ * @author al
+ * Decides which links on a page may be chosen and how likely each is (see
+ * Page.getRandomLink).
+ * A link may be chosen if it can be followed (visible, enabled, http(s) and
+ * not back into its page), is not for editing or logging in, is not to a
+ * host known not to be in english, has not recently failed and its host's
+ * breaker (on the scoreboard) is not open. Its weight is from the
+ * LinkWeights, scaled by its host's weight on the scoreboard.
+ * One weigher is shared by all the pages of a browser.
+ * @invariant - the caches and sets it consults are valid.
+ */
+class LinkWeigher {
+
+    private final HostLanguageCache hostLanguages;
+    private final VisitedUrlSet visitedUrls;
+    private final UrlCanonicalizer theCanonicalizer;
+    private volatile HostScoreboard theScoreboard = null; // null - hosts unweighted
+    private volatile FailedUrlCache theFailedUrls = null; // null - failures not checked
+    private volatile LinkWeights theWeights = LinkWeights.DEFAULT;
+
+    /**
+     * @param newHostLanguages - the language verdicts of the hosts visited.
+     * @param newVisitedUrls - the URLs visited.
+     * @param newCanonicalizer - used to compare and fingerprint links.
+     */
+    LinkWeigher(HostLanguageCache newHostLanguages,
+            VisitedUrlSet newVisitedUrls,
+            UrlCanonicalizer newCanonicalizer) {
+        hostLanguages = newHostLanguages;
+        visitedUrls = newVisitedUrls;
+        theCanonicalizer = newCanonicalizer;
+    }
+
+    void setScoreboard(HostScoreboard newScoreboard) {
+        theScoreboard = newScoreboard;
+    }
+
+    void setFailedUrls(FailedUrlCache newFailedUrls) {
+        theFailedUrls = newFailedUrls;
+    }
+
+    void setWeights(LinkWeights newWeights) {
+        theWeights = newWeights;
+    }
+
+    /**
+     * @param theLinks - the links harvested from a page.
+     * @param thePageURL - the URL of the page.
+     * @return - the weight of each link (in the same order), zero for those
+     * that may not be chosen.
+     */
+    double[] weigh(List<Hyperlink> theLinks, String thePageURL) {
+        HostScoreboard theCurrentScoreboard = theScoreboard;
+        FailedUrlCache theCurrentFailedUrls = theFailedUrls;
+        LinkWeights theCurrentWeights = theWeights;
+        double[] theResult = new double[theLinks.size()];
+        String[] theHosts = new String[theLinks.size()];
+        Map<String, Integer> theHostCounts = new HashMap<String, Integer>();
+
+        // which may be chosen (and how many go to each host)
+        for (int i = 0; i < theLinks.size(); ++i) {
+            Hyperlink theLink = theLinks.get(i);
+            String theHref = theLink.getHref();
+
+            if (!theLink.canBeFollowed(theCanonicalizer, hostLanguages, thePageURL)
+                    || (theCurrentFailedUrls != null
+                    && theCurrentFailedUrls.getFailure(theCanonicalizer.fingerprint(theHref)) != null)) {
+                continue;
+            }
+
+            double theHostWeight = theCurrentScoreboard == null ? 1.0 : theCurrentScoreboard.getWeight(theHref);
+
+            if (theHostWeight <= 0) {
+                continue;
+            }
+
+            theResult[i] = theHostWeight;
+            theHosts[i] = theCanonicalizer.hostOf(theHref);
+            Integer theCount = theHostCounts.get(theHosts[i]);
+            theHostCounts.put(theHosts[i], Integer.valueOf(theCount == null ? 1 : theCount.intValue() + 1));
+        }
+
+        for (int i = 0; i < theLinks.size(); ++i) {
+            if (theResult[i] > 0) {
+                Hyperlink theLink = theLinks.get(i);
+                boolean isVisited = visitedUrls.contains(theCanonicalizer.fingerprint(theLink.getHref()));
+                theResult[i] *= theCurrentWeights.weigh(isVisited, theLink.getText(),
+                        theHostCounts.get(theHosts[i]).intValue());
+            }
+        }
+
+        return theResult;
+    }
+}
@@ -0,0 +1,111 @@
+package randomwebwalk.browser;
+
+/**
+ *
+ * @author al
+ * How strongly the random choice of a link on a page is biased (see
+ * Page.getRandomLink), set by the LinkWeights property as comma separated
+ * name=value pairs, e.g. "visited=0.2,prominence=1,diversity=0.5":
+ * visited - the factor applied to links already visited (1 no bias, 0
+ * never chosen while any other link can be).
+ * prominence - how much links with more text are favoured (0 not at all, 1
+ * a link with 40 or more characters is twice as likely as a bare one).
+ * diversity - how far each host's share of the choice is evened out (0 in
+ * proportion to its links, 1 every host equally likely whatever the number
+ * of links to it).
+ * Each link's weight is also scaled by its host's weight on the scoreboard
+ * (if there is one).
+ * @invariant - immutable, all factors are zero or more.
+ */
+public class LinkWeights {
+
+    public static final LinkWeights DEFAULT = new LinkWeights(0.2, 0.0, 0.0);
+    private static final int PROMINENT_TEXT_LENGTH = 40;
+    private static final double MIN_VISITED_WEIGHT = 1e-6; // visited links stay possible
+    private final double theVisitedWeight;
+    private final double theProminence;
+    private final double theDiversity;
+
+    /**
+     * @param newVisitedWeight - factor for links already visited.
+     * @param newProminence - bias towards links with more text.
+     * @param newDiversity - evening out of the hosts' shares.
+     */
+    public LinkWeights(double newVisitedWeight,
+            double newProminence,
+            double newDiversity) {
+        if (newVisitedWeight < 0 || newProminence < 0 || newDiversity < 0) {
+            throw new IllegalArgumentException("Link weights can not be negative");
+        }
+
+        theVisitedWeight = Math.max(newVisitedWeight, MIN_VISITED_WEIGHT);
+        theProminence = newProminence;
+        theDiversity = newDiversity;
+    }
+
+    /**
+     * @param theSpec - comma separated name=value pairs (names not given
+     * keep their default).
+     * @return - the weights.
+     * @throws IllegalArgumentException - if a name or value is not valid.
+     */
+    public static LinkWeights parse(String theSpec) {
+        double theVisitedWeight = DEFAULT.theVisitedWeight;
+        double theProminence = DEFAULT.theProminence;
+        double theDiversity = DEFAULT.theDiversity;
+
+        for (String thePair : theSpec.split(",")) {
+            if (thePair.trim().isEmpty()) {
+                continue;
+            }
+
+            int theEquals = thePair.indexOf('=');
+
+            if (theEquals < 0) {
+                throw new IllegalArgumentException("No value for link weight " + thePair.trim());
+            }
+
+            String theName = thePair.substring(0, theEquals).trim();
+            double theValue = Double.parseDouble(thePair.substring(theEquals + 1).trim());
+
+            if (theName.equals("visited")) {
+                theVisitedWeight = theValue;
+            } else if (theName.equals("prominence")) {
+                theProminence = theValue;
+            } else if (theName.equals("diversity")) {
+                theDiversity = theValue;
+            } else {
+                throw new IllegalArgumentException("Unknown link weight " + theName);
+            }
+        }
+
+        return new LinkWeights(theVisitedWeight, theProminence, theDiversity);
+    }
+
+    /**
+     * @param isVisited - whether the link has been visited.
+     * @param theText - the text displayed for the link.
+     * @param theHostLinkCount - the number of candidate links on the page to
+     * the link's host.
+     * @return - the weight of the link before the host's score (positive).
+     */
+    double weigh(boolean isVisited, String theText, int theHostLinkCount) {
+        double theResult = isVisited ? theVisitedWeight : 1.0;
+
+        if (theProminence > 0) {
+            theResult *= 1.0 + theProminence
+                    * Math.min(theText.length(), PROMINENT_TEXT_LENGTH) / PROMINENT_TEXT_LENGTH;
+        }
+
+        if (theDiversity > 0 && theHostLinkCount > 1) {
+            theResult /= Math.pow(theHostLinkCount, theDiversity);
+        }
+
+        return theResult;
+    }
+
+    @Override
+    public String toString() {
+        return "visited=" + theVisitedWeight + ",prominence=" + theProminence + ",diversity=" + theDiversity;
+    }
+}
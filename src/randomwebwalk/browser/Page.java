@@ -1,7 +1,10 @@
 package randomwebwalk.browser;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.openqa.selenium.By;
@@ -13,6 +16,8 @@ import org.openqa.selenium.WebElement;
  * Wrapper for selenium web driver to represent a page that the WebDriver has
  * visited. Used to cache data that otherwise would have to be obtained through 
  * the web driver each time.
+ * The facts about the page (links, language, title etc.) are collected in one
+ * round trip the first time they are needed and then reused.
  * @invariant - WebDriver is valid (this requires the invariants of the
  * WebDriver class and also that the browser has not moved from this page).
  * @invariant - the URL string matches the page's URL
@@ -20,65 +25,170 @@ import org.openqa.selenium.WebElement;
 
 public class Page {
     private final WebDriverWrapper webDriver;
-    private List<WebElement> theLinks = null;
+    private PageFacts theFacts = null;
+    private final ReentrantLock theFactsLock = new ReentrantLock(); // not a monitor - collection blocks on the driver
+    private static final PageFacts EMPTY_FACTS = new PageFacts("", -1,
+            new LinkSnapshot(new ArrayList<Hyperlink>(), 0),
+            LanguageVerdict.fromDeclarations(null, null, null, null, null, null), "");
     private final String theURL;
-    private static final int LINK_THRESHHOLD = 5;
-    private static final int RETRY_COUNT = 10;
+    public static final int LINK_THRESHHOLD = 5; // fewer links than this is a dead end
+    private static final int HARVEST_SAMPLE_LIMIT = 250; // links brought back per harvest
+    private static final int TEXT_SAMPLE_LIMIT = 2000; // characters of text classified
     private final Logger theLogger;
+    private final HostLanguageCache hostLanguages;
+    private final LinkWeigher theWeigher;
+    private List<Hyperlink> theCandidates = null; // links that may be chosen (once weighed)
+    private AliasSampler theSampler = null; // draws from the candidates (null if none)
+    private final UrlCanonicalizer theCanonicalizer;
 
     /**
      * @param newDriver - valid WebDriver
+     * @param newLogger - valid logger
+     * @param newHostLanguages - the language verdicts of the hosts visited
+     * @param newWeigher - decides which links may be chosen and how likely
+     * @param newCanonicalizer - used to compare links with this page
+     * @param newURL - the URL the browser is pointing to
      */
     Page(WebDriverWrapper newDriver,
-         Logger newLogger) {
+         Logger newLogger,
+         HostLanguageCache newHostLanguages,
+         LinkWeigher newWeigher,
+         UrlCanonicalizer newCanonicalizer,
+         String newURL) {
         theLogger = newLogger;
         webDriver = newDriver;
-        theURL = webDriver.getCurrentPage();
+        hostLanguages = newHostLanguages;
+        theWeigher = newWeigher;
+        theCanonicalizer = newCanonicalizer;
+        theURL = newURL;
     }
 
     /**
-     * 
-     * @return a valid not editing hyperlink from the current page
-     * the hyperilink is random generated so it should be a different link for
-     * each call
+     *
+     * @return - the facts about this page, collected from the browser the
+     * first time this is called (unless reused from an earlier visit).
      * @precon - as per invariant
      * @postcon - as per invariant/return value
+     * @postcon - the language verdict is recorded against the host of the
+     * page.
      */
-    public Hyperlink getRandomLink() {
-        Hyperlink theResult = null;
-        Random generator = new Random();
-        int i = 0;
+    public PageFacts getFacts() {
+        theFactsLock.lock();
 
-        theLinks = webDriver.getAllHyperLinks();
+        try {
+            if (theFacts == null) {
+                theFacts = webDriver.collectPageFacts(HARVEST_SAMPLE_LIMIT, TEXT_SAMPLE_LIMIT);
+                hostLanguages.record(theURL, theFacts.getLanguageVerdict());
+            }
 
-        if (theLinks.size() < LINK_THRESHHOLD) {
-            Logger.getLogger(Page.class.getName()).log(Level.INFO, "Links size: {0}", Integer.toString(theLinks.size()));
-            Logger.getLogger(Page.class.getName()).log(Level.INFO, "The URL: {0}", theURL);
+            return theFacts;
+        } finally {
+            theFactsLock.unlock();
         }
+    }
 
-        while (theResult == null &&
-                i < RETRY_COUNT) {
-            int randomElementIndex = generator.nextInt(theLinks.size());
-            WebElement randomElement = theLinks.get(randomElementIndex);
-            Hyperlink tmpLink = new Hyperlink(webDriver, randomElement);
+    /**
+     * Releases the state collected for this page (once the browser has moved
+     * on the links it holds refer to elements that no longer exist).
+     * @return - the facts collected, detached from the browser, or null if
+     * none were.
+     * @postcon - the facts are empty from now on (they can not be collected
+     * again since the browser is no longer on this page).
+     */
+    PageFacts release() {
+        theFactsLock.lock();
+
+        try {
+            PageFacts theResult = theFacts == null || theFacts == EMPTY_FACTS
+                    ? null : theFacts.detach();
+            theFacts = EMPTY_FACTS;
+            theCandidates = null;
+            theSampler = null;
+            return theResult;
+        } finally {
+            theFactsLock.unlock();
+        }
+    }
 
-            if (tmpLink.canBeFollowed()) {
-                String theLinkText = randomElement.getText();
+    /**
+     * @param theCachedFacts - facts collected on an earlier visit and checked
+     * to still hold (their links are detached).
+     * @postcon - the facts are not collected from the browser unless they
+     * already have been.
+     */
+    void reuseFacts(PageFacts theCachedFacts) {
+        theFactsLock.lock();
 
-                if(!(theLinkText.equals("edit") ||
-                        theLinkText.equalsIgnoreCase("log in"))) {
-                    //System.out.println("Link id is:" + linkIdStr);
-                    theResult = tmpLink;
-                }
+        try {
+            if (theFacts == null) {
+                theFacts = theCachedFacts;
             }
+        } finally {
+            theFactsLock.unlock();
         }
+    }
 
-        if(i >= RETRY_COUNT){
-            theLogger.log(Level.INFO, "Out of retries in Page.GetRandomLink");
-            // Exception will be generated when attempting to follow link
+    /**
+     * 
+     * @return a valid not editing hyperlink from the current page, chosen at
+     * random in proportion to its weight (see LinkWeigher), or null if no
+     * link on the page may be chosen.
+     * The links are harvested in one round trip (sampled in the browser for
+     * large pages), filtered and weighed once and put in an alias table, so
+     * each choice takes constant time and no driver calls.
+     * @param generator - the source of randomness (seeded for repeatable
+     * walks).
+     * @precon - as per invariant
+     * @postcon - as per invariant/return value
+     */
+    public Hyperlink getRandomLink(Random generator) {
+        theFactsLock.lock();
+
+        try {
+            if (theCandidates == null) {
+                sampleLinks();
+            }
+
+            if (theSampler == null) {
+                theLogger.log(Level.INFO, "No link can be chosen from {0}", theURL);
+                return null;
+            }
+
+            return theCandidates.get(theSampler.sample(generator));
+        } finally {
+            theFactsLock.unlock();
         }
+    }
 
-        return theResult;
+    /**
+     * @precon - the facts lock is held.
+     * @postcon - the candidates are the links that may be chosen and the
+     * sampler draws from them by weight (null if there are none).
+     */
+    private void sampleLinks() {
+        LinkSnapshot theLinks = getFacts().getLinks();
+        List<Hyperlink> theHarvest = theLinks.getLinks();
+
+        if (theLinks.getLinkCount() < LINK_THRESHHOLD) {
+            Logger.getLogger(Page.class.getName()).log(Level.INFO, "Links size: {0}", Integer.toString(theLinks.getLinkCount()));
+            Logger.getLogger(Page.class.getName()).log(Level.INFO, "The URL: {0}", theURL);
+        }
+
+        double[] theWeights = theWeigher.weigh(theHarvest, theURL);
+        List<Hyperlink> theChosen = new ArrayList<Hyperlink>();
+        int theCount = 0;
+
+        for (int i = 0; i < theWeights.length; ++i) {
+            if (theWeights[i] > 0) {
+                theChosen.add(theHarvest.get(i));
+                theWeights[theCount++] = theWeights[i];
+            }
+        }
+
+        theCandidates = theChosen;
+        theSampler = theCount == 0 ? null : new AliasSampler(Arrays.copyOf(theWeights, theCount));
+        theLogger.log(Level.INFO, "{0} of {1} links harvested can be chosen", new Object[]{
+                    Integer.valueOf(theCount), Integer.valueOf(theHarvest.size())});
     }
 
     /**
@@ -128,91 +238,23 @@ public class Page {
     
     /**
      * 
-     * @return - whether the header definition states that the page is in
-     * english.
-     * note that it looks at the tag in HTML but search is case
-     * sensitive.
+     * @return - whether the page is in english (from its declarations or
+     * failing that its content).
      * @precon - as per invariant
      * @postcon - as per invariant/return value
      */
     public boolean isInEnglish() {
-        WebElement mainHtml = webDriver.findByXPath("/html");
-
-        if (mainHtml != null) {
-            String langCode = webDriver.getElementAttribute(mainHtml, "lang");
-            String langPrefix = "";
-
-            if (langCode != null && langCode.length() > 1) {
-                langPrefix = langCode.substring(0, 2);
-                if (langPrefix.equalsIgnoreCase("en")) {
-                    return true;
-                } else {
-                    return false;
-                }
-            }
-
-            langCode = webDriver.getElementAttribute(mainHtml, "xml:lang");
-            if (langCode != null && langCode.length() > 1) {
-                langPrefix = langCode.substring(0, 2);
-                if (langPrefix.equalsIgnoreCase("en")) {
-                    return true;
-                } else {
-                    return false;
-                }
-            }
-        }
-
-        WebElement languageMetaLink = webDriver.findByXPath("/html/head/meta[contains(@http-equiv,'Content-Language')]");
-
-        if (languageMetaLink != null) {
-            String metaLangCode = webDriver.getElementAttribute(languageMetaLink, "content");
-            String langPrefix = "";
-            if (metaLangCode != null) {
-                if (metaLangCode.length() > 1) {
-                    langPrefix = metaLangCode.substring(0, 2);
-                }
-                if (langPrefix.equalsIgnoreCase("en")) {
-                    return true;
-                } else {
-                    return false;
-                }
-            }
-        }
-
-        languageMetaLink = webDriver.findByXPath("/html/head/meta[contains(@http-equiv,'content-language')]");
-
-        if (languageMetaLink != null) {
-            String metaLangCode = webDriver.getElementAttribute(languageMetaLink, "content");
-            String langPrefix = "";
-            if (metaLangCode != null) {
-                if (metaLangCode.length() > 1) {
-                    langPrefix = metaLangCode.substring(0, 2);
-                }
-                if (langPrefix.equalsIgnoreCase("en")) {
-                    return true;
-                } else {
-                    return false;
-                }
-            }
-        }
-
-        WebElement charsetMetaLink = webDriver.findByXPath("/html/head/meta[contains(@http-equiv,'Content-Type')]");
-
-        if (charsetMetaLink != null) {
-            String metaCharsetCode = webDriver.getElementAttribute(charsetMetaLink, "content");
-            if (metaCharsetCode != null) {
-                if (metaCharsetCode.contains("utf-8")
-                        || metaCharsetCode.contains("UTF-8")
-                        || metaCharsetCode.contains("iso-8859-1")
-                        || metaCharsetCode.contains("ISO-8859-1")){
-                    return true;
-                } else {
-                    return false;
-                }
-            }
-        }
+        return getLanguageVerdict().isEnglish();
+    }
 
-        return true;
+    /**
+     *
+     * @return - the verdict on the language of this page (from the facts).
+     * @precon - as per invariant
+     * @postcon - as per invariant/return value
+     */
+    public LanguageVerdict getLanguageVerdict() {
+        return getFacts().getLanguageVerdict();
     }
 
     /**
@@ -223,11 +265,7 @@ public class Page {
      * @postcon - as per invariant/return value
      */
     public boolean isDeadEnd() {
-        if (theLinks == null) {
-            theLinks = webDriver.getAllHyperLinks();
-        }
-
-        if (theLinks.size() < LINK_THRESHHOLD) {
+        if (getFacts().getLinkCount() < LINK_THRESHHOLD) {
             return true;
         }
 
@@ -0,0 +1,97 @@
+package randomwebwalk.browser;
+
+/**
+ *
+ * @author al
+ * Everything the walker needs to know about a page, collected from the
+ * browser in a single round trip (see WebDriverWrapper.collectPageFacts) the
+ * first time any of it is asked for and then shared by all the checks made
+ * on that page.
+ * @invariant - immutable.
+ */
+public class PageFacts {
+
+    private final String theTitle;
+    private final long theLoadTime;
+    private final LinkSnapshot theLinks;
+    private final LanguageVerdict theLanguageVerdict;
+    private final String theValidator;
+
+    /**
+     * @param newTitle - the page title.
+     * @param newLoadTime - the load time reported by the browser in ms (-1 if
+     * unknown).
+     * @param newLinks - the links harvested from the page.
+     * @param newLanguageVerdict - the language verdict for the page.
+     * @param newValidator - summary of the document the facts were collected
+     * from (empty if unknown).
+     */
+    PageFacts(String newTitle,
+            long newLoadTime,
+            LinkSnapshot newLinks,
+            LanguageVerdict newLanguageVerdict,
+            String newValidator) {
+        theTitle = newTitle;
+        theLoadTime = newLoadTime;
+        theLinks = newLinks;
+        theLanguageVerdict = newLanguageVerdict;
+        theValidator = newValidator;
+    }
+
+    /**
+     * @return - these facts with links that no longer refer to elements in
+     * the browser (for use after the browser has left the page).
+     */
+    PageFacts detach() {
+        return new PageFacts(theTitle, theLoadTime, theLinks.detach(), theLanguageVerdict, theValidator);
+    }
+
+    /**
+     * @return - the page title.
+     */
+    public String getTitle() {
+        return theTitle;
+    }
+
+    /**
+     * @return - the load time reported by the browser in ms (-1 if unknown).
+     */
+    public long getLoadTime() {
+        return theLoadTime;
+    }
+
+    /**
+     * @return - the number of links on the page.
+     */
+    public int getLinkCount() {
+        return theLinks.getLinkCount();
+    }
+
+    /**
+     * @return - the language verdict for the page.
+     */
+    public LanguageVerdict getLanguageVerdict() {
+        return theLanguageVerdict;
+    }
+
+    /**
+     * @return - the (possibly sampled) links harvested from the page.
+     */
+    LinkSnapshot getLinks() {
+        return theLinks;
+    }
+
+    /**
+     * @return - summary of the document the facts were collected from, which
+     * the facts still hold for if the document matches it on a later visit
+     * (see WebDriverWrapper.readPageValidator), empty if unknown.
+     */
+    String getValidator() {
+        return theValidator;
+    }
+
+    @Override
+    public String toString() {
+        return "PageFacts{" + "title=" + theTitle + ", loadTime=" + theLoadTime + ", linkCount=" + getLinkCount() + ", language=" + theLanguageVerdict + '}';
+    }
+}
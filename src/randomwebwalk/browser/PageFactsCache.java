@@ -0,0 +1,81 @@
+package randomwebwalk.browser;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ *
+ * @author al
+ * Keeps the facts (links, language, title) of the pages the browser has
+ * recently left, by URL fingerprint, so that coming back to a page (back,
+ * refresh or restore - most often the hub page after a failed step) does
+ * not harvest its links again.
+ * The facts kept are detached (their links are followed by loading the
+ * href) and are only to be reused once the document has been checked
+ * against their validator.
+ * The least recently used page is evicted once the capacity is reached.
+ * @invariant - holds at most capacity pages.
+ */
+class PageFactsCache {
+
+    private final Map<Long, PageFacts> thePages;
+    private int theHitCount = 0;
+    private int theMissCount = 0;
+
+    /**
+     * @param capacity - the maximum number of pages remembered.
+     */
+    PageFactsCache(final int capacity) {
+        thePages = new LinkedHashMap<Long, PageFacts>(capacity, 0.75f, true) {
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, PageFacts> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * @param theFingerprint - fingerprint of the URL of the page left.
+     * @param theFacts - its facts, detached.
+     * @postcon - the facts are remembered unless they can not be validated.
+     */
+    synchronized void put(long theFingerprint, PageFacts theFacts) {
+        if (!theFacts.getValidator().isEmpty()) {
+            thePages.put(Long.valueOf(theFingerprint), theFacts);
+        }
+    }
+
+    /**
+     * @param theFingerprint - fingerprint of the URL of the page come back to.
+     * @return - the facts remembered for it (to be validated) or null.
+     */
+    synchronized PageFacts get(long theFingerprint) {
+        return thePages.get(Long.valueOf(theFingerprint));
+    }
+
+    /**
+     * @param theFingerprint - fingerprint of a page whose facts no longer
+     * hold.
+     */
+    synchronized void remove(long theFingerprint) {
+        thePages.remove(Long.valueOf(theFingerprint));
+    }
+
+    /**
+     * @param isHit - whether remembered facts were reused for a page come
+     * back to.
+     */
+    synchronized void count(boolean isHit) {
+        if (isHit) {
+            ++theHitCount;
+        } else {
+            ++theMissCount;
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return thePages.size() + " pages, " + theHitCount + " reused, " + theMissCount + " harvested again";
+    }
+}
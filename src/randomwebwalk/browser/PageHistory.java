@@ -0,0 +1,111 @@
+package randomwebwalk.browser;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ *
+ * @author al
+ * History of the pages visited held in a fixed capacity ring of PageRecords,
+ * so memory use does not grow with the length of the walk.
+ * If a spill file is given the records that drop out of the ring are
+ * appended to it (as url id, timestamp, arrival ordinal) so the full history
+ * is kept on disk.
+ * @invariant - holds at most capacity records, the most recent ones.
+ */
+public class PageHistory {
+
+    private final PageRecord[] theRecords;
+    private int nextSlot = 0;
+    private int theSize = 0;
+    private DataOutputStream theSpill = null;
+
+    /**
+     * @param capacity - the number of records held in memory.
+     * @param theSpillFile - file the older records are appended to or null.
+     */
+    public PageHistory(int capacity, File theSpillFile) {
+        theRecords = new PageRecord[Math.max(capacity, 1)];
+
+        if (theSpillFile != null) {
+            try {
+                theSpill = new DataOutputStream(new BufferedOutputStream(
+                        new FileOutputStream(theSpillFile, true)));
+            } catch (IOException ex) {
+                Logger.getLogger(PageHistory.class.getName()).log(Level.WARNING,
+                        "Can not open history spill file", ex);
+            }
+        }
+    }
+
+    /**
+     * @param theRecord - the record of the page just arrived at.
+     * @postcon - the record is the most recent in the history, the oldest
+     * record is spilled if the ring was full.
+     */
+    public synchronized void add(PageRecord theRecord) {
+        if (theSize == theRecords.length) {
+            spill(theRecords[nextSlot]);
+        } else {
+            ++theSize;
+        }
+
+        theRecords[nextSlot] = theRecord;
+        nextSlot = (nextSlot + 1) % theRecords.length;
+    }
+
+    /**
+     * @return - the records in memory, oldest first.
+     */
+    public synchronized List<PageRecord> getRecords() {
+        List<PageRecord> theResult = new ArrayList<PageRecord>(theSize);
+        int theStart = (nextSlot - theSize + theRecords.length) % theRecords.length;
+
+        for (int i = 0; i < theSize; ++i) {
+            theResult.add(theRecords[(theStart + i) % theRecords.length]);
+        }
+
+        return theResult;
+    }
+
+    /**
+     * @return - the number of records in memory.
+     */
+    public synchronized int size() {
+        return theSize;
+    }
+
+    /**
+     * @postcon - spilled records are written through to the spill file.
+     */
+    public synchronized void flush() {
+        if (theSpill != null) {
+            try {
+                theSpill.flush();
+            } catch (IOException ex) {
+                Logger.getLogger(PageHistory.class.getName()).log(Level.WARNING, null, ex);
+            }
+        }
+    }
+
+    private void spill(PageRecord theRecord) {
+        if (theSpill != null) {
+            try {
+                theSpill.writeLong(theRecord.getUrlId());
+                theSpill.writeLong(theRecord.getTimestamp());
+                theSpill.writeByte(theRecord.getArrival().ordinal());
+            } catch (IOException ex) {
+                Logger.getLogger(PageHistory.class.getName()).log(Level.WARNING,
+                        "History spill failed - no longer spilling", ex);
+                theSpill = null;
+            }
+        }
+    }
+}
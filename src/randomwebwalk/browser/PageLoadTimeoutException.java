@@ -0,0 +1,31 @@
+package randomwebwalk.browser;
+
+import org.openqa.selenium.WebDriverException;
+
+/**
+ *
+ * @author al
+ * Thrown when a navigation runs past the deadline set for its host (see
+ * HostLoadTimes) - the page load timed out without waiting for the driver's
+ * socket timeout.
+ */
+public class PageLoadTimeoutException extends WebDriverException {
+
+    private static final long serialVersionUID = 1L;
+    private final long theDeadline;
+
+    /**
+     * @param newDeadline - the deadline that was passed (ms).
+     */
+    public PageLoadTimeoutException(long newDeadline) {
+        super("page load stopped after " + newDeadline + "ms");
+        theDeadline = newDeadline;
+    }
+
+    /**
+     * @return - the deadline that was passed (ms).
+     */
+    public long getDeadline() {
+        return theDeadline;
+    }
+}
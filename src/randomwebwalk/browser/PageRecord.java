@@ -0,0 +1,63 @@
+package randomwebwalk.browser;
+
+/**
+ *
+ * @author al
+ * Compact record of a page in the walk history - just the fingerprint of its
+ * URL, when it was arrived at and how.
+ * @invariant - immutable.
+ */
+public class PageRecord {
+
+    // how the browser arrived at the page
+    public enum Arrival {
+
+        forward,
+        back,
+        refresh,
+        direct
+    };
+
+    private final long urlId;
+    private final long theTimestamp;
+    private final Arrival theArrival;
+
+    /**
+     * @param newUrlId - fingerprint of the page URL.
+     * @param newTimestamp - when the page was arrived at (ms since the epoch).
+     * @param newArrival - how it was arrived at.
+     */
+    public PageRecord(long newUrlId,
+            long newTimestamp,
+            Arrival newArrival) {
+        urlId = newUrlId;
+        theTimestamp = newTimestamp;
+        theArrival = newArrival;
+    }
+
+    /**
+     * @return - fingerprint of the page URL.
+     */
+    public long getUrlId() {
+        return urlId;
+    }
+
+    /**
+     * @return - when the page was arrived at (ms since the epoch).
+     */
+    public long getTimestamp() {
+        return theTimestamp;
+    }
+
+    /**
+     * @return - how the page was arrived at.
+     */
+    public Arrival getArrival() {
+        return theArrival;
+    }
+
+    @Override
+    public String toString() {
+        return "PageRecord{" + "urlId=" + Long.toHexString(urlId) + ", timestamp=" + theTimestamp + ", arrival=" + theArrival + '}';
+    }
+}
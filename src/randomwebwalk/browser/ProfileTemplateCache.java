@@ -0,0 +1,413 @@
+package randomwebwalk.browser;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ *
+ * @author al
+ * Cache of stripped copies of firefox profiles to launch FirefoxDriver from.
+ * The driver copies the whole profile it is given on every launch, caches,
+ * session restore and crash data included, so the launch gets slower as the
+ * profile grows. The first launch with a profile copies it once without
+ * those (the template) and later launches are given the template, so only
+ * the stripped copy is cloned.
+ * Templates are named after the profile and a hash of the (unstripped part
+ * of the) source profile - the names, sizes and modification times of its
+ * files - so a template is rebuilt only when the source profile changes.
+ * The hash is only worked out again when the modification times of the
+ * profile directory or its top level entries change (the files firefox
+ * rewrites are at the top level, and adding or removing a file deeper down
+ * changes the time of a top level directory).
+ * A template is in use from getTemplate until releaseTemplate (while the
+ * driver copies it): older templates of a profile are deleted once they are
+ * no longer in use.
+ * The source profile is found from the firefox profiles.ini for the
+ * platform.
+ * @invariant - every template directory in the cache is complete (they are
+ * built under a temporary name and renamed).
+ * @invariant - a template in use is not deleted.
+ */
+public class ProfileTemplateCache {
+
+    private static final ProfileTemplateCache SHARED = new ProfileTemplateCache();
+    private static final Set<String> STRIPPED_NAMES = new HashSet<String>(Arrays.asList(
+            "cache", "cache2", "Cache", "OfflineCache", "startupCache", "thumbnails",
+            "safebrowsing", "crashes", "minidumps", "sessionstore-backups",
+            "sessionstore.js", "sessionstore.bak", "sessionstore.jsonlz4",
+            "sessionCheckpoints.json", "datareporting", "saved-telemetry-pings",
+            "urlclassifier3.sqlite", "lock", ".parentlock", "parent.lock"));
+    private File theCacheDir = new File(System.getProperty("java.io.tmpdir"), "randomwebwalk-profiles");
+    private final Map<File, Integer> theUseCounts = new HashMap<File, Integer>();
+    private final Map<String, String> theCurrentNames = new HashMap<String, String>(); // by profile
+    private final Map<File, String[]> theHashes = new HashMap<File, String[]>(); // source - {stamp, hash}
+    private final Logger theLogger = Logger.getLogger(ProfileTemplateCache.class.getName());
+
+    /**
+     * @return - the cache shared by all walkers in the process.
+     */
+    public static ProfileTemplateCache getShared() {
+        return SHARED;
+    }
+
+    /**
+     * @param newCacheDir - where the templates are kept.
+     */
+    public synchronized void setCacheDir(File newCacheDir) {
+        theCacheDir = newCacheDir;
+    }
+
+    /**
+     * @param profileId - the name of the firefox profile.
+     * @return - the template directory for the profile (built now if there is
+     * none for its current state) or null if there is no such profile or the
+     * template could not be built.
+     * @postcon - a template returned is in use until it is released.
+     */
+    public synchronized File getTemplate(String profileId) {
+        if (profileId == null) {
+            return null;
+        }
+
+        File theSource = findProfileDir(profileId);
+
+        if (theSource == null) {
+            return null;
+        }
+
+        try {
+            String theName = safeName(profileId) + "-" + getHash(theSource);
+            File theTemplate = new File(theCacheDir, theName);
+            theCurrentNames.put(safeName(profileId), theName);
+
+            if (theTemplate.isDirectory()) {
+                use(theTemplate);
+                return theTemplate;
+            }
+
+            long theStart = System.currentTimeMillis();
+
+            if (!theCacheDir.isDirectory() && !theCacheDir.mkdirs()) {
+                throw new IOException("Can not make " + theCacheDir);
+            }
+
+            File theBuildDir = new File(theCacheDir, theName + ".building");
+            delete(theBuildDir);
+            copyStripped(theSource, theBuildDir);
+
+            if (!theBuildDir.renameTo(theTemplate)) {
+                throw new IOException("Can not rename " + theBuildDir + " to " + theTemplate);
+            }
+
+            removeStale(safeName(profileId));
+            theLogger.log(Level.INFO, "Built profile template {0} in {1}ms",
+                    new Object[]{theTemplate, Long.valueOf(System.currentTimeMillis() - theStart)});
+            use(theTemplate);
+            return theTemplate;
+        } catch (IOException ex) {
+            theLogger.log(Level.WARNING, "Can not build template of profile " + profileId, ex);
+            return null;
+        }
+    }
+
+    /**
+     * @param theTemplate - a template got from getTemplate, that the driver
+     * has finished copying.
+     * @postcon - the template is deleted if it is no longer in use and has
+     * been replaced by a newer one.
+     */
+    public synchronized void releaseTemplate(File theTemplate) {
+        Integer theCount = theUseCounts.get(theTemplate);
+
+        if (theCount == null) {
+            return;
+        }
+
+        if (theCount.intValue() > 1) {
+            theUseCounts.put(theTemplate, Integer.valueOf(theCount.intValue() - 1));
+            return;
+        }
+
+        theUseCounts.remove(theTemplate);
+        String theName = theTemplate.getName();
+        String theProfileName = theName.substring(0, theName.lastIndexOf('-'));
+
+        if (!theName.equals(theCurrentNames.get(theProfileName))) {
+            removeStale(theProfileName);
+        }
+    }
+
+    private void use(File theTemplate) {
+        Integer theCount = theUseCounts.get(theTemplate);
+        theUseCounts.put(theTemplate, Integer.valueOf(theCount == null ? 1 : theCount.intValue() + 1));
+    }
+
+    /**
+     * @return - the hash of the profile (worked out again only if the
+     * modification times have changed since the last time).
+     */
+    private String getHash(File theSource) throws IOException {
+        String theStamp = stampProfile(theSource);
+        String[] theKnown = theHashes.get(theSource);
+
+        if (theKnown != null && theKnown[0].equals(theStamp)) {
+            return theKnown[1];
+        }
+
+        String theHash = hashProfile(theSource);
+        theHashes.put(theSource, new String[]{theStamp, theHash});
+        return theHash;
+    }
+
+    /**
+     * @return - the modification times of the profile directory and its top
+     * level entries.
+     */
+    private static String stampProfile(File theSource) throws IOException {
+        File[] theEntries = theSource.listFiles();
+
+        if (theEntries == null) {
+            throw new IOException("Can not list " + theSource);
+        }
+
+        StringBuilder theResult = new StringBuilder().append(theSource.lastModified());
+
+        for (File theEntry : theEntries) {
+            theResult.append(' ').append(theEntry.lastModified()).append(':').append(theEntry.length());
+        }
+
+        return theResult.toString();
+    }
+
+    /**
+     * @return - the directory holding the firefox profiles.ini for this
+     * platform.
+     */
+    private static File getFirefoxDir() {
+        String theOS = System.getProperty("os.name", "").toLowerCase();
+        String theHome = System.getProperty("user.home");
+
+        if (theOS.startsWith("windows")) {
+            String theAppData = System.getenv("APPDATA");
+            return new File(theAppData == null ? theHome : theAppData, "Mozilla" + File.separator + "Firefox");
+        } else if (theOS.startsWith("mac")) {
+            return new File(theHome, "Library/Application Support/Firefox");
+        }
+
+        return new File(theHome, ".mozilla/firefox");
+    }
+
+    /**
+     * @param profileId - the name of the profile.
+     * @return - its directory as listed in profiles.ini or null if there is
+     * none.
+     */
+    private File findProfileDir(String profileId) {
+        File theFirefoxDir = getFirefoxDir();
+        File theIni = new File(theFirefoxDir, "profiles.ini");
+
+        if (!theIni.isFile()) {
+            return null;
+        }
+
+        BufferedReader in = null;
+
+        try {
+            in = new BufferedReader(new FileReader(theIni));
+            String theLine;
+            String theName = null;
+            String thePath = null;
+            boolean isRelative = true;
+
+            // a null line ends the last section
+            do {
+                theLine = in.readLine();
+                String theTrimmed = theLine == null ? "[" : theLine.trim();
+
+                if (theTrimmed.startsWith("[")) {
+                    if (profileId.equals(theName) && thePath != null) {
+                        File theDir = isRelative ? new File(theFirefoxDir, thePath) : new File(thePath);
+                        return theDir.isDirectory() ? theDir : null;
+                    }
+
+                    theName = null;
+                    thePath = null;
+                    isRelative = true;
+                } else if (theTrimmed.startsWith("Name=")) {
+                    theName = theTrimmed.substring("Name=".length());
+                } else if (theTrimmed.startsWith("Path=")) {
+                    thePath = theTrimmed.substring("Path=".length());
+                } else if (theTrimmed.startsWith("IsRelative=")) {
+                    isRelative = theTrimmed.endsWith("1");
+                }
+            } while (theLine != null);
+        } catch (IOException ex) {
+            theLogger.log(Level.WARNING, "Can not read " + theIni, ex);
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    // nothing useful to do
+                }
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * @return - hex hash of the names, sizes and modification times of the
+     * files that go into the template.
+     */
+    private static String hashProfile(File theSource) throws IOException {
+        try {
+            MessageDigest theDigest = MessageDigest.getInstance("SHA-1");
+            hashTree(theDigest, theSource, "");
+            byte[] theHash = theDigest.digest();
+            StringBuilder theResult = new StringBuilder();
+
+            for (int i = 0; i < 8; ++i) {
+                theResult.append(String.format("%02x", Integer.valueOf(theHash[i] & 0xff)));
+            }
+
+            return theResult.toString();
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IOException("No SHA-1", ex);
+        }
+    }
+
+    private static void hashTree(MessageDigest theDigest, File theDir, String thePath) throws IOException {
+        String[] theNames = theDir.list();
+
+        if (theNames == null) {
+            throw new IOException("Can not list " + theDir);
+        }
+
+        Arrays.sort(theNames);
+
+        for (String theName : theNames) {
+            if (STRIPPED_NAMES.contains(theName)) {
+                continue;
+            }
+
+            File theFile = new File(theDir, theName);
+            String theEntry = thePath + "/" + theName;
+
+            if (theFile.isDirectory()) {
+                theDigest.update((theEntry + "/\n").getBytes("UTF-8"));
+                hashTree(theDigest, theFile, theEntry);
+            } else {
+                theDigest.update((theEntry + " " + theFile.length() + " "
+                        + theFile.lastModified() + "\n").getBytes("UTF-8"));
+            }
+        }
+    }
+
+    private static void copyStripped(File theSource, File theTarget) throws IOException {
+        if (!theTarget.mkdirs() && !theTarget.isDirectory()) {
+            throw new IOException("Can not make " + theTarget);
+        }
+
+        String[] theNames = theSource.list();
+
+        if (theNames == null) {
+            throw new IOException("Can not list " + theSource);
+        }
+
+        for (String theName : theNames) {
+            if (STRIPPED_NAMES.contains(theName)) {
+                continue;
+            }
+
+            File theFrom = new File(theSource, theName);
+            File theTo = new File(theTarget, theName);
+
+            if (theFrom.isDirectory()) {
+                copyStripped(theFrom, theTo);
+            } else {
+                copyFile(theFrom, theTo);
+            }
+        }
+    }
+
+    private static void copyFile(File theFrom, File theTo) throws IOException {
+        FileChannel in = null;
+        FileChannel out = null;
+
+        try {
+            in = new FileInputStream(theFrom).getChannel();
+            out = new FileOutputStream(theTo).getChannel();
+            long theSize = in.size();
+            long thePosition = 0;
+
+            while (thePosition < theSize) {
+                thePosition += in.transferTo(thePosition, theSize - thePosition, out);
+            }
+        } finally {
+            if (in != null) {
+                in.close();
+            }
+
+            if (out != null) {
+                out.close();
+            }
+        }
+
+        theTo.setLastModified(theFrom.lastModified());
+    }
+
+    /**
+     * Deletes the older templates of the profile that are not in use.
+     * @param theProfileName - the safe name of the profile.
+     */
+    private void removeStale(String theProfileName) {
+        String theCurrentName = theCurrentNames.get(theProfileName);
+        String thePrefix = theProfileName + "-";
+        String[] theNames = theCacheDir.list();
+
+        if (theNames == null || theCurrentName == null) {
+            return;
+        }
+
+        for (String theName : theNames) {
+            File theTemplate = new File(theCacheDir, theName);
+
+            if (theName.startsWith(thePrefix) && !theName.equals(theCurrentName)
+                    && theName.length() == theCurrentName.length()
+                    && !theUseCounts.containsKey(theTemplate)) {
+                delete(theTemplate);
+            }
+        }
+    }
+
+    private static void delete(File theFile) {
+        File[] theChildren = theFile.listFiles();
+
+        if (theChildren != null) {
+            for (File theChild : theChildren) {
+                delete(theChild);
+            }
+        }
+
+        theFile.delete();
+    }
+
+    private static String safeName(String profileId) {
+        return profileId.replaceAll("[^A-Za-z0-9_.-]", "_");
+    }
+}
@@ -0,0 +1,517 @@
+package randomwebwalk.browser;
+
+/**
+ *
+ * @author al
+ * Puts URLs into a canonical form so that the different ways of writing the
+ * same address compare equal: relative references are resolved against the
+ * page they appear on, scheme and host are lower cased, default ports, dot
+ * segments, fragments and tracking query parameters are removed and an
+ * empty path becomes '/'.
+ * Works directly on the characters (no URL objects are built) and the
+ * fingerprint of a URL is computed in a per thread scratch buffer, so
+ * fingerprinting does not allocate.
+ * Tracking parameters are given as a comma separated list of names, a name
+ * ending in '*' matches every parameter with that prefix.
+ * @invariant - immutable apart from the per thread scratch buffers.
+ */
+public class UrlCanonicalizer {
+
+    public static final String DEFAULT_TRACKING_PARAMS = "utm_*,gclid,fbclid,mc_cid,mc_eid";
+    private final String[] trackingNames;
+    private final boolean[] isPrefix;
+    private final ThreadLocal<StringBuilder> theResolved = new ScratchBuffer();
+    private final ThreadLocal<StringBuilder> theCanonical = new ScratchBuffer();
+
+    /**
+     * Canonicalizer that removes the default tracking parameters.
+     */
+    public UrlCanonicalizer() {
+        this(DEFAULT_TRACKING_PARAMS);
+    }
+
+    /**
+     * @param trackingParams - comma separated parameter names (or prefixes
+     * ending in '*') to remove from queries.
+     */
+    public UrlCanonicalizer(String trackingParams) {
+        String[] theNames = trackingParams.split(",");
+        int theCount = 0;
+
+        for (int i = 0; i < theNames.length; ++i) {
+            theNames[i] = theNames[i].trim();
+
+            if (!theNames[i].isEmpty()) {
+                theNames[theCount++] = theNames[i];
+            }
+        }
+
+        trackingNames = new String[theCount];
+        isPrefix = new boolean[theCount];
+
+        for (int i = 0; i < theCount; ++i) {
+            isPrefix[i] = theNames[i].endsWith("*");
+            trackingNames[i] = isPrefix[i]
+                    ? theNames[i].substring(0, theNames[i].length() - 1)
+                    : theNames[i];
+        }
+    }
+
+    /**
+     * @param theURL - an absolute URL.
+     * @return - the canonical form of the URL (or the URL itself if it can
+     * not be parsed).
+     */
+    public String canonicalize(CharSequence theURL) {
+        return canonicalize(null, theURL);
+    }
+
+    /**
+     * @param theBase - the URL of the page the reference appears on (or null).
+     * @param theReference - an absolute or relative reference.
+     * @return - the canonical form of the resolved reference (or the
+     * reference itself if it can not be resolved).
+     */
+    public String canonicalize(CharSequence theBase, CharSequence theReference) {
+        return build(theBase, theReference).toString();
+    }
+
+    /**
+     * @param theURL - an absolute URL.
+     * @return - non zero 64 bit fingerprint of the canonical form of the URL.
+     */
+    public long fingerprint(CharSequence theURL) {
+        return fingerprint(null, theURL);
+    }
+
+    /**
+     * @param theBase - the URL of the page the reference appears on (or null).
+     * @param theReference - an absolute or relative reference.
+     * @return - non zero 64 bit fingerprint of the canonical form of the
+     * resolved reference.
+     */
+    public long fingerprint(CharSequence theBase, CharSequence theReference) {
+        return hash(build(theBase, theReference));
+    }
+
+    /**
+     * @param thePageURL - the URL of the page the link is on.
+     * @param theHref - the (absolute or relative) href of the link.
+     * @return - whether the link leads to an http(s) page other than the one
+     * it is on.
+     */
+    public boolean isFollowable(CharSequence thePageURL, CharSequence theHref) {
+        StringBuilder theResult = build(thePageURL, theHref);
+
+        if (!isWebURL(theResult)) {
+            return false;
+        }
+
+        long theLinkFingerprint = hash(theResult);
+        return theLinkFingerprint != fingerprint(thePageURL);
+    }
+
+    /**
+     * @return - non zero 64 bit FNV-1a hash (with a final mix) of the
+     * characters.
+     */
+    private static long hash(CharSequence theText) {
+        long theHash = 0xcbf29ce484222325L;
+
+        for (int i = 0; i < theText.length(); ++i) {
+            theHash ^= theText.charAt(i);
+            theHash *= 0x100000001b3L;
+        }
+
+        // final avalanche so that the low bits are well mixed
+        theHash ^= theHash >>> 33;
+        theHash *= 0xff51afd7ed558ccdL;
+        theHash ^= theHash >>> 33;
+
+        return theHash == 0 ? 1 : theHash;
+    }
+
+    /**
+     * @param theURL - an absolute URL.
+     * @return - the lower case host of the URL or empty if it has none.
+     */
+    public String hostOf(CharSequence theURL) {
+        StringBuilder theResult = build(null, theURL);
+        int theStart = indexOf(theResult, "://", 0);
+
+        if (theStart < 0) {
+            return "";
+        }
+
+        theStart += 3;
+        int theEnd = theStart;
+
+        while (theEnd < theResult.length()
+                && theResult.charAt(theEnd) != '/'
+                && theResult.charAt(theEnd) != ':') {
+            if (theResult.charAt(theEnd) == '@') {
+                theStart = theEnd + 1;
+            }
+
+            ++theEnd;
+        }
+
+        return theResult.substring(theStart, theEnd);
+    }
+
+    /**
+     * @param theURL - an absolute URL.
+     * @return - whether the URL is http or https.
+     */
+    public boolean isWebURL(CharSequence theURL) {
+        int theStart = skipSpace(theURL, 0, theURL.length());
+        int theSchemeEnd = schemeEnd(theURL, theStart, theURL.length());
+
+        if (theSchemeEnd < 0) {
+            return false;
+        }
+
+        int theLength = theSchemeEnd - theStart;
+
+        return (theLength == 4 && regionMatches(theURL, theStart, "http"))
+                || (theLength == 5 && regionMatches(theURL, theStart, "https"));
+    }
+
+    /**
+     * @param theBase - base URL or null.
+     * @param theReference - the reference.
+     * @return - the scratch buffer holding the canonical form (valid until
+     * the next call on this thread).
+     */
+    private StringBuilder build(CharSequence theBase, CharSequence theReference) {
+        StringBuilder theResolvedURL = theResolved.get();
+        StringBuilder theResult = theCanonical.get();
+        theResolvedURL.setLength(0);
+        theResult.setLength(0);
+
+        if (resolve(theBase, theReference, theResolvedURL)) {
+            int theSchemeEnd = schemeEnd(theResolvedURL, 0, theResolvedURL.length());
+            normalise(theResolvedURL, theSchemeEnd, theResult);
+        } else {
+            int theStart = skipSpace(theReference, 0, theReference.length());
+            int theEnd = trimEnd(theReference, theStart, theReference.length());
+            theResult.append(theReference, theStart, theEnd);
+        }
+
+        return theResult;
+    }
+
+    /**
+     * @param theBase - base URL or null.
+     * @param theReference - the reference.
+     * @param theResult - where the absolute (but not normalised) URL goes.
+     * @return - whether the reference could be resolved.
+     */
+    private boolean resolve(CharSequence theBase,
+            CharSequence theReference,
+            StringBuilder theResult) {
+        int theStart = skipSpace(theReference, 0, theReference.length());
+        int theEnd = trimEnd(theReference, theStart, theReference.length());
+
+        if (schemeEnd(theReference, theStart, theEnd) >= 0) {
+            theResult.append(theReference, theStart, theEnd);
+            return true;
+        }
+
+        if (theBase == null) {
+            return false;
+        }
+
+        int theBaseStart = skipSpace(theBase, 0, theBase.length());
+        int theBaseEnd = trimEnd(theBase, theBaseStart, theBase.length());
+        int theBaseScheme = schemeEnd(theBase, theBaseStart, theBaseEnd);
+
+        if (theBaseScheme < 0
+                || !regionMatches(theBase, theBaseScheme, "://")) {
+            return false;
+        }
+
+        int theAuthorityEnd = findAny(theBase, theBaseScheme + 3, theBaseEnd, "/?#");
+        int thePathEnd = findAny(theBase, theAuthorityEnd, theBaseEnd, "?#");
+        int theQueryEnd = findAny(theBase, thePathEnd, theBaseEnd, "#");
+
+        if (regionMatches(theReference, theStart, "//")) {
+            theResult.append(theBase, theBaseStart, theBaseScheme + 1);
+        } else if (theStart < theEnd && theReference.charAt(theStart) == '/') {
+            theResult.append(theBase, theBaseStart, theAuthorityEnd);
+        } else if (theStart < theEnd && theReference.charAt(theStart) == '?') {
+            theResult.append(theBase, theBaseStart, thePathEnd);
+        } else if (theStart == theEnd || theReference.charAt(theStart) == '#') {
+            theResult.append(theBase, theBaseStart, theQueryEnd);
+        } else {
+            int theLastSlash = -1;
+
+            for (int i = theAuthorityEnd; i < thePathEnd; ++i) {
+                if (theBase.charAt(i) == '/') {
+                    theLastSlash = i;
+                }
+            }
+
+            if (theLastSlash < 0) {
+                theResult.append(theBase, theBaseStart, theAuthorityEnd).append('/');
+            } else {
+                theResult.append(theBase, theBaseStart, theLastSlash + 1);
+            }
+        }
+
+        theResult.append(theReference, theStart, theEnd);
+        return true;
+    }
+
+    /**
+     * @param theURL - absolute URL.
+     * @param theSchemeEnd - index of the ':' ending the scheme.
+     * @param theResult - where the canonical form goes.
+     */
+    private void normalise(CharSequence theURL, int theSchemeEnd, StringBuilder theResult) {
+        int theEnd = theURL.length();
+
+        for (int i = 0; i < theSchemeEnd; ++i) {
+            theResult.append(Character.toLowerCase(theURL.charAt(i)));
+        }
+
+        theResult.append(':');
+
+        if (!regionMatches(theURL, theSchemeEnd, "://")) {
+            // opaque (e.g. mailto:) - just drop the fragment
+            theResult.append(theURL, theSchemeEnd + 1, findAny(theURL, theSchemeEnd + 1, theEnd, "#"));
+            return;
+        }
+
+        theResult.append("//");
+        int theAuthorityStart = theSchemeEnd + 3;
+        int theAuthorityEnd = findAny(theURL, theAuthorityStart, theEnd, "/?#");
+        int theHostStart = theAuthorityStart;
+
+        for (int i = theAuthorityStart; i < theAuthorityEnd; ++i) {
+            if (theURL.charAt(i) == '@') {
+                theHostStart = i + 1;
+            }
+        }
+
+        theResult.append(theURL, theAuthorityStart, theHostStart);
+        int thePortStart = theAuthorityEnd;
+
+        for (int i = theAuthorityEnd - 1; i >= theHostStart; --i) {
+            char theChar = theURL.charAt(i);
+
+            if (theChar == ':') {
+                thePortStart = i;
+                break;
+            }
+
+            if (theChar == ']' || !Character.isDigit(theChar)) {
+                break;
+            }
+        }
+
+        for (int i = theHostStart; i < thePortStart; ++i) {
+            theResult.append(Character.toLowerCase(theURL.charAt(i)));
+        }
+
+        if (thePortStart + 1 < theAuthorityEnd
+                && !isDefaultPort(theResult, theURL, thePortStart + 1, theAuthorityEnd)) {
+            theResult.append(theURL, thePortStart, theAuthorityEnd);
+        }
+
+        int thePathEnd = findAny(theURL, theAuthorityEnd, theEnd, "?#");
+        appendPath(theURL, theAuthorityEnd, thePathEnd, theResult);
+
+        if (thePathEnd < theEnd && theURL.charAt(thePathEnd) == '?') {
+            appendQuery(theURL, thePathEnd + 1, findAny(theURL, thePathEnd, theEnd, "#"), theResult);
+        }
+    }
+
+    /**
+     * Appends the path with the dot segments removed.
+     */
+    private static void appendPath(CharSequence theURL, int theStart, int theEnd, StringBuilder theResult) {
+        int thePathStart = theResult.length();
+        int i = theStart;
+
+        while (i < theEnd) {
+            int theSegmentStart = theURL.charAt(i) == '/' ? i + 1 : i;
+            int theSegmentEnd = findAny(theURL, theSegmentStart, theEnd, "/");
+            int theLength = theSegmentEnd - theSegmentStart;
+
+            if (theLength == 1 && theURL.charAt(theSegmentStart) == '.') {
+                if (theSegmentEnd == theEnd) {
+                    theResult.append('/');
+                }
+            } else if (theLength == 2
+                    && theURL.charAt(theSegmentStart) == '.'
+                    && theURL.charAt(theSegmentStart + 1) == '.') {
+                int theCut = theResult.length() - 1;
+
+                while (theCut > thePathStart && theResult.charAt(theCut) != '/') {
+                    --theCut;
+                }
+
+                theResult.setLength(Math.max(theCut, thePathStart));
+
+                if (theSegmentEnd == theEnd) {
+                    theResult.append('/');
+                }
+            } else {
+                theResult.append('/');
+                theResult.append(theURL, theSegmentStart, theSegmentEnd);
+            }
+
+            i = theSegmentEnd;
+        }
+
+        if (theResult.length() == thePathStart) {
+            theResult.append('/');
+        }
+    }
+
+    /**
+     * Appends the query without empty or tracking parameters.
+     */
+    private void appendQuery(CharSequence theURL, int theStart, int theEnd, StringBuilder theResult) {
+        boolean isFirst = true;
+        int i = theStart;
+
+        while (i < theEnd) {
+            int theParamEnd = findAny(theURL, i, theEnd, "&");
+            int theNameEnd = findAny(theURL, i, theParamEnd, "=");
+
+            if (theParamEnd > i && !isTracking(theURL, i, theNameEnd)) {
+                theResult.append(isFirst ? '?' : '&');
+                theResult.append(theURL, i, theParamEnd);
+                isFirst = false;
+            }
+
+            i = theParamEnd + 1;
+        }
+    }
+
+    private boolean isTracking(CharSequence theURL, int theStart, int theEnd) {
+        for (int i = 0; i < trackingNames.length; ++i) {
+            String theName = trackingNames[i];
+            int theLength = theEnd - theStart;
+
+            if ((isPrefix[i] ? theLength >= theName.length() : theLength == theName.length())
+                    && regionMatches(theURL, theStart, theName)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static boolean isDefaultPort(CharSequence theScheme, CharSequence theURL, int theStart, int theEnd) {
+        int theLength = theEnd - theStart;
+
+        if (regionMatches(theScheme, 0, "http:")) {
+            return theLength == 2 && regionMatches(theURL, theStart, "80");
+        }
+
+        if (regionMatches(theScheme, 0, "https:")) {
+            return theLength == 3 && regionMatches(theURL, theStart, "443");
+        }
+
+        return false;
+    }
+
+    /**
+     * @return - index of the ':' ending a valid scheme at the start or -1.
+     */
+    private static int schemeEnd(CharSequence theURL, int theStart, int theEnd) {
+        if (theStart >= theEnd || !isAsciiLetter(theURL.charAt(theStart))) {
+            return -1;
+        }
+
+        for (int i = theStart + 1; i < theEnd; ++i) {
+            char theChar = theURL.charAt(i);
+
+            if (theChar == ':') {
+                return i;
+            }
+
+            if (!(isAsciiLetter(theChar) || Character.isDigit(theChar)
+                    || theChar == '+' || theChar == '-' || theChar == '.')) {
+                return -1;
+            }
+        }
+
+        return -1;
+    }
+
+    private static boolean isAsciiLetter(char theChar) {
+        return (theChar >= 'a' && theChar <= 'z') || (theChar >= 'A' && theChar <= 'Z');
+    }
+
+    /**
+     * @return - index of the first of the characters at or after start, or
+     * end if there is none.
+     */
+    private static int findAny(CharSequence theURL, int theStart, int theEnd, String theChars) {
+        for (int i = theStart; i < theEnd; ++i) {
+            if (theChars.indexOf(theURL.charAt(i)) >= 0) {
+                return i;
+            }
+        }
+
+        return theEnd;
+    }
+
+    private static int indexOf(CharSequence theURL, String theText, int theStart) {
+        for (int i = theStart; i + theText.length() <= theURL.length(); ++i) {
+            if (regionMatches(theURL, i, theText)) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * @return - whether the text appears (ignoring case) at start.
+     */
+    private static boolean regionMatches(CharSequence theURL, int theStart, String theText) {
+        if (theStart + theText.length() > theURL.length()) {
+            return false;
+        }
+
+        for (int i = 0; i < theText.length(); ++i) {
+            if (Character.toLowerCase(theURL.charAt(theStart + i)) != theText.charAt(i)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static int skipSpace(CharSequence theURL, int theStart, int theEnd) {
+        while (theStart < theEnd && Character.isWhitespace(theURL.charAt(theStart))) {
+            ++theStart;
+        }
+
+        return theStart;
+    }
+
+    private static int trimEnd(CharSequence theURL, int theStart, int theEnd) {
+        while (theEnd > theStart && Character.isWhitespace(theURL.charAt(theEnd - 1))) {
+            --theEnd;
+        }
+
+        return theEnd;
+    }
+
+    /**
+     * Per thread buffer reused between calls.
+     */
+    private static class ScratchBuffer extends ThreadLocal<StringBuilder> {
+
+        @Override
+        protected StringBuilder initialValue() {
+            return new StringBuilder(256);
+        }
+    }
+}
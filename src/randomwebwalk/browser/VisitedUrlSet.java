@@ -0,0 +1,122 @@
+package randomwebwalk.browser;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ *
+ * @author al
+ * The set of every URL visited during the walk (and, with a file backed
+ * Bloom filter, earlier walks) held as 64 bit fingerprints of the
+ * canonical URL (see UrlCanonicalizer) in an open addressing table of
+ * primitive longs.
+ * The table grows up to a maximum size, after that only the Bloom filter (if
+ * there is one) records new URLs so memory stays bounded.
+ * @invariant - zero is never stored as a fingerprint (it marks empty slots).
+ */
+public class VisitedUrlSet {
+
+    private static final int INITIAL_CAPACITY = 1024;
+    private long[] theTable = new long[INITIAL_CAPACITY];
+    private int theSize = 0;
+    private final int maxCapacity;
+    private final BloomFilter theBloomFilter;
+    private boolean isFullReported = false;
+
+    /**
+     * @param maxEntries - the most fingerprints held in the table.
+     * @param newBloomFilter - filter that also records the URLs (or null).
+     */
+    public VisitedUrlSet(int maxEntries,
+            BloomFilter newBloomFilter) {
+        int theCapacity = INITIAL_CAPACITY;
+
+        while (theCapacity < maxEntries * 2 && theCapacity < (1 << 30)) {
+            theCapacity <<= 1;
+        }
+
+        maxCapacity = theCapacity;
+        theBloomFilter = newBloomFilter;
+    }
+
+    /**
+     * @param theFingerprint - fingerprint of a visited URL.
+     */
+    public synchronized void add(long theFingerprint) {
+        if (theBloomFilter != null) {
+            theBloomFilter.add(theFingerprint);
+        }
+
+        if ((theSize + 1) * 2 > theTable.length) {
+            if (theTable.length >= maxCapacity) {
+                if (!isFullReported) {
+                    isFullReported = true;
+                    Logger.getLogger(VisitedUrlSet.class.getName()).log(Level.INFO,
+                            "Visited table full at {0} URLs", Integer.valueOf(theSize));
+                }
+                return;
+            }
+
+            grow();
+        }
+
+        int theSlot = findSlot(theTable, theFingerprint);
+
+        if (theTable[theSlot] == 0) {
+            theTable[theSlot] = theFingerprint;
+            ++theSize;
+        }
+    }
+
+    /**
+     * @param theFingerprint - fingerprint of a URL.
+     * @return - whether the URL has been visited (if only the Bloom filter
+     * holds it there is a small chance of a false positive).
+     */
+    public synchronized boolean contains(long theFingerprint) {
+        if (theTable[findSlot(theTable, theFingerprint)] != 0) {
+            return true;
+        }
+
+        return theBloomFilter != null && theBloomFilter.mightContain(theFingerprint);
+    }
+
+    /**
+     * @return - the number of fingerprints in the table.
+     */
+    public synchronized int size() {
+        return theSize;
+    }
+
+    /**
+     * @postcon - a file backed Bloom filter is written through.
+     */
+    public synchronized void flush() {
+        if (theBloomFilter != null) {
+            theBloomFilter.flush();
+        }
+    }
+
+    private static int findSlot(long[] theTable, long theFingerprint) {
+        int theMask = theTable.length - 1;
+        int theSlot = (int) theFingerprint & theMask;
+
+        while (theTable[theSlot] != 0 && theTable[theSlot] != theFingerprint) {
+            theSlot = (theSlot + 1) & theMask;
+        }
+
+        return theSlot;
+    }
+
+    private void grow() {
+        long[] theNewTable = new long[theTable.length * 2];
+
+        for (int i = 0; i < theTable.length; ++i) {
+            if (theTable[i] != 0) {
+                theNewTable[findSlot(theNewTable, theTable[i])] = theTable[i];
+            }
+        }
+
+        theTable = theNewTable;
+    }
+}
@@ -5,25 +5,31 @@
 package randomwebwalk.browser;
 
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import java.io.File;
-import java.io.IOException;
-import org.apache.commons.io.FileUtils;
-
 import org.openqa.selenium.By;
-import org.openqa.selenium.OutputType;
-import org.openqa.selenium.TakesScreenshot;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.RenderedWebElement;
 import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
 import org.openqa.selenium.WebElement;
-import org.openqa.selenium.chrome.ChromeDriver;
-import org.openqa.selenium.firefox.FirefoxDriver;
-import org.openqa.selenium.firefox.FirefoxProfile;
-import org.openqa.selenium.firefox.FirefoxWebElement;
-import org.openqa.selenium.firefox.internal.ProfilesIni;
+import randomwebwalk.WalkerThreads;
 
 /**
  *
@@ -31,157 +37,750 @@ import org.openqa.selenium.firefox.internal.ProfilesIni;
  * Facade for the selenium WebDriver class.
  * The documentation for the commands below is found in the selenium
  * documentation - http://selenium.googlecode.com/svn/trunk/docs/api/java/org/openqa/selenium/WebDriver.html.
- * @invariant WebDriver exists and is valid (a corresponding firefox window
- * exists).
- * Note that all commands are routed through the firefox browser. Nothing is
- * cached.
- * All commands here are synchronised on the WebDriver because it uses a
- * single connection manager, so if you are using multiple threads they must be
- * serialised.
+ * @invariant WebDriver exists and is valid (a corresponding browser, e.g.
+ * a firefox window, exists).
+ * Note that all commands are routed through the browser backend (firefox or
+ * headless HtmlUnit). Nothing is cached.
+ * All commands here are serialised because the WebDriver uses a single
+ * connection manager: each is queued as a future on a command queue run by
+ * one owner thread per browser, so no caller holds a lock while the driver
+ * is busy. Stop and pause cancel the queued commands.
+ * The one exception is the window.stop() sent to stop an in-flight load:
+ * it is sent from another thread while the owner thread is blocked in the
+ * load, and only for engines that say this is safe
+ * (BrowserBackend.canStopConcurrently). For other engines an in-flight load
+ * is never stopped, it runs to completion.
+ * Navigations can be given a deadline: when it passes the navigation throws
+ * PageLoadTimeoutException, the load having been stopped by a watchdog if
+ * the engine allows that or else left to finish (see navigate).
  */
 public class WebDriverWrapper {
 
     private final WebDriver webDriver;
-    private final FirefoxDriver ffWebDriver;
+    private final BrowserBackend theBackend;
+    private final DriverCommandQueue theCommands;
+    private final Random theSampleRandom = new Random(); // seeds the link sample of each harvest
+    private static final AtomicInteger DRIVER_NUMBER = new AtomicInteger();
+    private static final long ABORT_IDLE_LIMIT = 5000; // ms for an aborted load to return
+    private static final long STOP_WAIT_LIMIT = 5000; // ms for a queued stop to be sent
+    private static final long QUIT_LIMIT = 10000; // ms for the driver to quit
+    private static final int RUNNING = 0;  // states of a load with a deadline
+    private static final int LOADED = 1;
+    private static final int STOPPED = 2;
+    private static final ScheduledExecutorService WATCHDOG =
+            Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+        public Thread newThread(Runnable theTask) {
+            Thread theThread = new Thread(theTask, "LoadWatchdog");
+            theThread.setDaemon(true);
+            return theThread;
+        }
+    });
+
+    // Collects href, text, visibility and enabled state for the anchors
+    // under the body a walk could take: visible, http(s) and not just a
+    // fragment of the current page.
+    // limit is the sample limit - if more anchors than this are eligible (and
+    // the limit is positive) a random sample of them is taken in the browser
+    // so that only the sampled anchors are serialised back. seed (1 to
+    // 2147483646) starts the minimal standard generator the sample is drawn
+    // with, so a seeded walk samples the same links each time.
+    // The result is [total, [element, href, text, visible, enabled], ...]
+    // where total counts every anchor with an href.
+    private static final String HARVEST_LINKS_FUNCTION =
+            "function (limit, seed) {"
+            + "var all = document.body ? document.body.getElementsByTagName('a') : [];"
+            + "var page = window.location.href.split('#')[0];"
+            + "var total = 0;"
+            + "var anchors = [];"
+            + "for (var i = 0; i < all.length; i++) {"
+            + "  var a = all[i];"
+            + "  if (!a.hasAttribute('href')) { continue; }"
+            + "  total++;"
+            + "  if (a.protocol != 'http:' && a.protocol != 'https:') { continue; }"
+            + "  if (a.href.split('#')[0] == page) { continue; }"
+            + "  if (!(a.offsetWidth > 0 || a.offsetHeight > 0)) { continue; }"
+            + "  var style = window.getComputedStyle ? window.getComputedStyle(a, null) : null;"
+            + "  if (style && (style.visibility == 'hidden' || style.display == 'none')) { continue; }"
+            + "  anchors.push(a);"
+            + "}"
+            + "if (limit > 0 && anchors.length > limit) {"
+            + "  for (var j = 0; j < limit; j++) {"
+            + "    seed = seed * 16807 % 2147483647;"
+            + "    var k = j + Math.floor((seed - 1) / 2147483646 * (anchors.length - j));"
+            + "    var tmp = anchors[j]; anchors[j] = anchors[k]; anchors[k] = tmp;"
+            + "  }"
+            + "  anchors.length = limit;"
+            + "}"
+            + "var result = [total];"
+            + "for (var n = 0; n < anchors.length; n++) {"
+            + "  var b = anchors[n];"
+            + "  var text = b.textContent ? b.textContent.replace(/\\s+/g, ' ').replace(/^ | $/g, '') : '';"
+            + "  result.push([b, b.href, text, true, !b.disabled]);"
+            + "}"
+            + "return result;"
+            + "}";
+
+    // Collects the language declarations of the current page and a sample
+    // of its text. limit is the maximum length of the text sample.
+    // The result is [html lang, html xml:lang, Content-Language meta,
+    // charset meta, document.documentElement.lang, text sample] with null
+    // for anything not declared.
+    private static final String PROBE_LANGUAGE_FUNCTION =
+            "function (limit) {"
+            + "var probe = [null, null, null, null, null, null];"
+            + "var html = document.documentElement;"
+            + "if (html) {"
+            + "  probe[0] = html.getAttribute('lang');"
+            + "  probe[1] = html.getAttribute('xml:lang');"
+            + "  probe[4] = html.lang ? html.lang : null;"
+            + "}"
+            + "var metas = document.getElementsByTagName('meta');"
+            + "for (var i = 0; i < metas.length; i++) {"
+            + "  var equiv = metas[i].getAttribute('http-equiv');"
+            + "  if (equiv) {"
+            + "    equiv = equiv.toLowerCase();"
+            + "    if (equiv.indexOf('content-language') >= 0 && probe[2] === null) {"
+            + "      probe[2] = metas[i].getAttribute('content');"
+            + "    } else if (equiv.indexOf('content-type') >= 0 && probe[3] === null) {"
+            + "      probe[3] = metas[i].getAttribute('content');"
+            + "    }"
+            + "  } else if (metas[i].getAttribute('charset') && probe[3] === null) {"
+            + "    probe[3] = metas[i].getAttribute('charset');"
+            + "  }"
+            + "}"
+            + "if (document.body) {"
+            + "  var text = document.body.innerText ? document.body.innerText : document.body.textContent;"
+            + "  probe[5] = text ? text.substring(0, limit) : null;"
+            + "}"
+            + "return probe;"
+            + "}";
+
+    // Summarises the current document cheaply enough to tell, on coming back
+    // to a page, whether the links harvested from it earlier still hold:
+    // title, anchor count and element count. document.lastModified is no
+    // use for this as it is the load time for any dynamic page.
+    private static final String PAGE_VALIDATOR_FUNCTION =
+            "function () {"
+            + "var body = document.body;"
+            + "return document.title"
+            + "    + '|' + (body ? body.getElementsByTagName('a').length : 0)"
+            + "    + '|' + (body ? body.getElementsByTagName('*').length : 0);"
+            + "}";
+
+    private static final String PAGE_VALIDATOR_SCRIPT =
+            "return (" + PAGE_VALIDATOR_FUNCTION + ")();";
+
+    // Collects everything needed about the current page in a single script
+    // evaluation. arguments[0] is the link sample limit, arguments[1] the
+    // text sample limit and arguments[2] the link sample seed. The result is [title, load time in ms (or -1 if the
+    // browser does not report it), link harvest, language probe, validator].
+    private static final String PAGE_FACTS_SCRIPT =
+            "var timing = window.performance ? window.performance.timing : null;"
+            + "var loadTime = (timing && timing.loadEventEnd > 0)"
+            + "    ? timing.loadEventEnd - timing.navigationStart : -1;"
+            + "return [document.title, loadTime,"
+            + "    (" + HARVEST_LINKS_FUNCTION + ")(arguments[0], arguments[2]),"
+            + "    (" + PROBE_LANGUAGE_FUNCTION + ")(arguments[1]),"
+            + "    (" + PAGE_VALIDATOR_FUNCTION + ")()];";
+
+
+    /**
+     * @param newBackend - the engine to drive.
+     * @param theMode - the kind of thread that owns the driver.
+     */
+    WebDriverWrapper(BrowserBackend newBackend, WalkerThreads.ExecutionMode theMode) {
+        theBackend = newBackend;
+        webDriver = theBackend.getDriver();
+        theCommands = new DriverCommandQueue("Driver-" + DRIVER_NUMBER.incrementAndGet(), theMode);
+    }
+
+    /**
+     * Quits the browser within a bounded time: queued commands are
+     * cancelled and any in-flight load is stopped before the quit is run.
+     * @postcon - the driver has quit (or been abandoned if it did not
+     * respond within the limits) and the command queue is shut down.
+     */
+    void quit() {
+        long theStart = System.currentTimeMillis();
+        abort();
+
+        try {
+            if (!theCommands.awaitIdle(ABORT_IDLE_LIMIT)) {
+                Logger.getLogger(WebDriverWrapper.class.getName()).log(Level.WARNING,
+                        "driver still busy {0}ms after abort", Long.valueOf(ABORT_IDLE_LIMIT));
+            }
+
+            theCommands.await(theCommands.submit(DriverCommandQueue.Priority.urgent,
+                    new Callable<Object>() {
+
+                        public Object call() {
+                            webDriver.quit();
+                            return null;
+                        }
+                    }), QUIT_LIMIT);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } finally {
+            theCommands.shutdown();
+            Logger.getLogger(WebDriverWrapper.class.getName()).log(Level.INFO,
+                    "stop to idle took {0}ms", Long.valueOf(System.currentTimeMillis() - theStart));
+        }
+    }
 
-    WebDriverWrapper(String profileId) {
-        ProfilesIni allProfiles = new ProfilesIni();
-        FirefoxProfile theProfile = allProfiles.getProfile(profileId);
+    /**
+     * Gives up the engine without quitting it so that it can be reused (see
+     * BrowserPool): queued commands are cancelled and any in-flight load is
+     * stopped first.
+     * @return - the engine, or null if it was still busy after the abort (it
+     * is then quit instead).
+     * @postcon - the command queue is shut down.
+     */
+    BrowserBackend detach() {
+        abort();
 
-        if(theProfile == null){
-            ffWebDriver = new FirefoxDriver();
-        } else {
-            ffWebDriver = new FirefoxDriver(theProfile);
+        try {
+            if (theCommands.awaitIdle(ABORT_IDLE_LIMIT)) {
+                theCommands.shutdown();
+                return theBackend;
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
         }
-        
-        webDriver = ffWebDriver;
-     }
 
-    synchronized void quit() {
-        webDriver.quit();
+        Logger.getLogger(WebDriverWrapper.class.getName()).log(Level.WARNING,
+                "driver still busy {0}ms after abort - quitting it", Long.valueOf(ABORT_IDLE_LIMIT));
+        quit();
+        return null;
+    }
+
+    /**
+     * Cancels every queued command and stops any page load in flight if the
+     * engine allows that (the window.stop() is sent from the calling thread
+     * since the owner thread is blocked in the load).
+     * @postcon - callers waiting on cancelled commands get a
+     * WebDriverException.
+     */
+    void abort() {
+        int theCancelled = theCommands.abort(!theBackend.canStopConcurrently() ? null
+                : new Runnable() {
+
+            public void run() {
+                sendStop();
+            }
+        });
+
+        Logger.getLogger(WebDriverWrapper.class.getName()).log(Level.INFO,
+                "aborted with {0} commands cancelled", Integer.valueOf(theCancelled));
+    }
+
+    /**
+     * Stops a page load left running by a socket timeout. The stop is queued
+     * ahead of other commands, but still waits for the command in flight, so
+     * the wait for it is bounded.
+     * @postcon - the stop has been sent, or has been cancelled after
+     * STOP_WAIT_LIMIT if the driver was still busy.
+     */
+    void stopPageLoad() {
+        Future<Object> theStop = theCommands.submit(DriverCommandQueue.Priority.urgent,
+                new Callable<Object>() {
+
+                    public Object call() {
+                        sendStop();
+                        return null;
+                    }
+                });
+
+        try {
+            theCommands.await(theStop, STOP_WAIT_LIMIT);
+        } catch (WebDriverException ex) {
+            theStop.cancel(false);
+            Logger.getLogger(WebDriverWrapper.class.getName()).log(Level.WARNING,
+                    "page load not stopped: {0}", ex.getMessage());
+        }
     }
 
-    synchronized void stopPageLoad() {
+    private void sendStop() {
         try{
             Object nullArgs = null;
-            Object executeScriptResult = ffWebDriver.executeScript("window.stop()", nullArgs);
+            Object executeScriptResult = executeScript("window.stop()", nullArgs);
             Logger.getLogger(WebDriverWrapper.class.getName()).log(Level.INFO, "page load stopped");
         } catch(UnsupportedOperationException ex) {
             Logger.getLogger(WebDriverWrapper.class.getName()).log(Level.INFO, null, ex);
         }
     }
 
-    synchronized String getCurrentPage() {
-        String theResult = "";
+    String getCurrentPage() {
+        return theCommands.call(new Callable<String>() {
 
-        try{
-            theResult = webDriver.getCurrentUrl();
-        } catch(NullPointerException ex) {
-            Logger.getLogger(WebDriverWrapper.class.getName()).log(Level.SEVERE, null, ex);
-        }
+            public String call() {
+                String theResult = "";
 
-        return theResult;
+                try{
+                    theResult = webDriver.getCurrentUrl();
+                } catch(NullPointerException ex) {
+                    Logger.getLogger(WebDriverWrapper.class.getName()).log(Level.SEVERE, null, ex);
+                }
+
+                return theResult;
+            }
+        });
+    }
+
+    /**
+     * @param theSeed - seeds the random samples of links taken from here on.
+     */
+    void setSampleSeed(long theSeed) {
+        theSampleRandom.setSeed(theSeed);
+    }
+
+    /**
+     * Collects the facts about the current page in one round trip.
+     * @param linkSampleLimit - the maximum number of links to bring back (a
+     * random sample of the eligible links is taken in the browser if there
+     * are more), zero or less for all of them.
+     * @param textSampleLimit - the maximum number of characters of page text
+     * to sample for language classification.
+     * @return - the facts (never null, empty if the script failed).
+     */
+    PageFacts collectPageFacts(final int linkSampleLimit, final int textSampleLimit) {
+        return theCommands.call(new Callable<PageFacts>() {
+
+            public PageFacts call() {
+                return readPageFacts(linkSampleLimit, textSampleLimit);
+            }
+        });
     }
 
-    synchronized List<WebElement> getAllHyperLinks() {
-        List<WebElement> theResult = null;
+    /**
+     * @return - the validator of the current page (see PageFacts), empty if
+     * the script failed.
+     */
+    String readPageValidator() {
+        return theCommands.call(new Callable<String>() {
+
+            public String call() {
+                try {
+                    return asString(executeScript(PAGE_VALIDATOR_SCRIPT));
+                } catch (WebDriverException ex) {
+                    Logger.getLogger(WebDriverWrapper.class.getName()).log(Level.INFO, "page validation failed", ex);
+                    return "";
+                }
+            }
+        });
+    }
+
+    private PageFacts readPageFacts(int linkSampleLimit, int textSampleLimit) {
+        String theTitle = "";
+        String theValidator = "";
+        long theLoadTime = -1;
+        Object theLinkResult = null;
+        Object theLanguageResult = null;
 
         try {
-            theResult = webDriver.findElements(By.xpath("/html/body//a[@href]"));
-        } catch (NoSuchElementException genExc) {
-            System.out.println(genExc.toString());
+            Object theResult = executeScript(PAGE_FACTS_SCRIPT,
+                    Integer.valueOf(linkSampleLimit),
+                    Integer.valueOf(textSampleLimit),
+                    Integer.valueOf(1 + theSampleRandom.nextInt(2147483646)));
+
+            if (theResult instanceof List) {
+                List<?> theParts = (List<?>) theResult;
+
+                if (theParts.size() >= 4) {
+                    theTitle = asString(theParts.get(0));
+                    theLoadTime = asLong(theParts.get(1));
+                    theLinkResult = theParts.get(2);
+                    theLanguageResult = theParts.get(3);
+                }
+
+                if (theParts.size() >= 5) {
+                    theValidator = asString(theParts.get(4));
+                }
+            }
+        } catch (WebDriverException ex) {
+            Logger.getLogger(WebDriverWrapper.class.getName()).log(Level.INFO, "page facts collection failed", ex);
         }
 
-        if (theResult == null) {
-            theResult = new ArrayList<WebElement>();
+        return new PageFacts(theTitle,
+                theLoadTime,
+                toLinkSnapshot(theLinkResult),
+                toLanguageVerdict(theLanguageResult),
+                theValidator);
+    }
+
+    /**
+     * @param theResult - the result of the link harvest function.
+     * @return - snapshot of the links (never null).
+     */
+    private LinkSnapshot toLinkSnapshot(Object theResult) {
+        List<Hyperlink> theLinks = new ArrayList<Hyperlink>();
+        int theTotal = 0;
+
+        if (theResult instanceof List) {
+            List<?> theRows = (List<?>) theResult;
+            Iterator<?> iter = theRows.iterator();
+
+            if (iter.hasNext()) {
+                theTotal = (int) asLong(iter.next());
+            }
+
+            while (iter.hasNext()) {
+                Object theRow = iter.next();
+
+                if (theRow instanceof List) {
+                    List<?> theFields = (List<?>) theRow;
+
+                    if (theFields.size() >= 5
+                            && theFields.get(0) instanceof WebElement) {
+                        theLinks.add(new Hyperlink(this,
+                                (WebElement) theFields.get(0),
+                                asString(theFields.get(1)),
+                                asString(theFields.get(2)),
+                                Boolean.TRUE.equals(theFields.get(3)),
+                                Boolean.TRUE.equals(theFields.get(4))));
+                    }
+                }
+            }
         }
 
-        return theResult;
+        return new LinkSnapshot(theLinks, Math.max(theTotal, theLinks.size()));
     }
 
-    synchronized WebElement findByXPath(String xpath) {
-        List<WebElement> theElements = null;
-        WebElement theResult = null;
+    /**
+     * @param theResult - the result of the language probe function.
+     * @return - the verdict on the declarations (never null).
+     */
+    private static LanguageVerdict toLanguageVerdict(Object theResult) {
+        String[] theDeclarations = new String[6];
 
-        try {
-            theElements = webDriver.findElements(By.xpath(xpath));
-        } catch (NoSuchElementException genExc) {
-            System.out.println(genExc.toString());
-        }
+        if (theResult instanceof List) {
+            List<?> theValues = (List<?>) theResult;
 
-        if (theElements != null
-                && theElements.size() > 0) {
-            theResult = theElements.get(0);
+            for (int i = 0; i < theDeclarations.length && i < theValues.size(); ++i) {
+                Object theValue = theValues.get(i);
+
+                if (theValue != null) {
+                    theDeclarations[i] = theValue.toString();
+                }
+            }
         }
 
-        return theResult;
+        return LanguageVerdict.fromDeclarations(theDeclarations[0],
+                theDeclarations[1],
+                theDeclarations[4],
+                theDeclarations[2],
+                theDeclarations[3],
+                theDeclarations[5]);
     }
 
-    synchronized void goBack() {
-        webDriver.navigate().back();
+    void goBack(long theDeadline) {
+        navigate(new Callable<Object>() {
+
+            public Object call() {
+                webDriver.navigate().back();
+                return null;
+            }
+        }, theDeadline);
     }
 
-    synchronized void refresh() {
-        webDriver.navigate().refresh();
+    void refresh(long theDeadline) {
+        navigate(new Callable<Object>() {
+
+            public Object call() {
+                webDriver.navigate().refresh();
+                return null;
+            }
+        }, theDeadline);
     }
 
-    synchronized void get(String linkIdStr) {
-        webDriver.get(linkIdStr);
+    void get(final String linkIdStr, long theDeadline) {
+        navigate(new Callable<Object>() {
+
+            public Object call() {
+                webDriver.get(linkIdStr);
+                return null;
+            }
+        }, theDeadline);
     }
 
-    synchronized WebElement findByLinkText(String linkText) {
-        List<WebElement> theElements = null;
-        WebElement theResult = null;
+    /**
+     * Runs a command that loads a page, giving up on it at the deadline.
+     * For engines that can be stopped concurrently the watchdog thread sends
+     * window.stop() (the owner thread being blocked in the load). It is only
+     * a timeout if the stop returned first: if the engine's connection
+     * serialised the stop behind the load, the load finished on its own and
+     * is not reported as a timeout.
+     * For other engines nothing is sent: the caller stops waiting at the
+     * deadline and the load runs on to completion on the owner thread, with
+     * the commands queued after it waiting for it.
+     * @param theCommand - the navigation.
+     * @param theDeadline - how long (ms) the load may take, zero for no
+     * limit.
+     * @throws PageLoadTimeoutException - if the deadline was passed.
+     */
+    private void navigate(Callable<Object> theCommand, final long theDeadline) {
+        if (theDeadline <= 0) {
+            theCommands.call(theCommand);
+            return;
+        }
+
+        if (!theBackend.canStopConcurrently()) {
+            Future<Object> theLoad = theCommands.submit(DriverCommandQueue.Priority.normal, theCommand);
+
+            try {
+                theLoad.get(theDeadline, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException ex) {
+                Logger.getLogger(WebDriverWrapper.class.getName()).log(Level.INFO,
+                        "page load deadline of {0}ms passed - left to finish", Long.valueOf(theDeadline));
+                throw new PageLoadTimeoutException(theDeadline);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException ex) {
+                // reported as the queue reports it
+            } catch (CancellationException ex) {
+                // reported as the queue reports it
+            }
+
+            theCommands.await(theLoad, 0);
+            return;
+        }
+
+        // RUNNING until either the load returns (LOADED) or a stop sent at
+        // the deadline returns (STOPPED), whichever is first
+        final AtomicInteger theState = new AtomicInteger(RUNNING);
+        ScheduledFuture<?> theWatchdog = WATCHDOG.schedule(new Runnable() {
+
+            public void run() {
+                Logger.getLogger(WebDriverWrapper.class.getName()).log(Level.INFO,
+                        "page load deadline of {0}ms passed", Long.valueOf(theDeadline));
+                sendStop();
+                theState.compareAndSet(RUNNING, STOPPED);
+            }
+        }, theDeadline, TimeUnit.MILLISECONDS);
 
         try {
-            theElements = webDriver.findElements(By.linkText(linkText));
-        } catch (NoSuchElementException genExc) {
-            System.out.println(genExc.toString());
+            theCommands.call(theCommand);
+        } catch (WebDriverException ex) {
+            if (!theState.compareAndSet(RUNNING, LOADED)) {
+                throw new PageLoadTimeoutException(theDeadline);
+            }
+
+            throw ex;
+        } finally {
+            theWatchdog.cancel(false);
         }
 
-        if (theElements != null
-                && theElements.size() > 0) {
-            theResult = theElements.get(0);
+        if (!theState.compareAndSet(RUNNING, LOADED)) {
+            throw new PageLoadTimeoutException(theDeadline);
         }
+    }
 
-        return theResult;
+    String getWindowHandle() {
+        return theCommands.call(new Callable<String>() {
+
+            public String call() {
+                return webDriver.getWindowHandle();
+            }
+        });
     }
 
-    synchronized WebElement findElement(By name) {
-        return webDriver.findElement(name);
+    /**
+     * Opens a second window (or tab, as the browser chooses) and puts the
+     * current window back in front of it.
+     * @param theName - the name of the new window.
+     * @return - the handle of the new window.
+     * @postcon - the driver is still on the current window.
+     */
+    String openWindow(final String theName) {
+        return theCommands.call(new Callable<String>() {
+
+            public String call() {
+                String theOpener = webDriver.getWindowHandle();
+                executeScript("window.open('about:blank', arguments[0]);", theName);
+                String theResult = webDriver.switchTo().window(theName).getWindowHandle();
+                webDriver.switchTo().window(theOpener);
+                executeScript("window.focus();");
+                return theResult;
+            }
+        });
     }
 
-    synchronized String getTitle() {
-        return webDriver.getTitle();
+    /**
+     * @param theHandle - the window that later commands act on.
+     * @param shouldShow - whether the window is also brought to the front.
+     */
+    void switchToWindow(final String theHandle, final boolean shouldShow) {
+        theCommands.call(new Callable<Object>() {
+
+            public Object call() {
+                webDriver.switchTo().window(theHandle);
+
+                if (shouldShow) {
+                    executeScript("window.focus();");
+                }
+
+                return null;
+            }
+        });
     }
 
-    synchronized String getElementAttribute(WebElement theElement, String string) {
-        return theElement.getAttribute(string);
+    /**
+     * @param theHandle - the window to close.
+     * @param theNextHandle - the window that later commands act on.
+     */
+    void closeWindow(final String theHandle, final String theNextHandle) {
+        theCommands.call(new Callable<Object>() {
+
+            public Object call() {
+                webDriver.switchTo().window(theHandle);
+                webDriver.close();
+                webDriver.switchTo().window(theNextHandle);
+                return null;
+            }
+        });
     }
 
-    synchronized void sendKeysToElement(WebElement theElement, String theString) {
-        theElement.sendKeys(theString);
+    WebElement findByLinkText(final String linkText) {
+        return theCommands.call(new Callable<WebElement>() {
+
+            public WebElement call() {
+                return firstOf(webDriver, By.linkText(linkText));
+            }
+        });
     }
 
-    synchronized void clickElement(WebElement theElement) {
-        theElement.click();
+    WebElement findElement(final By name) {
+        return theCommands.call(new Callable<WebElement>() {
+
+            public WebElement call() {
+                return webDriver.findElement(name);
+            }
+        });
     }
 
-    synchronized boolean isElementEnabled(WebElement webElement) {
-        return webElement.isEnabled();
+    String getTitle() {
+        return theCommands.call(new Callable<String>() {
+
+            public String call() {
+                return webDriver.getTitle();
+            }
+        });
     }
 
-    synchronized boolean isElementVisible(WebElement webElement) {
-        FirefoxWebElement theHTMLUnitWebElement = (FirefoxWebElement)webElement;
-        return theHTMLUnitWebElement.isDisplayed();
+    String getElementAttribute(final WebElement theElement, final String string) {
+        return theCommands.call(new Callable<String>() {
+
+            public String call() {
+                return theElement.getAttribute(string);
+            }
+        });
     }
 
-    synchronized String getElementText(WebElement webElement) {
-        return webElement.getText();
+    void sendKeysToElement(final WebElement theElement, final String theString) {
+        theCommands.call(new Callable<Object>() {
+
+            public Object call() {
+                theElement.sendKeys(theString);
+                return null;
+            }
+        });
+    }
+
+    void clickElement(final WebElement theElement, long theDeadline) {
+        navigate(new Callable<Object>() {
+
+            public Object call() {
+                theElement.click();
+                return null;
+            }
+        }, theDeadline);
+    }
+
+    boolean isElementEnabled(final WebElement webElement) {
+        return theCommands.call(new Callable<Boolean>() {
+
+            public Boolean call() {
+                return Boolean.valueOf(webElement.isEnabled());
+            }
+        }).booleanValue();
+    }
+
+    boolean isElementVisible(final WebElement webElement) {
+        return theCommands.call(new Callable<Boolean>() {
+
+            public Boolean call() {
+                if (webElement instanceof RenderedWebElement) {
+                    return Boolean.valueOf(((RenderedWebElement) webElement).isDisplayed());
+                }
+
+                return Boolean.TRUE;
+            }
+        }).booleanValue();
+    }
+
+    String getElementText(final WebElement webElement) {
+        return theCommands.call(new Callable<String>() {
+
+            public String call() {
+                return webElement.getText();
+            }
+        });
     }
     
-    synchronized void screenDump(String filePathName) throws IOException {
-        File scrFile = ((TakesScreenshot)webDriver).getScreenshotAs(OutputType.FILE);
-        FileUtils.copyFile(scrFile, new File(filePathName));
+    /**
+     * @return - a screenshot as png encoded bytes or null if the backend can
+     * not take one.
+     */
+    byte[] screenCapture() {
+        if (!theBackend.canCaptureScreen()) {
+            return null;
+        }
+
+        return theCommands.call(new Callable<byte[]>() {
+
+            public byte[] call() {
+                return theBackend.captureScreen();
+            }
+        });
+    }
+
+    /**
+     * @return - the first element found or null if there are none.
+     */
+    private static WebElement firstOf(WebDriver theDriver, By theSpec) {
+        List<WebElement> theElements = null;
+        WebElement theResult = null;
+
+        try {
+            theElements = theDriver.findElements(theSpec);
+        } catch (NoSuchElementException genExc) {
+            System.out.println(genExc.toString());
+        }
+
+        if (theElements != null
+                && theElements.size() > 0) {
+            theResult = theElements.get(0);
+        }
+
+        return theResult;
+    }
+    private Object executeScript(String theScript, Object... theArgs) {
+        return ((JavascriptExecutor) webDriver).executeScript(theScript, theArgs);
+    }
+
+    private static long asLong(Object theValue) {
+        if (theValue instanceof Number) {
+            return ((Number) theValue).longValue();
+        }
+
+        return -1;
+    }
+
+    private static String asString(Object theValue) {
+        if (theValue == null) {
+            return "";
+        }
+
+        return theValue.toString();
     }
 }
@@ -0,0 +1,275 @@
+package randomwebwalk.dump;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import randomwebwalk.browser.UrlCanonicalizer;
+
+/**
+ *
+ * @author al
+ * Append only archive of screen captures. Frames are appended to large
+ * segment files (segment-NNNNN.dat) and located through a memory mapped
+ * index (index.dat) of fixed size records, one per step, so any step can be
+ * found without scanning.
+ * The index starts with a header (magic, version, record count) followed by
+ * records of step, URL hash, timestamp, segment, offset and length. A record
+ * with zero length is a step with no frame (e.g. dropped under backpressure).
+ * A near duplicate frame is stored as a record pointing at the bytes of the
+ * earlier frame.
+ * An archive is reopened and appended to by later walks: the steps of each
+ * walk follow on from those already in the index.
+ * @invariant - the record count in the header covers every record written.
+ */
+public class DumpArchive {
+
+    static final int MAGIC = 0x52575741; // RWWA
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 16;
+    static final int RECORD_SIZE = 40;
+    static final String INDEX_FILE_NAME = "index.dat";
+    private static final long SEGMENT_LIMIT = 256L * 1024 * 1024;
+    private static final int INITIAL_RECORDS = 4096;
+    private static final UrlCanonicalizer URL_CANONICALIZER = new UrlCanonicalizer();
+    private final File theDirectory;
+    private final RandomAccessFile theIndexFile;
+    private MappedByteBuffer theIndex;
+    private int indexCapacity;      // records the current mapping can hold
+    private long recordCount;
+    private final long walkBase;    // slot of step 1 of this walk
+    private int segmentNumber;
+    private RandomAccessFile theSegment;
+    private boolean isClosed = false;
+    private final Map<Long, List<Long>> pendingReferences = new HashMap<Long, List<Long>>();
+
+    /**
+     * @param newDirectory - the archive directory (created if need be).
+     * @throws IOException - if the archive can not be opened.
+     * @postcon - the archive is ready for the frames of a new walk.
+     */
+    public DumpArchive(File newDirectory) throws IOException {
+        theDirectory = newDirectory;
+
+        if (!theDirectory.isDirectory() && !theDirectory.mkdirs()) {
+            throw new IOException("Can not create archive directory " + theDirectory);
+        }
+
+        theIndexFile = new RandomAccessFile(new File(theDirectory, INDEX_FILE_NAME), "rw");
+        boolean isNew = theIndexFile.length() < HEADER_SIZE;
+        long existingRecords = 0;
+
+        if (!isNew) {
+            theIndexFile.seek(8);
+            existingRecords = theIndexFile.readLong();
+        }
+
+        mapIndex((int) Math.max(INITIAL_RECORDS, existingRecords * 2));
+
+        if (isNew) {
+            theIndex.putInt(0, MAGIC);
+            theIndex.putInt(4, VERSION);
+            theIndex.putLong(8, 0);
+        } else if (theIndex.getInt(0) != MAGIC) {
+            throw new IOException("Not a dump archive " + theDirectory);
+        }
+
+        recordCount = theIndex.getLong(8);
+        walkBase = recordCount;
+        segmentNumber = 0;
+
+        while (segmentFile(segmentNumber + 1).exists()) {
+            ++segmentNumber;
+        }
+
+        openSegment();
+    }
+
+    /**
+     * @param theCapture - a capture of the current walk.
+     * @throws IOException - if the frame can not be written.
+     * @postcon - the frame bytes are appended and indexed under its step.
+     */
+    public synchronized void append(ScreenCapture theCapture) throws IOException {
+        byte[] theImage = theCapture.getImage();
+
+        if (theSegment.length() > 0
+                && theSegment.length() + theImage.length > SEGMENT_LIMIT) {
+            theSegment.close();
+            ++segmentNumber;
+            openSegment();
+        }
+
+        long theOffset = theSegment.length();
+        FileChannel theChannel = theSegment.getChannel();
+        ByteBuffer theBuffer = ByteBuffer.wrap(theImage);
+        long thePosition = theOffset;
+
+        while (theBuffer.hasRemaining()) {
+            thePosition += theChannel.write(theBuffer, thePosition);
+        }
+
+        long theSlot = slotOf(theCapture);
+        writeRecord(theSlot, theCapture, segmentNumber, theOffset, theImage.length);
+
+        List<Long> theReferences = pendingReferences.remove(Long.valueOf(theSlot));
+
+        if (theReferences != null) {
+            for (Long theReference : theReferences) {
+                copyLocation(theSlot, theReference.longValue());
+            }
+        }
+    }
+
+    /**
+     * @param theCapture - a capture of the current walk.
+     * @param theDuplicateStep - the step of an earlier capture of this walk
+     * (of this opening of the archive) that it is a near duplicate of.
+     * @throws IOException - if the index can not be written.
+     * @postcon - the step of the capture is indexed to the bytes of the
+     * duplicate (once they have been appended).
+     */
+    public synchronized void appendReference(ScreenCapture theCapture,
+            int theDuplicateStep) throws IOException {
+        long theSlot = slotOf(theCapture);
+        long theDuplicateSlot = slotOf(theDuplicateStep);
+        writeRecord(theSlot, theCapture, 0, 0, 0);
+
+        if (theDuplicateSlot < recordCount
+                && theIndex.getInt(recordPosition(theDuplicateSlot) + 36) > 0) {
+            copyLocation(theDuplicateSlot, theSlot);
+        } else {
+            Long theKey = Long.valueOf(theDuplicateSlot);
+            List<Long> theReferences = pendingReferences.get(theKey);
+
+            if (theReferences == null) {
+                theReferences = new ArrayList<Long>();
+                pendingReferences.put(theKey, theReferences);
+            }
+
+            theReferences.add(Long.valueOf(theSlot));
+        }
+    }
+
+    /**
+     * @postcon - the index and segment are flushed and closed.
+     * @throws IOException - if they can not be closed.
+     */
+    public synchronized void close() throws IOException {
+        isClosed = true;
+        theIndex.force();
+        theSegment.close();
+        theIndexFile.close();
+    }
+
+    /**
+     * @return - whether the archive has been closed.
+     */
+    public synchronized boolean isClosed() {
+        return isClosed;
+    }
+
+    /**
+     * @return - the same archive opened again, ready for the frames of a new
+     * walk.
+     * @throws IOException - if the archive can not be opened.
+     * @precon - the archive has been closed.
+     */
+    public DumpArchive reopen() throws IOException {
+        return new DumpArchive(theDirectory);
+    }
+
+    /**
+     * @param theURL - a page URL.
+     * @return - 64 bit fingerprint of the canonical form of the URL (so that
+     * different spellings of the same page hash the same).
+     */
+    static long hashURL(String theURL) {
+        return theURL == null ? 0 : URL_CANONICALIZER.fingerprint(theURL);
+    }
+
+    /**
+     * @param theSlot - a record number.
+     * @return - the position of the record in the index.
+     */
+    static int recordPosition(long theSlot) {
+        return (int) (HEADER_SIZE + theSlot * RECORD_SIZE);
+    }
+
+    /**
+     * @param theDirectory - the archive directory.
+     * @param theNumber - segment number.
+     * @return - the segment file.
+     */
+    static File segmentFile(File theDirectory, int theNumber) {
+        return new File(theDirectory, String.format("segment-%05d.dat", Integer.valueOf(theNumber)));
+    }
+
+    private File segmentFile(int theNumber) {
+        return segmentFile(theDirectory, theNumber);
+    }
+
+    private void openSegment() throws IOException {
+        theSegment = new RandomAccessFile(segmentFile(segmentNumber), "rw");
+    }
+
+    private long slotOf(ScreenCapture theCapture) {
+        return slotOf(theCapture.getStep());
+    }
+
+    private long slotOf(int theStep) {
+        return walkBase + theStep - 1;
+    }
+
+    /**
+     * @param records - the number of records the mapping must hold.
+     * @throws IOException - if the index can not be mapped.
+     */
+    private void mapIndex(int records) throws IOException {
+        indexCapacity = records;
+        theIndex = theIndexFile.getChannel().map(FileChannel.MapMode.READ_WRITE,
+                0, HEADER_SIZE + (long) indexCapacity * RECORD_SIZE);
+    }
+
+    private void writeRecord(long theSlot,
+            ScreenCapture theCapture,
+            int theSegmentNumber,
+            long theOffset,
+            int theLength) throws IOException {
+        if (theSlot >= indexCapacity) {
+            theIndex.force();
+            mapIndex((int) Math.max(indexCapacity * 2L, theSlot + 1));
+        }
+
+        int thePosition = recordPosition(theSlot);
+        theIndex.putLong(thePosition, theCapture.getStep());
+        theIndex.putLong(thePosition + 8, hashURL(theCapture.getURL()));
+        theIndex.putLong(thePosition + 16, theCapture.getTimestamp());
+        theIndex.putInt(thePosition + 24, theSegmentNumber);
+        theIndex.putLong(thePosition + 28, theOffset);
+        theIndex.putInt(thePosition + 36, theLength);
+
+        if (theSlot >= recordCount) {
+            recordCount = theSlot + 1;
+            theIndex.putLong(8, recordCount);
+        }
+    }
+
+    /**
+     * @param theSource - the record whose frame location is copied.
+     * @param theTarget - the record that is to point at the same frame.
+     */
+    private void copyLocation(long theSource, long theTarget) {
+        int theSourcePosition = recordPosition(theSource);
+        int theTargetPosition = recordPosition(theTarget);
+        theIndex.putInt(theTargetPosition + 24, theIndex.getInt(theSourcePosition + 24));
+        theIndex.putLong(theTargetPosition + 28, theIndex.getLong(theSourcePosition + 28));
+        theIndex.putInt(theTargetPosition + 36, theIndex.getInt(theSourcePosition + 36));
+    }
+}
@@ -0,0 +1,279 @@
+package randomwebwalk.dump;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Map;
+import javax.imageio.ImageIO;
+
+/**
+ *
+ * @author al
+ * Streaming reader for a DumpArchive. Any step is located directly from the
+ * memory mapped index and only the frames asked for are read (and for the
+ * timelapse export decoded).
+ * Steps are numbered from zero across all the walks in the archive.
+ * Can be run to export a range of steps:
+ * DumpArchiveReader archiveDir png|mjpeg fromStep toStep output
+ * where output is a directory for png and a file for mjpeg.
+ * @invariant - the index mapping covers the records counted in its header
+ * when the reader was opened.
+ */
+public class DumpArchiveReader {
+
+    private final File theDirectory;
+    private final RandomAccessFile theIndexFile;
+    private final MappedByteBuffer theIndex;
+    private final long stepCount;
+    private final Map<Integer, RandomAccessFile> theSegments = new HashMap<Integer, RandomAccessFile>();
+
+    /**
+     * @param newDirectory - the archive directory.
+     * @throws IOException - if there is no readable archive there.
+     */
+    public DumpArchiveReader(File newDirectory) throws IOException {
+        theDirectory = newDirectory;
+        theIndexFile = new RandomAccessFile(new File(theDirectory, DumpArchive.INDEX_FILE_NAME), "r");
+        FileChannel theChannel = theIndexFile.getChannel();
+        ByteBuffer theHeader = theChannel.map(FileChannel.MapMode.READ_ONLY, 0, DumpArchive.HEADER_SIZE);
+
+        if (theHeader.getInt(0) != DumpArchive.MAGIC) {
+            throw new IOException("Not a dump archive " + theDirectory);
+        }
+
+        stepCount = theHeader.getLong(8);
+        theIndex = theChannel.map(FileChannel.MapMode.READ_ONLY, 0,
+                DumpArchive.HEADER_SIZE + stepCount * DumpArchive.RECORD_SIZE);
+    }
+
+    /**
+     * @return - the number of steps in the archive.
+     */
+    public long getStepCount() {
+        return stepCount;
+    }
+
+    /**
+     * @param theStep - a step in the archive (0 to step count - 1).
+     * @return - the frame of that step (whose image is null if the step has
+     * no frame).
+     * @throws IOException - if the segment can not be read.
+     */
+    public ArchivedFrame readFrame(long theStep) throws IOException {
+        if (theStep < 0 || theStep >= stepCount) {
+            throw new IndexOutOfBoundsException("Step " + theStep + " of " + stepCount);
+        }
+
+        int thePosition = DumpArchive.recordPosition(theStep);
+        long theWalkStep = theIndex.getLong(thePosition);
+        long theURLHash = theIndex.getLong(thePosition + 8);
+        long theTimestamp = theIndex.getLong(thePosition + 16);
+        int theSegmentNumber = theIndex.getInt(thePosition + 24);
+        long theOffset = theIndex.getLong(thePosition + 28);
+        int theLength = theIndex.getInt(thePosition + 36);
+        byte[] theImage = null;
+
+        if (theLength > 0) {
+            theImage = new byte[theLength];
+            ByteBuffer theBuffer = ByteBuffer.wrap(theImage);
+            FileChannel theChannel = getSegment(theSegmentNumber).getChannel();
+
+            while (theBuffer.hasRemaining()) {
+                int theCount = theChannel.read(theBuffer, theOffset + theBuffer.position());
+
+                if (theCount < 0) {
+                    throw new IOException("Truncated segment " + theSegmentNumber);
+                }
+            }
+        }
+
+        return new ArchivedFrame(theStep, theWalkStep, theURLHash, theTimestamp, theImage);
+    }
+
+    /**
+     * @param fromStep - first step exported.
+     * @param toStep - last step exported.
+     * @param theOutputDirectory - where the png files are written.
+     * @return - the number of frames written.
+     * @throws IOException - if a frame can not be read or written.
+     */
+    public int exportPng(long fromStep, long toStep, File theOutputDirectory) throws IOException {
+        int theCount = 0;
+
+        if (!theOutputDirectory.isDirectory() && !theOutputDirectory.mkdirs()) {
+            throw new IOException("Can not create " + theOutputDirectory);
+        }
+
+        for (long theStep = fromStep; theStep <= toStep && theStep < stepCount; ++theStep) {
+            ArchivedFrame theFrame = readFrame(theStep);
+
+            if (theFrame.getImage() != null) {
+                OutputStream theStream = new FileOutputStream(new File(theOutputDirectory,
+                        "step" + Long.toString(theStep) + ".png"));
+
+                try {
+                    theStream.write(theFrame.getImage());
+                } finally {
+                    theStream.close();
+                }
+
+                ++theCount;
+            }
+        }
+
+        return theCount;
+    }
+
+    /**
+     * @param fromStep - first step exported.
+     * @param toStep - last step exported.
+     * @param theOutputFile - the MJPEG (concatenated jpeg) file written.
+     * @return - the number of frames written.
+     * @throws IOException - if a frame can not be read, decoded or written.
+     */
+    public int exportMjpeg(long fromStep, long toStep, File theOutputFile) throws IOException {
+        int theCount = 0;
+        OutputStream theStream = new FileOutputStream(theOutputFile);
+
+        try {
+            for (long theStep = fromStep; theStep <= toStep && theStep < stepCount; ++theStep) {
+                ArchivedFrame theFrame = readFrame(theStep);
+
+                if (theFrame.getImage() != null) {
+                    BufferedImage theImage = ImageIO.read(new ByteArrayInputStream(theFrame.getImage()));
+
+                    if (theImage != null) {
+                        BufferedImage theRgbImage = new BufferedImage(theImage.getWidth(),
+                                theImage.getHeight(), BufferedImage.TYPE_INT_RGB);
+                        theRgbImage.getGraphics().drawImage(theImage, 0, 0, null);
+                        ImageIO.write(theRgbImage, "jpeg", theStream);
+                        ++theCount;
+                    }
+                }
+            }
+        } finally {
+            theStream.close();
+        }
+
+        return theCount;
+    }
+
+    /**
+     * @throws IOException - if the files can not be closed.
+     */
+    public void close() throws IOException {
+        for (RandomAccessFile theSegment : theSegments.values()) {
+            theSegment.close();
+        }
+
+        theIndexFile.close();
+    }
+
+    private RandomAccessFile getSegment(int theNumber) throws IOException {
+        Integer theKey = Integer.valueOf(theNumber);
+        RandomAccessFile theSegment = theSegments.get(theKey);
+
+        if (theSegment == null) {
+            theSegment = new RandomAccessFile(DumpArchive.segmentFile(theDirectory, theNumber), "r");
+            theSegments.put(theKey, theSegment);
+        }
+
+        return theSegment;
+    }
+
+    /**
+     * @param args archiveDir png|mjpeg fromStep toStep output
+     * @throws IOException - if the export fails.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 5) {
+            System.out.println("usage: DumpArchiveReader archiveDir png|mjpeg fromStep toStep output");
+            return;
+        }
+
+        DumpArchiveReader theReader = new DumpArchiveReader(new File(args[0]));
+
+        try {
+            long fromStep = Long.parseLong(args[2]);
+            long toStep = Long.parseLong(args[3]);
+            int theCount = 0;
+
+            if (args[1].equalsIgnoreCase("mjpeg")) {
+                theCount = theReader.exportMjpeg(fromStep, toStep, new File(args[4]));
+            } else {
+                theCount = theReader.exportPng(fromStep, toStep, new File(args[4]));
+            }
+
+            System.out.println("Exported " + theCount + " of " + theReader.getStepCount() + " steps");
+        } finally {
+            theReader.close();
+        }
+    }
+
+    /**
+     * A frame read back from the archive.
+     */
+    public static class ArchivedFrame {
+
+        private final long theStep;
+        private final long theWalkStep;
+        private final long theURLHash;
+        private final long theTimestamp;
+        private final byte[] theImage;
+
+        ArchivedFrame(long newStep,
+                long newWalkStep,
+                long newURLHash,
+                long newTimestamp,
+                byte[] newImage) {
+            theStep = newStep;
+            theWalkStep = newWalkStep;
+            theURLHash = newURLHash;
+            theTimestamp = newTimestamp;
+            theImage = newImage;
+        }
+
+        /**
+         * @return - the step in the archive.
+         */
+        public long getStep() {
+            return theStep;
+        }
+
+        /**
+         * @return - the step within the walk that captured it.
+         */
+        public long getWalkStep() {
+            return theWalkStep;
+        }
+
+        /**
+         * @return - the hash of the URL of the page captured.
+         */
+        public long getURLHash() {
+            return theURLHash;
+        }
+
+        /**
+         * @return - when the frame was captured (ms since the epoch).
+         */
+        public long getTimestamp() {
+            return theTimestamp;
+        }
+
+        /**
+         * @return - the png bytes of the frame or null if the step has none.
+         */
+        public byte[] getImage() {
+            return theImage;
+        }
+    }
+}
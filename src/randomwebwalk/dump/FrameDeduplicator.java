@@ -0,0 +1,129 @@
+package randomwebwalk.dump;
+
+import java.io.File;
+
+/**
+ *
+ * @author al
+ * Remembers the hashes of the most recent frames written so that a frame
+ * within the configured Hamming distance of one of them can be stored as a
+ * reference to it rather than as a new file. Only the step and file of a
+ * remembered frame are kept, never its image.
+ * Keeps the count of frames seen and of those found to be duplicates.
+ * @invariant - at most window frames are remembered (oldest replaced first).
+ */
+public class FrameDeduplicator {
+
+    private final int maxDistance;
+    private final long[] theHashes;
+    private final Original[] theOriginals;
+    private int nextSlot = 0;
+    private int used = 0;
+    private long frameCount = 0;
+    private long duplicateCount = 0;
+
+    /**
+     * @param newMaxDistance - the largest Hamming distance at which two frames
+     * are taken to be the same.
+     * @param window - the number of recent frames compared against.
+     */
+    public FrameDeduplicator(int newMaxDistance,
+            int window) {
+        maxDistance = newMaxDistance;
+        theHashes = new long[Math.max(window, 1)];
+        theOriginals = new Original[theHashes.length];
+    }
+
+    /**
+     * @param theHash - the hash of the frame about to be written.
+     * @param theCapture - the frame.
+     * @return - where a recent near identical frame was written or null if
+     * there is none (in which case this frame is remembered).
+     */
+    public synchronized Original findDuplicate(long theHash, ScreenCapture theCapture) {
+        ++frameCount;
+
+        for (int i = 0; i < used; ++i) {
+            if (FrameHash.distance(theHashes[i], theHash) <= maxDistance) {
+                ++duplicateCount;
+                return theOriginals[i];
+            }
+        }
+
+        theHashes[nextSlot] = theHash;
+        theOriginals[nextSlot] = new Original(theCapture.getStep(), theCapture.getFile());
+        nextSlot = (nextSlot + 1) % theHashes.length;
+        used = Math.min(used + 1, theHashes.length);
+
+        return null;
+    }
+
+    /**
+     * @postcon - no frames are remembered and the counts are zero (so a new
+     * walk never references the frames, or shares the ratio, of an earlier
+     * one).
+     */
+    public synchronized void clear() {
+        for (int i = 0; i < used; ++i) {
+            theOriginals[i] = null;
+        }
+
+        nextSlot = 0;
+        used = 0;
+        frameCount = 0;
+        duplicateCount = 0;
+    }
+
+    /**
+     * @return - the fraction of frames that were duplicates (0 if none seen).
+     */
+    public synchronized double getDedupRatio() {
+        if (frameCount == 0) {
+            return 0.0;
+        }
+
+        return (double) duplicateCount / frameCount;
+    }
+
+    /**
+     * @return - the number of frames seen.
+     */
+    public synchronized long getFrameCount() {
+        return frameCount;
+    }
+
+    /**
+     * @return - the number of frames that were duplicates.
+     */
+    public synchronized long getDuplicateCount() {
+        return duplicateCount;
+    }
+
+    /**
+     * Where a remembered frame was written.
+     */
+    public static class Original {
+
+        private final int theStep;
+        private final File theFile;
+
+        Original(int newStep, File newFile) {
+            theStep = newStep;
+            theFile = newFile;
+        }
+
+        /**
+         * @return - the step of the walk the frame was captured at.
+         */
+        public int getStep() {
+            return theStep;
+        }
+
+        /**
+         * @return - the file the frame was written to.
+         */
+        public File getFile() {
+            return theFile;
+        }
+    }
+}
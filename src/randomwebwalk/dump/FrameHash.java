@@ -0,0 +1,122 @@
+package randomwebwalk.dump;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ *
+ * @author al
+ * Perceptual (difference) hash of a screen capture. The image is reduced to
+ * a 9x8 grid of mean luminance and each bit of the 64 bit hash records
+ * whether a cell is brighter than its right hand neighbour, so near identical
+ * pages give hashes a small Hamming distance apart.
+ * Encoded images are subsampled as they are decoded so a full size capture
+ * is never held as pixels just to be averaged down to the grid.
+ */
+public class FrameHash {
+
+    private static final int GRID_WIDTH = 9;
+    private static final int GRID_HEIGHT = 8;
+    private static final int SAMPLE_SIZE = 144; // least pixels decoded per side (16 per grid column)
+
+    private FrameHash() {
+    }
+
+    /**
+     * @param theImage - png (or other ImageIO readable) encoded image.
+     * @return - the difference hash of the image, decoded keeping only every
+     * nth pixel so that about SAMPLE_SIZE are read each way.
+     * @throws IOException - if the image can not be decoded.
+     */
+    public static long hash(byte[] theImage) throws IOException {
+        ImageInputStream theInput = ImageIO.createImageInputStream(new ByteArrayInputStream(theImage));
+
+        if (theInput == null) {
+            throw new IOException("Unreadable image");
+        }
+
+        try {
+            Iterator<ImageReader> theReaders = ImageIO.getImageReaders(theInput);
+
+            if (!theReaders.hasNext()) {
+                throw new IOException("Unreadable image");
+            }
+
+            ImageReader theReader = theReaders.next();
+
+            try {
+                theReader.setInput(theInput, true, true);
+                ImageReadParam theParam = theReader.getDefaultReadParam();
+                theParam.setSourceSubsampling(Math.max(theReader.getWidth(0) / SAMPLE_SIZE, 1),
+                        Math.max(theReader.getHeight(0) / SAMPLE_SIZE, 1), 0, 0);
+
+                return hash(theReader.read(0, theParam));
+            } finally {
+                theReader.dispose();
+            }
+        } finally {
+            theInput.close();
+        }
+    }
+
+    /**
+     * @param theImage - decoded image.
+     * @return - the difference hash of the image.
+     */
+    public static long hash(BufferedImage theImage) {
+        int width = theImage.getWidth();
+        int height = theImage.getHeight();
+        int[] thePixels = theImage.getRGB(0, 0, width, height, null, 0, width);
+        long[] theSums = new long[GRID_WIDTH * GRID_HEIGHT];
+        int[] theCounts = new int[GRID_WIDTH * GRID_HEIGHT];
+
+        for (int y = 0; y < height; ++y) {
+            int theRow = (y * GRID_HEIGHT / height) * GRID_WIDTH;
+            int theOffset = y * width;
+
+            for (int x = 0; x < width; ++x) {
+                int theCell = theRow + x * GRID_WIDTH / width;
+                int thePixel = thePixels[theOffset + x];
+                int red = (thePixel >> 16) & 0xff;
+                int green = (thePixel >> 8) & 0xff;
+                int blue = thePixel & 0xff;
+
+                theSums[theCell] += 299 * red + 587 * green + 114 * blue;
+                ++theCounts[theCell];
+            }
+        }
+
+        long theHash = 0;
+
+        for (int y = 0; y < GRID_HEIGHT; ++y) {
+            for (int x = 0; x < GRID_WIDTH - 1; ++x) {
+                int theCell = y * GRID_WIDTH + x;
+                long left = theSums[theCell] / Math.max(theCounts[theCell], 1);
+                long right = theSums[theCell + 1] / Math.max(theCounts[theCell + 1], 1);
+
+                theHash <<= 1;
+
+                if (left > right) {
+                    theHash |= 1;
+                }
+            }
+        }
+
+        return theHash;
+    }
+
+    /**
+     * @param first - a hash.
+     * @param second - another hash.
+     * @return - the number of bits that differ.
+     */
+    public static int distance(long first, long second) {
+        return Long.bitCount(first ^ second);
+    }
+}
@@ -0,0 +1,78 @@
+package randomwebwalk.dump;
+
+import java.io.File;
+
+/**
+ *
+ * @author al
+ * A screen capture taken by the walker waiting to be written out.
+ * @invariant - immutable (the image bytes are not copied so must not be
+ * modified after construction).
+ */
+public class ScreenCapture {
+
+    private final byte[] theImage;
+    private final int theStep;
+    private final File theFile;
+    private final String theURL;
+    private final long theTimestamp;
+
+    /**
+     * @param newImage - the encoded (png) image bytes.
+     * @param newStep - the number of the capture within the walk (from 1).
+     * @param newFile - the file the image is to be written to (null if it is
+     * to be archived).
+     * @param newURL - the URL of the page captured.
+     */
+    public ScreenCapture(byte[] newImage,
+            int newStep,
+            File newFile,
+            String newURL) {
+        theImage = newImage;
+        theStep = newStep;
+        theFile = newFile;
+        theURL = newURL;
+        theTimestamp = System.currentTimeMillis();
+    }
+
+    /**
+     * @return - the encoded (png) image bytes.
+     */
+    public byte[] getImage() {
+        return theImage;
+    }
+
+    /**
+     * @return - the number of the capture within the walk (from 1).
+     */
+    public int getStep() {
+        return theStep;
+    }
+
+    /**
+     * @return - the file the image is to be written to (null if it is to be
+     * archived).
+     */
+    public File getFile() {
+        return theFile;
+    }
+
+    /**
+     * @return - the URL of the page captured.
+     */
+    public String getURL() {
+        return theURL;
+    }
+
+    /**
+     * @return - when the capture was taken (ms since the epoch).
+     */
+    public long getTimestamp() {
+        return theTimestamp;
+    }
+
+    @Override
+    public String toString() {
+        return "ScreenCapture{" + "theStep=" + theStep + ", theFile=" + theFile + ", theURL=" + theURL + '}';
+    }
+}
@@ -0,0 +1,415 @@
+package randomwebwalk.dump;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ *
+ * @author al
+ * Writes screen captures out on dedicated writer threads so that the walker
+ * thread only pays for taking the capture, not for the disk I/O.
+ * Captures are handed over through a bounded queue, what happens when the
+ * queue is full depends on the backpressure policy.
+ * If a deduplicator is set each capture is hashed (on the writer threads, in
+ * parallel) and a near duplicate of a recent frame is recorded as a line in
+ * the references file of its directory instead of being written again.
+ * If an archive is set captures are appended to it rather than written as
+ * individual files (and duplicates are indexed to the earlier frame).
+ * The writers run from start to shutdown (the runner starts the dumper with
+ * each walk and shuts it down when the walk stops). Shutting down lets the
+ * writers finish before the archive is closed, the next start reopens it for
+ * a new walk.
+ * @invariant - the queue holds at most the capacity given on construction.
+ * @invariant - the archive (if any) is open while the writers are running.
+ * @invariant - the Logger is a valid logger.
+ */
+public class ScreenDumper {
+
+    // what submit does when the writers can not keep up
+    public enum BackpressurePolicy {
+
+        block,      // the walker waits for space in the queue
+        dropOldest, // the oldest queued capture is discarded
+        sample      // once the queue is half full only every SAMPLE_RATE'th
+                    // capture is queued (and the newest dropped when full)
+    };
+
+    private static final int SAMPLE_RATE = 4;
+    private static final long SHUTDOWN_WAIT_TIME = 10; // seconds
+    private static final long POLL_TIME = 500; // ms writers wait before checking for shutdown
+    private static final String REFERENCES_FILE_NAME = "references.txt";
+    private static final int DEDUP_REPORT_INTERVAL = 100; // frames between ratio reports
+    private final BlockingQueue<ScreenCapture> theQueue;
+    private final BackpressurePolicy thePolicy;
+    private final Thread[] theWriters;
+    private final Logger theLogger;
+    private volatile boolean isShutdown = true;
+    private final Object theLifecycleLock = new Object(); // orders start and shutdown
+    private Thread theShutdownHook = null; // set while started
+    private volatile FrameDeduplicator theDeduplicator = null;
+    private volatile DumpArchive theArchive = null;
+    private int sampleCounter = 0;
+    private long droppedCount = 0;
+    private long writtenCount = 0;
+
+    /**
+     * @param capacity - the maximum number of captures waiting to be written.
+     * @param newPolicy - what to do when the queue is full.
+     * @param writerCount - the number of writer threads.
+     * @param newLogger - valid logger.
+     * @postcon - the dumper is shut down (see start).
+     */
+    public ScreenDumper(int capacity,
+            BackpressurePolicy newPolicy,
+            int writerCount,
+            Logger newLogger) {
+        theQueue = new ArrayBlockingQueue<ScreenCapture>(Math.max(capacity, 1));
+        thePolicy = newPolicy;
+        theLogger = newLogger;
+        theWriters = new Thread[Math.max(writerCount, 1)];
+    }
+
+    /**
+     * Starts the writer threads (reopening the archive if an earlier shutdown
+     * closed it) with the deduplicator emptied.
+     * @postcon - captures are accepted, unless the archive could not be
+     * reopened (then they are dropped until the next start).
+     */
+    public void start() {
+        synchronized (theLifecycleLock) {
+            if (!isShutdown) {
+                return;
+            }
+
+            DumpArchive theCurrentArchive = theArchive;
+
+            if (theCurrentArchive != null && theCurrentArchive.isClosed()) {
+                try {
+                    theArchive = theCurrentArchive.reopen();
+                } catch (IOException ex) {
+                    theLogger.log(Level.WARNING, "Can not reopen dump archive - screens not dumped", ex);
+                    return;
+                }
+            }
+
+            FrameDeduplicator theCurrentDeduplicator = theDeduplicator;
+
+            if (theCurrentDeduplicator != null) {
+                // the archive numbers the steps of each walk afresh
+                theCurrentDeduplicator.clear();
+            }
+
+            isShutdown = false;
+
+            for (int i = 0; i < theWriters.length; ++i) {
+                theWriters[i] = new Thread(new Writer(), "ScreenDumpWriter-" + i);
+                theWriters[i].setDaemon(true);
+                theWriters[i].start();
+            }
+
+            theShutdownHook = new Thread() {
+
+                @Override
+                public void run() {
+                    shutdown();
+                }
+            };
+            Runtime.getRuntime().addShutdownHook(theShutdownHook);
+        }
+    }
+
+    /**
+     * @param newDeduplicator - the deduplicator for captures or null to write
+     * every capture.
+     */
+    public void setDeduplicator(FrameDeduplicator newDeduplicator) {
+        theDeduplicator = newDeduplicator;
+    }
+
+    /**
+     * @param newArchive - the archive captures are appended to or null to
+     * write each capture to its own file.
+     */
+    public void setArchive(DumpArchive newArchive) {
+        theArchive = newArchive;
+    }
+
+    /**
+     * @return - whether captures are appended to an archive.
+     */
+    public boolean isArchiving() {
+        return theArchive != null;
+    }
+
+    /**
+     * @return - the fraction of captures stored as references (0 if
+     * deduplication is off).
+     */
+    public double getDedupRatio() {
+        FrameDeduplicator theCurrentDeduplicator = theDeduplicator;
+
+        if (theCurrentDeduplicator == null) {
+            return 0.0;
+        }
+
+        return theCurrentDeduplicator.getDedupRatio();
+    }
+
+    /**
+     * @param theCapture - the capture to be written.
+     * @return - whether the capture was queued (it may be dropped according
+     * to the policy).
+     * @throws InterruptedException - if interrupted waiting for space.
+     */
+    public boolean submit(ScreenCapture theCapture) throws InterruptedException {
+        if (isShutdown) {
+            return false;
+        }
+
+        boolean isQueued = false;
+
+        switch (thePolicy) {
+            case block:
+                theQueue.put(theCapture);
+                isQueued = true;
+                break;
+            case dropOldest:
+                while (!theQueue.offer(theCapture)) {
+                    if (theQueue.poll() != null) {
+                        recordDrop();
+                    }
+                }
+                isQueued = true;
+                break;
+            case sample:
+                if (theQueue.remainingCapacity() >= theQueue.size()
+                        || nextSample()) {
+                    isQueued = theQueue.offer(theCapture);
+                }
+                break;
+        }
+
+        if (!isQueued) {
+            recordDrop();
+        }
+
+        return isQueued;
+    }
+
+    /**
+     * Stops accepting captures and waits (for a bounded time) for those
+     * already queued to be written - any still queued after that are dropped.
+     * @postcon - the writers have ended and the archive (if any) is closed.
+     */
+    public void shutdown() {
+        synchronized (theLifecycleLock) {
+            if (isShutdown) {
+                return;
+            }
+
+            isShutdown = true;
+
+            if (Thread.currentThread() != theShutdownHook) {
+                try {
+                    Runtime.getRuntime().removeShutdownHook(theShutdownHook);
+                } catch (IllegalStateException ex) {
+                    // the process is already shutting down
+                }
+            }
+
+            theShutdownHook = null;
+            long theDeadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(SHUTDOWN_WAIT_TIME);
+            boolean isInterrupted = false;
+
+            for (int i = 0; i < theWriters.length; ++i) {
+                try {
+                    long theWait = theDeadline - System.currentTimeMillis();
+
+                    if (theWait > 0) {
+                        theWriters[i].join(theWait);
+                    }
+
+                    if (theWriters[i].isAlive()) {
+                        // out of time - drop what is queued, the writer ends after its current capture
+                        while (theQueue.poll() != null) {
+                            recordDrop();
+                        }
+
+                        theWriters[i].join();
+                    }
+                } catch (InterruptedException ex) {
+                    // still wait for the writers - the archive must not be closed under them
+                    isInterrupted = true;
+                    --i;
+                }
+            }
+
+            if (isInterrupted) {
+                Thread.currentThread().interrupt();
+            }
+
+            reportDedupRatio();
+
+            if (theArchive != null) {
+                try {
+                    theArchive.close();
+                } catch (IOException ex) {
+                    theLogger.log(Level.WARNING, "Failed closing dump archive", ex);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return - the number of captures dropped because of backpressure.
+     */
+    public synchronized long getDroppedCount() {
+        return droppedCount;
+    }
+
+    /**
+     * @return - the number of captures written.
+     */
+    public synchronized long getWrittenCount() {
+        return writtenCount;
+    }
+
+    private synchronized boolean nextSample() {
+        return (++sampleCounter % SAMPLE_RATE) == 0;
+    }
+
+    private synchronized void recordDrop() {
+        ++droppedCount;
+        theLogger.log(Level.INFO, "Screen capture dropped ({0} so far)", Long.valueOf(droppedCount));
+    }
+
+    private synchronized void recordWrite() {
+        ++writtenCount;
+    }
+
+    private void reportDedupRatio() {
+        FrameDeduplicator theCurrentDeduplicator = theDeduplicator;
+
+        if (theCurrentDeduplicator != null) {
+            theLogger.log(Level.INFO, "Screen dump dedup ratio: {0} of {1} frames",
+                    new Object[]{Double.valueOf(theCurrentDeduplicator.getDedupRatio()),
+                        Long.valueOf(theCurrentDeduplicator.getFrameCount())});
+        }
+    }
+
+    /**
+     * @param theCapture - the capture to be written (or referenced if it is a
+     * near duplicate of a recent one).
+     * @throws IOException - if the file can not be written.
+     */
+    private void write(ScreenCapture theCapture) throws IOException {
+        FrameDeduplicator theCurrentDeduplicator = theDeduplicator;
+
+        DumpArchive theCurrentArchive = theArchive;
+
+        if (theCurrentDeduplicator != null) {
+            FrameDeduplicator.Original theDuplicate = null;
+
+            try {
+                long theHash = FrameHash.hash(theCapture.getImage());
+                theDuplicate = theCurrentDeduplicator.findDuplicate(theHash, theCapture);
+            } catch (IOException ex) {
+                theLogger.log(Level.INFO, "Could not hash " + theCapture, ex);
+            }
+
+            if (theCurrentDeduplicator.getFrameCount() % DEDUP_REPORT_INTERVAL == 0) {
+                reportDedupRatio();
+            }
+
+            if (theDuplicate != null) {
+                if (theCurrentArchive != null) {
+                    theCurrentArchive.appendReference(theCapture, theDuplicate.getStep());
+                } else {
+                    writeReference(theCapture.getFile(), theDuplicate.getFile());
+                }
+
+                recordWrite();
+                return;
+            }
+        }
+
+        if (theCurrentArchive != null) {
+            theCurrentArchive.append(theCapture);
+            recordWrite();
+            return;
+        }
+
+        FileOutputStream theStream = new FileOutputStream(theCapture.getFile());
+
+        try {
+            FileChannel theChannel = theStream.getChannel();
+            ByteBuffer theBuffer = ByteBuffer.wrap(theCapture.getImage());
+
+            while (theBuffer.hasRemaining()) {
+                theChannel.write(theBuffer);
+            }
+        } finally {
+            theStream.close();
+        }
+
+        recordWrite();
+    }
+
+    /**
+     * @param theFile - the file that a capture would have been written to.
+     * @param theDuplicate - the file holding the near identical frame.
+     * @throws IOException - if the references file can not be written.
+     */
+    private synchronized void writeReference(File theFile, File theDuplicate) throws IOException {
+        File theReferences = new File(theFile.getParentFile(), REFERENCES_FILE_NAME);
+        FileWriter theWriter = new FileWriter(theReferences, true);
+
+        try {
+            theWriter.write(theFile.getName() + "=" + theDuplicate.getName() + "\n");
+        } finally {
+            theWriter.close();
+        }
+    }
+
+    /**
+     * Takes captures off the queue and writes them until shut down (and the
+     * queue is drained).
+     */
+    private class Writer implements Runnable {
+
+        public void run() {
+            while (true) {
+                ScreenCapture theCapture = null;
+
+                try {
+                    theCapture = theQueue.poll(POLL_TIME, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException ex) {
+                    return;
+                }
+
+                if (theCapture == null) {
+                    if (isShutdown) {
+                        return;
+                    }
+
+                    continue;
+                }
+
+                try {
+                    write(theCapture);
+                } catch (IOException ex) {
+                    theLogger.log(Level.WARNING, "Failed writing " + theCapture, ex);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package randomwebwalk.http;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpHead;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.params.HttpConnectionParams;
+
+/**
+ *
+ * @author al
+ * Probes several candidate links at once (HEAD, or a one byte range GET
+ * where HEAD is refused) before one is followed in the browser, so that
+ * links that would 404, need a login, download a pdf or zip, are not in
+ * english or time out are never clicked.
+ * At most a fixed number of probes run at a time, on the prober's own
+ * daemon threads, over the connection pool shared with the http engine. The
+ * threads are made on the first probe after construction or shutdown (the
+ * runner shuts the prober down when its walk stops).
+ * Probes still running at the time limit are aborted and count as timed
+ * out.
+ * @invariant - the Logger is a valid logger.
+ */
+public class CandidateProber {
+
+    private static final AtomicInteger PROBER_NUMBER = new AtomicInteger();
+    private static final int PROBE_TIMEOUT = 5000; // ms to connect and to answer
+    private final int theNumber = PROBER_NUMBER.incrementAndGet();
+    private final int concurrency;
+    private ExecutorService theProbers = null; // null - shut down
+    private final HttpFetcher theFetcher = HttpFetcher.getShared();
+    private final Logger theLogger;
+
+    /**
+     * @param newConcurrency - the most probes run at a time.
+     * @param newLogger - valid logger.
+     */
+    public CandidateProber(int newConcurrency, Logger newLogger) {
+        concurrency = Math.max(newConcurrency, 1);
+        theLogger = newLogger;
+    }
+
+    /**
+     * @param theURLs - absolute URLs of the candidate links.
+     * @param theTimeLimit - the longest to wait for all the probes (ms).
+     * @return - a result for every URL, best first.
+     */
+    public List<ProbeResult> probe(List<String> theURLs, long theTimeLimit) {
+        long theStart = System.currentTimeMillis();
+        long theDeadline = theStart + theTimeLimit;
+        CompletionService<ProbeResult> theCompletions = new ExecutorCompletionService<ProbeResult>(getProbers());
+        List<ProbeResult> theResults = new ArrayList<ProbeResult>();
+        List<Probe> theProbes = new ArrayList<Probe>();
+
+        for (String theURL : theURLs) {
+            Probe theProbe = new Probe(theURL);
+            theProbes.add(theProbe);
+            theCompletions.submit(theProbe);
+        }
+
+        try {
+            for (int i = 0; i < theProbes.size(); ++i) {
+                long theRemaining = theDeadline - System.currentTimeMillis();
+                Future<ProbeResult> theDone = theRemaining > 0
+                        ? theCompletions.poll(theRemaining, TimeUnit.MILLISECONDS)
+                        : null;
+
+                if (theDone == null) {
+                    break;
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+
+        for (Probe theProbe : theProbes) {
+            ProbeResult theResult = theProbe.theResult;
+
+            if (theResult != null) {
+                theResults.add(theResult);
+            } else {
+                theProbe.abort();
+                theResults.add(new ProbeResult(theProbe.theURL, ProbeResult.Outcome.timedOut,
+                        System.currentTimeMillis() - theStart));
+            }
+        }
+
+        Collections.sort(theResults);
+        theLogger.log(Level.INFO, "Probed {0} links in {1}ms: {2}", new Object[]{
+                    Integer.valueOf(theURLs.size()),
+                    Long.valueOf(System.currentTimeMillis() - theStart), theResults});
+        return theResults;
+    }
+
+    /**
+     * @postcon - the probe threads finish once any probes running return (a
+     * later probe makes new ones).
+     */
+    public synchronized void shutdown() {
+        if (theProbers != null) {
+            theProbers.shutdownNow();
+            theProbers = null;
+        }
+    }
+
+    /**
+     * @return - the running probe threads (made if need be).
+     */
+    private synchronized ExecutorService getProbers() {
+        if (theProbers == null) {
+            theProbers = Executors.newFixedThreadPool(concurrency, new ThreadFactory() {
+
+                private final AtomicInteger theThreadNumber = new AtomicInteger();
+
+                public Thread newThread(Runnable theTask) {
+                    Thread theThread = new Thread(theTask,
+                            "Prober-" + theNumber + "-" + theThreadNumber.incrementAndGet());
+                    theThread.setDaemon(true);
+                    return theThread;
+                }
+            });
+        }
+
+        return theProbers;
+    }
+
+    /**
+     * The probe of one link (abortable from the waiting thread).
+     */
+    private class Probe implements Callable<ProbeResult> {
+
+        private final String theURL;
+        private volatile HttpUriRequest theRequest = null;
+        private volatile boolean isAborted = false;
+        private volatile ProbeResult theResult = null;
+
+        Probe(String newURL) {
+            theURL = newURL;
+        }
+
+        public ProbeResult call() {
+            long theStart = System.currentTimeMillis();
+
+            try {
+                HttpResponse theResponse = send(new HttpHead(theURL));
+                int theStatusCode = theResponse.getStatusLine().getStatusCode();
+
+                if (theStatusCode == 405 || theStatusCode == 501) {
+                    // HEAD refused - ask for the first byte instead
+                    HttpGet theRangeRequest = new HttpGet(theURL);
+                    theRangeRequest.addHeader("Range", "bytes=0-0");
+                    theResponse = send(theRangeRequest);
+                }
+
+                Header theType = theResponse.getFirstHeader("Content-Type");
+                Header theLanguage = theResponse.getFirstHeader("Content-Language");
+                theResult = new ProbeResult(theURL,
+                        theResponse.getStatusLine().getStatusCode(),
+                        theType == null ? null : theType.getValue(),
+                        theLanguage == null ? null : theLanguage.getValue(),
+                        System.currentTimeMillis() - theStart);
+            } catch (InterruptedIOException ex) {
+                theResult = new ProbeResult(theURL, ProbeResult.Outcome.timedOut,
+                        System.currentTimeMillis() - theStart);
+            } catch (IOException ex) {
+                theResult = new ProbeResult(theURL, ProbeResult.Outcome.failed,
+                        System.currentTimeMillis() - theStart);
+            } catch (IllegalArgumentException ex) {
+                theResult = new ProbeResult(theURL, ProbeResult.Outcome.failed,
+                        System.currentTimeMillis() - theStart);
+            }
+
+            return theResult;
+        }
+
+        /**
+         * @return - the response, with its connection already given back.
+         */
+        private HttpResponse send(HttpUriRequest newRequest) throws IOException {
+            HttpConnectionParams.setConnectionTimeout(newRequest.getParams(), PROBE_TIMEOUT);
+            HttpConnectionParams.setSoTimeout(newRequest.getParams(), PROBE_TIMEOUT);
+            setRequest(newRequest);
+
+            if (isAborted) {
+                throw new InterruptedIOException("probe aborted");
+            }
+
+            HttpResponse theResponse = theFetcher.execute(newRequest);
+            HttpEntity theEntity = theResponse.getEntity();
+
+            if (theEntity != null) {
+                if (theResponse.getStatusLine().getStatusCode() == 206) {
+                    theEntity.consumeContent();
+                } else {
+                    // do not read a body the server sent anyway
+                    newRequest.abort();
+                }
+            }
+
+            return theResponse;
+        }
+
+        void setRequest(HttpUriRequest newRequest) {
+            theRequest = newRequest;
+
+            if (isAborted) {
+                newRequest.abort();
+            }
+        }
+
+        void abort() {
+            isAborted = true;
+            HttpUriRequest theCurrent = theRequest;
+
+            if (theCurrent != null) {
+                theCurrent.abort();
+            }
+        }
+    }
+}
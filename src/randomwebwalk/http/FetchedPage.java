@@ -0,0 +1,85 @@
+package randomwebwalk.http;
+
+import randomwebwalk.browser.LanguageVerdict;
+import randomwebwalk.browser.Page;
+
+/**
+ *
+ * @author al
+ * A page fetched by the http engine - where it ended up, how the server
+ * answered and what the tokenizer found on it.
+ * @invariant - immutable.
+ */
+public class FetchedPage {
+
+    private final String theURL;
+    private final int theStatusCode;
+    private final String theContentType;
+    private final String theHeaderLanguage;
+    private final HtmlSummary theSummary;
+    private final long theFetchTime;
+    private final LanguageVerdict theVerdict;
+
+    FetchedPage(String newURL,
+            int newStatusCode,
+            String newContentType,
+            String newHeaderLanguage,
+            HtmlSummary newSummary,
+            long newFetchTime) {
+        theURL = newURL;
+        theStatusCode = newStatusCode;
+        theContentType = newContentType;
+        theHeaderLanguage = newHeaderLanguage;
+        theSummary = newSummary;
+        theFetchTime = newFetchTime;
+        theVerdict = theSummary.getLanguageVerdict(theHeaderLanguage);
+    }
+
+    /**
+     * @return - the URL of the page (after any redirects).
+     */
+    public String getURL() {
+        return theURL;
+    }
+
+    /**
+     * @return - the http status code.
+     */
+    public int getStatusCode() {
+        return theStatusCode;
+    }
+
+    /**
+     * @return - what was found on the page.
+     */
+    public HtmlSummary getSummary() {
+        return theSummary;
+    }
+
+    /**
+     * @return - the verdict on the page's language.
+     */
+    public LanguageVerdict getLanguageVerdict() {
+        return theVerdict;
+    }
+
+    /**
+     * @return - whether the page has too few links to walk on from (the
+     * same threshold as in the browser).
+     */
+    public boolean isDeadEnd() {
+        return theSummary.getLinkCount() < Page.LINK_THRESHHOLD;
+    }
+
+    /**
+     * @return - how long the fetch took (ms).
+     */
+    public long getFetchTime() {
+        return theFetchTime;
+    }
+
+    @Override
+    public String toString() {
+        return "FetchedPage{" + "theURL=" + theURL + ", theStatusCode=" + theStatusCode + ", theContentType=" + theContentType + ", theFetchTime=" + theFetchTime + ", theSummary=" + theSummary + ", theVerdict=" + theVerdict + '}';
+    }
+}
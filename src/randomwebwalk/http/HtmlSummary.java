@@ -0,0 +1,94 @@
+package randomwebwalk.http;
+
+import java.util.Collections;
+import java.util.List;
+import randomwebwalk.browser.LanguageVerdict;
+
+/**
+ *
+ * @author al
+ * What the LinkTokenizer found on a page - the http engine's equivalent of
+ * the PageFacts collected in the browser.
+ * @invariant - immutable.
+ */
+public class HtmlSummary {
+
+    private final String theTitle;
+    private final String htmlLang;
+    private final String xmlLang;
+    private final String contentLanguage;
+    private final String theCharset;
+    private final String theBaseHref;
+    private final List<TokenizedLink> theLinks;
+    private final int theLinkCount;
+    private final String theTextSample;
+
+    HtmlSummary(String newTitle,
+            String newHtmlLang,
+            String newXmlLang,
+            String newContentLanguage,
+            String newCharset,
+            String newBaseHref,
+            List<TokenizedLink> newLinks,
+            int newLinkCount,
+            String newTextSample) {
+        theTitle = newTitle;
+        htmlLang = newHtmlLang;
+        xmlLang = newXmlLang;
+        contentLanguage = newContentLanguage;
+        theCharset = newCharset;
+        theBaseHref = newBaseHref;
+        theLinks = Collections.unmodifiableList(newLinks);
+        theLinkCount = newLinkCount;
+        theTextSample = newTextSample;
+    }
+
+    /**
+     * @return - the page title (empty if there is none).
+     */
+    public String getTitle() {
+        return theTitle;
+    }
+
+    /**
+     * @return - the href of the page's base element (as written, possibly
+     * relative) or null if there is none.
+     */
+    public String getBaseHref() {
+        return theBaseHref;
+    }
+
+    /**
+     * @return - the links kept (a sample if there were more than the limit).
+     */
+    public List<TokenizedLink> getLinks() {
+        return theLinks;
+    }
+
+    /**
+     * @return - the number of links on the page.
+     */
+    public int getLinkCount() {
+        return theLinkCount;
+    }
+
+    /**
+     * @param theHeaderLanguage - the Content-Language response header (or
+     * null), used if the page has no Content-Language meta.
+     * @return - the verdict on the page's language by the same rules as for
+     * pages in the browser.
+     */
+    public LanguageVerdict getLanguageVerdict(String theHeaderLanguage) {
+        return LanguageVerdict.fromDeclarations(htmlLang,
+                xmlLang,
+                htmlLang,
+                contentLanguage != null ? contentLanguage : theHeaderLanguage,
+                theCharset,
+                theTextSample);
+    }
+
+    @Override
+    public String toString() {
+        return "HtmlSummary{" + "theTitle=" + theTitle + ", theLinkCount=" + theLinkCount + ", htmlLang=" + htmlLang + '}';
+    }
+}
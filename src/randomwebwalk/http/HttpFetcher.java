@@ -0,0 +1,249 @@
+package randomwebwalk.http;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UnsupportedEncodingException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.Random;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.conn.params.ConnManagerParams;
+import org.apache.http.conn.params.ConnPerRouteBean;
+import org.apache.http.conn.scheme.PlainSocketFactory;
+import org.apache.http.conn.scheme.Scheme;
+import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.conn.ssl.SSLSocketFactory;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
+import org.apache.http.params.BasicHttpParams;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+import org.apache.http.params.HttpProtocolParams;
+import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.protocol.ExecutionContext;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.util.EntityUtils;
+
+/**
+ *
+ * @author al
+ * Fetches pages for the http engine over one pooled, thread safe client
+ * shared by every http walker in the process, so connections to the same
+ * host are kept alive and reused across walkers.
+ * Pages are streamed straight into a LinkTokenizer (never held whole) and
+ * reading stops at a size limit.
+ * Walkers that need other time outs (and tests) can have a fetcher of their
+ * own, which does not share connections with the others.
+ * @invariant - a client is never shut down (it lives as long as the
+ * process).
+ */
+public class HttpFetcher {
+
+    private static final int MAX_CONNECTIONS = 200;
+    private static final int MAX_CONNECTIONS_PER_HOST = 20;
+    public static final int CONNECT_TIMEOUT = 10000;    // ms
+    public static final int READ_TIMEOUT = 20000;       // ms
+    private static final long MAX_PAGE_BYTES = 2L * 1024 * 1024;
+    private static final String USER_AGENT = "RandomWebWalker";
+    private static final HttpFetcher SHARED = new HttpFetcher(CONNECT_TIMEOUT, READ_TIMEOUT);
+    private final DefaultHttpClient theClient;
+
+    /**
+     * @return - the fetcher shared by all http walkers.
+     */
+    public static HttpFetcher getShared() {
+        return SHARED;
+    }
+
+    /**
+     * @param connectTimeout - how long to wait for a connection (ms).
+     * @param readTimeout - how long to wait for data once connected (ms).
+     */
+    public HttpFetcher(int connectTimeout, int readTimeout) {
+        HttpParams theParams = new BasicHttpParams();
+        ConnManagerParams.setMaxTotalConnections(theParams, MAX_CONNECTIONS);
+        ConnManagerParams.setMaxConnectionsPerRoute(theParams,
+                new ConnPerRouteBean(MAX_CONNECTIONS_PER_HOST));
+        HttpConnectionParams.setConnectionTimeout(theParams, connectTimeout);
+        HttpConnectionParams.setSoTimeout(theParams, readTimeout);
+        HttpProtocolParams.setUserAgent(theParams, USER_AGENT);
+
+        SchemeRegistry theSchemes = new SchemeRegistry();
+        theSchemes.register(new Scheme("http", PlainSocketFactory.getSocketFactory(), 80));
+        theSchemes.register(new Scheme("https", SSLSocketFactory.getSocketFactory(), 443));
+
+        theClient = new DefaultHttpClient(new ThreadSafeClientConnManager(theParams, theSchemes),
+                theParams);
+    }
+
+    /**
+     * @param theURL - an absolute http(s) URL.
+     * @return - a request for the page (which can be aborted from another
+     * thread while it is being fetched).
+     * @throws IllegalArgumentException - if the URL is not valid.
+     */
+    public HttpGet newRequest(String theURL) {
+        return new HttpGet(theURL);
+    }
+
+    /**
+     * @param theRequest - the request to run.
+     * @param linkLimit - the most links kept from the page.
+     * @param textLimit - the most characters of text kept.
+     * @param theRandom - chooses the links kept from large pages.
+     * @return - the page (following any redirects).
+     * @throws IOException - if the page can not be fetched (including time
+     * outs and aborts).
+     */
+    public FetchedPage fetch(HttpGet theRequest,
+            int linkLimit,
+            int textLimit,
+            Random theRandom) throws IOException {
+        long theStart = System.currentTimeMillis();
+        HttpContext theContext = new BasicHttpContext();
+        HttpResponse theResponse = theClient.execute(theRequest, theContext);
+        HttpEntity theEntity = theResponse.getEntity();
+        int theStatusCode = theResponse.getStatusLine().getStatusCode();
+        String theFinalURL = finalURL(theRequest, theContext);
+        Header theLanguageHeader = theResponse.getFirstHeader("Content-Language");
+        String theContentType = theEntity != null && theEntity.getContentType() != null
+                ? theEntity.getContentType().getValue() : "";
+        HtmlSummary theSummary = null;
+
+        if (theEntity != null) {
+            if (theStatusCode < 300 && isHtml(theContentType)) {
+                LimitedInputStream theContent = new LimitedInputStream(theEntity.getContent(), MAX_PAGE_BYTES);
+
+                try {
+                    theSummary = new LinkTokenizer(new InputStreamReader(theContent, charsetOf(theEntity)),
+                            linkLimit, textLimit, theRandom).tokenize();
+                } finally {
+                    if (theContent.isLimitReached()) {
+                        // do not read the rest of a huge page just to reuse the connection
+                        theRequest.abort();
+                    } else {
+                        theContent.close();
+                    }
+                }
+            } else {
+                theRequest.abort();
+            }
+        }
+
+        if (theSummary == null) {
+            theSummary = new HtmlSummary("", null, null, null, null, null,
+                    new ArrayList<TokenizedLink>(), 0, "");
+        }
+
+        return new FetchedPage(theFinalURL,
+                theStatusCode,
+                theContentType,
+                theLanguageHeader == null ? null : theLanguageHeader.getValue(),
+                theSummary,
+                System.currentTimeMillis() - theStart);
+    }
+
+    /**
+     * @param theRequest - a request whose answer is looked at but whose
+     * body (if any) is not read.
+     * @return - the response (the caller consumes or aborts any entity).
+     * @throws IOException - if there is no answer (including time outs and
+     * aborts).
+     */
+    HttpResponse execute(HttpUriRequest theRequest) throws IOException {
+        return theClient.execute(theRequest);
+    }
+
+    private static boolean isHtml(String theContentType) {
+        String theType = theContentType.toLowerCase(Locale.ENGLISH);
+        return theType.isEmpty() || theType.contains("html");
+    }
+
+    private static String charsetOf(HttpEntity theEntity) {
+        String theCharset = EntityUtils.getContentCharSet(theEntity);
+
+        if (theCharset != null) {
+            try {
+                new String(new byte[0], theCharset);
+                return theCharset;
+            } catch (UnsupportedEncodingException ex) {
+                // fall through to the default
+            }
+        }
+
+        return "UTF-8";
+    }
+
+    /**
+     * @return - the URL the request ended up at after redirects.
+     */
+    private static String finalURL(HttpGet theRequest, HttpContext theContext) {
+        HttpUriRequest theLastRequest = (HttpUriRequest) theContext.getAttribute(ExecutionContext.HTTP_REQUEST);
+        HttpHost theLastHost = (HttpHost) theContext.getAttribute(ExecutionContext.HTTP_TARGET_HOST);
+
+        if (theLastRequest == null || theLastHost == null) {
+            return theRequest.getURI().toString();
+        }
+
+        URI theURI = theLastRequest.getURI();
+        return theURI.isAbsolute() ? theURI.toString() : theLastHost.toURI() + theURI.toString();
+    }
+
+    /**
+     * Stream that reports end of stream after a number of bytes.
+     */
+    private static class LimitedInputStream extends FilterInputStream {
+
+        private long theRemaining;
+        private boolean isLimitReached = false;
+
+        LimitedInputStream(InputStream theStream, long theLimit) {
+            super(theStream);
+            theRemaining = theLimit;
+        }
+
+        boolean isLimitReached() {
+            return isLimitReached;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (theRemaining <= 0) {
+                isLimitReached = true;
+                return -1;
+            }
+
+            int theResult = super.read();
+
+            if (theResult >= 0) {
+                --theRemaining;
+            }
+
+            return theResult;
+        }
+
+        @Override
+        public int read(byte[] theBuffer, int theOffset, int theLength) throws IOException {
+            if (theRemaining <= 0) {
+                isLimitReached = true;
+                return -1;
+            }
+
+            int theResult = super.read(theBuffer, theOffset, (int) Math.min(theLength, theRemaining));
+
+            if (theResult > 0) {
+                theRemaining -= theResult;
+            }
+
+            return theResult;
+        }
+    }
+}
@@ -0,0 +1,479 @@
+package randomwebwalk.http;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.conn.ConnectTimeoutException;
+import randomwebwalk.RandomWebWalkRunner.WalkStatus;
+import randomwebwalk.RandomWebWalkRunner.WalkType;
+import randomwebwalk.WalkRunner;
+import randomwebwalk.browser.FailedUrlCache;
+import randomwebwalk.browser.HostLanguageCache;
+import randomwebwalk.browser.HostScoreboard;
+import randomwebwalk.browser.Hyperlink;
+import randomwebwalk.browser.PageHistory;
+import randomwebwalk.browser.PageRecord;
+import randomwebwalk.browser.UrlCanonicalizer;
+import randomwebwalk.browser.VisitedUrlSet;
+
+/**
+ *
+ * @author al
+ * Walks free and trail walks by fetching the pages directly over http
+ * instead of in a browser - for walks where only the path, the page
+ * statistics and the coverage matter.
+ * The same rules as in the browser decide which links may be followed
+ * (Hyperlink.isWalkable, with the verdicts of the hosts fetched in a
+ * HostLanguageCache, and the failed URLs), when a page is a dead end
+ * (Page.LINK_THRESHHOLD) and whether it is in english (LanguageVerdict), but
+ * the pages are read by a streaming tokenizer with no DOM. Relative links are
+ * resolved against the page's base element if it has one.
+ * Pages that fail (not found, not english, dead end...) are not moved to,
+ * so going back from them just clears the failure; going back from a good
+ * page returns to the one before it (held for a few pages).
+ * @invariant - type of walk is free or trail.
+ * @invariant - the Logger is a valid logger.
+ */
+public class HttpWalkRunner implements WalkRunner {
+
+    private static final int HARVEST_SAMPLE_LIMIT = 250; // links kept per page
+    private static final int TEXT_SAMPLE_LIMIT = 2000; // characters of text classified
+    private static final int LINK_PICK_LIMIT = 20; // picks before giving up on a page
+    private static final int BACK_LIMIT = 20; // pages held for going back
+    private static final int HOST_LANGUAGE_CACHE_SIZE = 1024;
+    private final WalkType theType;
+    private final String theTrailFileName;
+    private final Logger theLogger;
+    private HttpFetcher theFetcher = HttpFetcher.getShared();
+    private URL initialURL = null;
+    private Iterator<URL> trailIterator = null;
+    private UrlCanonicalizer theCanonicalizer = new UrlCanonicalizer();
+    private VisitedUrlSet visitedUrls = new VisitedUrlSet(1000000, null);
+    private PageHistory theHistory = new PageHistory(1000, null);
+    private HostLanguageCache hostLanguages = null; // made at start up
+    private FailedUrlCache theFailedUrls = null; // null - failures are not remembered
+    private Random theRandom = new Random();
+    private final LinkedList<FetchedPage> theBackPages = new LinkedList<FetchedPage>();
+    private volatile FetchedPage currentPage = null; // last page successfully visited
+    private volatile HttpGet inFlightRequest = null;
+    private volatile WalkStatus walkStatus = WalkStatus.successfulStep;
+    private int failureCount = 0;
+    private long theStepCount = 0;
+
+    /**
+     * @param newType - free or trail.
+     * @param trailFile - the file of URLs for a trail walk.
+     * @param newLogger - valid logger.
+     * @throws IllegalArgumentException - if the walk type needs a browser.
+     */
+    public HttpWalkRunner(WalkType newType,
+            String trailFile,
+            Logger newLogger) {
+        if (newType != WalkType.free && newType != WalkType.trail) {
+            throw new IllegalArgumentException("http engine can not walk " + newType);
+        }
+
+        theType = newType;
+        theTrailFileName = trailFile;
+        theLogger = newLogger;
+    }
+
+    public void setInitialURL(URL newInitialURL) {
+        initialURL = newInitialURL;
+    }
+
+    public void startUp(String idString, String passwordString, String profileId) {
+        theLogger.log(Level.INFO, "Start up (http)");
+        currentPage = null;
+        theBackPages.clear();
+        hostLanguages = new HostLanguageCache(HOST_LANGUAGE_CACHE_SIZE, theCanonicalizer);
+
+        if (theType == WalkType.trail) {
+            initTrail();
+        }
+
+        if (initialURL == null) {
+            setStatus(WalkStatus.failedStep);
+            return;
+        }
+
+        moveTo(initialURL.toString(), PageRecord.Arrival.direct, false);
+    }
+
+    public WalkType getType() {
+        return theType;
+    }
+
+    public void restore() {
+        // nothing can move the walk off its page between steps
+    }
+
+    public void pause() {
+        HttpGet theRequest = inFlightRequest;
+
+        if (theRequest != null) {
+            theRequest.abort();
+        }
+
+        setStatus(WalkStatus.successfulStep);
+    }
+
+    public boolean hasPageMoved() {
+        return false;
+    }
+
+    public void stop() {
+        theLogger.log(Level.INFO, "Stop (http) after {0} steps", Long.valueOf(theStepCount));
+        pause();
+        visitedUrls.flush();
+        theHistory.flush();
+        currentPage = null;
+        theBackPages.clear();
+    }
+
+    public void preload() {
+        // nothing is shown so there is no load to hide
+    }
+
+    public boolean isPreloading() {
+        return false;
+    }
+
+    public void abortPreload() {
+        // there is never a preload running
+    }
+
+    public void step() {
+        theLogger.log(Level.INFO, "Step (http)");
+        FetchedPage thePage = currentPage;
+
+        if (thePage == null) {
+            setStatus(WalkStatus.failedStep);
+            return;
+        }
+
+        if (theType == WalkType.trail) {
+            String theURL = trailIterator == null ? null : nextTrailURL();
+
+            if (theURL != null) {
+                moveTo(theURL, PageRecord.Arrival.direct, false);
+                recordFailure(theURL, checkStatus());
+            } else {
+                setStatus(WalkStatus.complete);
+            }
+        } else {
+            String theLink = pickLink(thePage);
+
+            if (theLink == null) {
+                theLogger.log(Level.INFO, "No link to follow from {0}", thePage.getURL());
+                setStatus(WalkStatus.pageDeadEnd);
+            } else {
+                moveTo(theLink, PageRecord.Arrival.forward, true);
+                recordFailure(theLink, checkStatus());
+            }
+        }
+
+        if (checkStatus() != WalkStatus.successfulStep
+                && checkStatus() != WalkStatus.complete
+                && failureCount > 3) {
+            setStatus(WalkStatus.failedStep);
+        }
+    }
+
+    public void refresh() {
+        theLogger.log(Level.INFO, "Refresh (http)");
+        FetchedPage thePage = currentPage;
+
+        if (thePage != null) {
+            FetchedPage theBackPage = theBackPages.isEmpty() ? null : theBackPages.removeLast();
+            currentPage = theBackPage;
+            moveTo(thePage.getURL(), PageRecord.Arrival.refresh, false);
+
+            if (checkStatus() != WalkStatus.successfulStep) {
+                // the refresh failed - stay where we were
+                if (theBackPage != null) {
+                    theBackPages.addLast(theBackPage);
+                }
+
+                currentPage = thePage;
+            }
+        }
+    }
+
+    public void goBack() {
+        theLogger.log(Level.INFO, "GoBack (http)");
+
+        if (checkStatus() == WalkStatus.successfulStep && !theBackPages.isEmpty()) {
+            currentPage = theBackPages.removeLast();
+            long theUrlId = theCanonicalizer.fingerprint(currentPage.getURL());
+            theHistory.add(new PageRecord(theUrlId, System.currentTimeMillis(), PageRecord.Arrival.back));
+        }
+
+        // a failed page was never moved to so there is nothing else to undo
+        setStatus(WalkStatus.successfulStep);
+    }
+
+    public boolean isStarted() {
+        return currentPage != null;
+    }
+
+    public WalkStatus checkStatus() {
+        return walkStatus;
+    }
+
+    public void setStatus(WalkStatus newStatus) {
+        theLogger.log(Level.INFO, "SetStatus: {0}", newStatus);
+
+        if (newStatus == WalkStatus.successfulStep) {
+            failureCount = 0;
+        } else {
+            ++failureCount;
+        }
+
+        walkStatus = newStatus;
+    }
+
+    public void setCanonicalizer(UrlCanonicalizer newCanonicalizer) {
+        theCanonicalizer = newCanonicalizer;
+    }
+
+    public void setVisitedUrls(VisitedUrlSet newVisitedUrls) {
+        visitedUrls = newVisitedUrls;
+    }
+
+    public void setHistory(PageHistory newHistory) {
+        theHistory = newHistory;
+    }
+
+    public void setFailedUrls(FailedUrlCache newFailedUrls) {
+        theFailedUrls = newFailedUrls;
+    }
+
+    public void setSeed(long theSeed) {
+        theRandom = new Random(theSeed);
+    }
+
+    /**
+     * @param newFetcher - fetches the pages (the shared fetcher by default).
+     */
+    public void setFetcher(HttpFetcher newFetcher) {
+        theFetcher = newFetcher;
+    }
+
+    /**
+     * @param thePage - the current page.
+     * @return - the absolute URL of a walkable link that has not recently
+     * failed (preferring ones not yet visited) or null if there is none.
+     */
+    private String pickLink(FetchedPage thePage) {
+        List<TokenizedLink> theLinks = thePage.getSummary().getLinks();
+        String thePageURL = thePage.getURL();
+        String theBaseHref = thePage.getSummary().getBaseHref();
+        String theBaseURL = theBaseHref == null ? thePageURL : theCanonicalizer.canonicalize(thePageURL, theBaseHref);
+        String theResult = null;
+
+        for (int i = 0; i < LINK_PICK_LIMIT && !theLinks.isEmpty(); ++i) {
+            TokenizedLink theLink = theLinks.get(theRandom.nextInt(theLinks.size()));
+            String theURL = theCanonicalizer.canonicalize(theBaseURL, theLink.getHref());
+
+            if (!Hyperlink.isWalkable(theCanonicalizer, hostLanguages, thePageURL, theURL, theLink.getText())) {
+                continue;
+            }
+
+            long theUrlId = theCanonicalizer.fingerprint(theURL);
+
+            if (getFailure(theUrlId) != null) {
+                continue;
+            }
+
+            theResult = theURL;
+
+            if (!visitedUrls.contains(theUrlId)) {
+                break;
+            }
+        }
+
+        return theResult;
+    }
+
+    /**
+     * @return - the next URL of the trail that has not recently failed, or
+     * null at the end of the trail.
+     */
+    private String nextTrailURL() {
+        while (trailIterator.hasNext()) {
+            String theURL = trailIterator.next().toString();
+            HostScoreboard.Outcome theFailure = getFailure(theCanonicalizer.fingerprint(theURL));
+
+            if (theFailure == null) {
+                return theURL;
+            }
+
+            theLogger.log(Level.INFO, "Trail URL that recently failed ({0}) skipped: {1}",
+                    new Object[]{theFailure, theURL});
+        }
+
+        return null;
+    }
+
+    /**
+     * @param theUrlId - fingerprint of a URL.
+     * @return - why it recently failed (or null).
+     */
+    private HostScoreboard.Outcome getFailure(long theUrlId) {
+        return theFailedUrls == null ? null : theFailedUrls.getFailure(theUrlId);
+    }
+
+    /**
+     * @param theURL - a URL stepped to.
+     * @param theStatus - how the fetch went.
+     * @postcon - a failure is added to the failed URLs (if there are any).
+     */
+    private void recordFailure(String theURL, WalkStatus theStatus) {
+        HostScoreboard.Outcome theOutcome;
+
+        switch (theStatus) {
+            case pageNotFound:
+                theOutcome = HostScoreboard.Outcome.notFound;
+                break;
+            case permissionDenied:
+                theOutcome = HostScoreboard.Outcome.permissionDenied;
+                break;
+            case pageTimedOut:
+                theOutcome = HostScoreboard.Outcome.timedOut;
+                break;
+            case pageNotEnglish:
+                theOutcome = HostScoreboard.Outcome.notEnglish;
+                break;
+            case pageDeadEnd:
+                theOutcome = HostScoreboard.Outcome.deadEnd;
+                break;
+            default:
+                return;
+        }
+
+        if (theFailedUrls != null) {
+            theFailedUrls.record(theCanonicalizer.fingerprint(theURL), theOutcome);
+        }
+    }
+
+    /**
+     * @param theURL - the page to fetch.
+     * @param theArrival - how the page is being arrived at.
+     * @param shouldCheckPage - whether the language and dead end rules apply.
+     * @postcon - if the page is good it is the current page and the status
+     * is successful, otherwise the walk stays where it was and the status
+     * says why.
+     */
+    private void moveTo(String theURL, PageRecord.Arrival theArrival, boolean shouldCheckPage) {
+        FetchedPage theNewPage;
+
+        try {
+            HttpGet theRequest = theFetcher.newRequest(theURL);
+            inFlightRequest = theRequest;
+
+            try {
+                theNewPage = theFetcher.fetch(theRequest, HARVEST_SAMPLE_LIMIT, TEXT_SAMPLE_LIMIT, theRandom);
+            } finally {
+                inFlightRequest = null;
+            }
+        } catch (IllegalArgumentException ex) {
+            theLogger.log(Level.INFO, "Bad URL {0}", theURL);
+            setStatus(WalkStatus.pageNotFound);
+            return;
+        } catch (ConnectTimeoutException ex) {
+            theLogger.log(Level.WARNING, "Connect timeout {0}", theURL);
+            setStatus(WalkStatus.pageTimedOut);
+            return;
+        } catch (InterruptedIOException ex) {
+            theLogger.log(Level.WARNING, "Read timeout (or abort) {0}", theURL);
+            setStatus(WalkStatus.pageTimedOut);
+            return;
+        } catch (IOException ex) {
+            theLogger.log(Level.INFO, "Fetch failed " + theURL, ex);
+            setStatus(WalkStatus.pageNotFound);
+            return;
+        }
+
+        theLogger.log(Level.INFO, "Fetched: {0}", theNewPage);
+        int theCode = theNewPage.getStatusCode();
+
+        if (theCode < 300) {
+            hostLanguages.record(theNewPage.getURL(), theNewPage.getLanguageVerdict());
+        }
+
+        if (theCode == 401 || theCode == 403) {
+            setStatus(WalkStatus.permissionDenied);
+        } else if (theCode >= 300) {
+            setStatus(WalkStatus.pageNotFound);
+        } else if (shouldCheckPage && !theNewPage.getLanguageVerdict().isEnglish()) {
+            setStatus(WalkStatus.pageNotEnglish);
+        } else if (shouldCheckPage
+                && (theNewPage.isDeadEnd()
+                || (currentPage != null
+                && theCanonicalizer.fingerprint(currentPage.getURL())
+                == theCanonicalizer.fingerprint(theNewPage.getURL())))) {
+            setStatus(WalkStatus.pageDeadEnd);
+        } else {
+            if (currentPage != null) {
+                theBackPages.addLast(currentPage);
+
+                if (theBackPages.size() > BACK_LIMIT) {
+                    theBackPages.removeFirst();
+                }
+            }
+
+            currentPage = theNewPage;
+            long theUrlId = theCanonicalizer.fingerprint(theNewPage.getURL());
+            visitedUrls.add(theUrlId);
+            theHistory.add(new PageRecord(theUrlId, System.currentTimeMillis(), theArrival));
+            ++theStepCount;
+            setStatus(WalkStatus.successfulStep);
+        }
+    }
+
+    private void initTrail() {
+        List<URL> theTrail = new ArrayList<URL>();
+        BufferedReader in = null;
+
+        try {
+            in = new BufferedReader(new FileReader(theTrailFileName));
+            String theURLAsString = null;
+
+            while ((theURLAsString = in.readLine()) != null) {
+                try {
+                    theTrail.add(new URL(theURLAsString));
+                } catch (MalformedURLException ex) {
+                    theLogger.log(Level.WARNING, "Failed making URL from{0}", theURLAsString);
+                }
+            }
+        } catch (IOException e) {
+            theLogger.log(Level.WARNING, "Can not read trail file {0}", theTrailFileName);
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    // nothing useful to do
+                }
+            }
+        }
+
+        trailIterator = theTrail.iterator();
+
+        if (trailIterator.hasNext()) {
+            initialURL = trailIterator.next();
+        }
+    }
+}
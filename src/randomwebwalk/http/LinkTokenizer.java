@@ -0,0 +1,421 @@
+package randomwebwalk.http;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ *
+ * @author al
+ * Streaming HTML scanner that picks out what a walk needs from a page
+ * without building a DOM: the anchors with an href (and their text), the
+ * title, the base URL, the language and charset declarations and a sample
+ * of the body text.
+ * The page is read once, a character at a time. If there are more anchors
+ * than the link limit a uniform random sample of them is kept (reservoir
+ * sampling) while all of them are counted - as the browser harvest does.
+ * Script and style contents and comments are skipped.
+ * @invariant - a tokenizer is used for one page only.
+ */
+public class LinkTokenizer {
+
+    private static final int MAX_TAG_LENGTH = 8192;
+    private final Reader theReader;
+    private final int linkLimit;
+    private final int textLimit;
+    private final Random theRandom;
+    private final StringBuilder theTag = new StringBuilder();
+    private final StringBuilder theText = new StringBuilder();
+    private final StringBuilder theTitle = new StringBuilder();
+    private StringBuilder theLinkText = null; // text of the anchor being read
+    private String theLinkHref = null;
+    private final List<TokenizedLink> theLinks = new ArrayList<TokenizedLink>();
+    private int theLinkCount = 0;
+    private boolean isInTitle = false;
+    private boolean isInBody = false;
+    private String htmlLang = null;
+    private String xmlLang = null;
+    private String contentLanguage = null;
+    private String theCharset = null;
+    private String theBaseHref = null;
+    private int thePushedBack = -2;
+
+    /**
+     * @param newReader - the page content.
+     * @param newLinkLimit - the most links kept (zero or less for all).
+     * @param newTextLimit - the most characters of body text kept.
+     * @param newRandom - chooses the links kept when there are too many.
+     */
+    public LinkTokenizer(Reader newReader,
+            int newLinkLimit,
+            int newTextLimit,
+            Random newRandom) {
+        theReader = newReader;
+        linkLimit = newLinkLimit;
+        textLimit = newTextLimit;
+        theRandom = newRandom;
+    }
+
+    /**
+     * @return - what was found on the page.
+     * @throws IOException - if the page can not be read.
+     */
+    public HtmlSummary tokenize() throws IOException {
+        int theChar;
+
+        while ((theChar = read()) >= 0) {
+            if (theChar == '<') {
+                readMarkup();
+            } else {
+                addText((char) theChar);
+            }
+        }
+
+        endLink();
+
+        return new HtmlSummary(decode(theTitle.toString().replaceAll("\\s+", " ").trim()),
+                htmlLang,
+                xmlLang,
+                contentLanguage,
+                theCharset,
+                theBaseHref,
+                theLinks,
+                theLinkCount,
+                theText.toString());
+    }
+
+    private int read() throws IOException {
+        if (thePushedBack != -2) {
+            int theResult = thePushedBack;
+            thePushedBack = -2;
+            return theResult;
+        }
+
+        return theReader.read();
+    }
+
+    private void unread(int theChar) {
+        thePushedBack = theChar;
+    }
+
+    private void addText(char theChar) {
+        if (isInTitle) {
+            theTitle.append(theChar);
+        }
+
+        if (theLinkText != null && theLinkText.length() < 256) {
+            theLinkText.append(theChar);
+        }
+
+        if (isInBody && theText.length() < textLimit) {
+            if (Character.isWhitespace(theChar)) {
+                if (theText.length() > 0 && theText.charAt(theText.length() - 1) != ' ') {
+                    theText.append(' ');
+                }
+            } else {
+                theText.append(theChar);
+            }
+        }
+    }
+
+    /**
+     * Reads from after a '<' to the end of the tag, comment or declaration.
+     */
+    private void readMarkup() throws IOException {
+        int theChar = read();
+
+        if (theChar == '!') {
+            skipDeclaration();
+            return;
+        }
+
+        if (!(theChar == '/' || theChar == '?' || Character.isLetter(theChar))) {
+            // not markup - just a '<' in the text
+            addText('<');
+
+            if (theChar >= 0) {
+                unread(theChar);
+            }
+
+            return;
+        }
+
+        theTag.setLength(0);
+        theTag.append((char) theChar);
+        char theQuote = 0;
+
+        while ((theChar = read()) >= 0) {
+            if (theQuote != 0) {
+                if (theChar == theQuote) {
+                    theQuote = 0;
+                }
+            } else if (theChar == '"' || theChar == '\'') {
+                theQuote = (char) theChar;
+            } else if (theChar == '>') {
+                break;
+            }
+
+            if (theTag.length() < MAX_TAG_LENGTH) {
+                theTag.append((char) theChar);
+            }
+        }
+
+        handleTag();
+    }
+
+    private void skipDeclaration() throws IOException {
+        int theFirst = read();
+        int theSecond = theFirst == '-' ? read() : -1;
+
+        if (theFirst == '-' && theSecond == '-') {
+            skipPast("-->");
+        } else {
+            if (theSecond >= 0) {
+                unread(theSecond);
+            }
+
+            if (theFirst != '>') {
+                skipPast(">");
+            }
+        }
+    }
+
+    /**
+     * Skips to just after the end marker (case insensitive).
+     */
+    private void skipPast(String theEnd) throws IOException {
+        int theMatched = 0;
+        int theChar;
+
+        while (theMatched < theEnd.length() && (theChar = read()) >= 0) {
+            if (Character.toLowerCase((char) theChar) == theEnd.charAt(theMatched)) {
+                ++theMatched;
+            } else {
+                theMatched = Character.toLowerCase((char) theChar) == theEnd.charAt(0) ? 1 : 0;
+            }
+        }
+    }
+
+    private void handleTag() throws IOException {
+        boolean isEndTag = theTag.charAt(0) == '/';
+        int theStart = isEndTag ? 1 : 0;
+        int theEnd = theStart;
+
+        while (theEnd < theTag.length()
+                && !Character.isWhitespace(theTag.charAt(theEnd))
+                && theTag.charAt(theEnd) != '/') {
+            ++theEnd;
+        }
+
+        String theName = theTag.substring(theStart, theEnd).toLowerCase(Locale.ENGLISH);
+
+        if (isEndTag) {
+            if (theName.equals("a")) {
+                endLink();
+            } else if (theName.equals("title")) {
+                isInTitle = false;
+            }
+
+            return;
+        }
+
+        if (theName.equals("a")) {
+            endLink();
+            String theHref = attribute(theEnd, "href");
+
+            if (theHref != null) {
+                theLinkHref = theHref.trim();
+                theLinkText = new StringBuilder();
+            }
+        } else if (theName.equals("title")) {
+            isInTitle = theTitle.length() == 0;
+        } else if (theName.equals("body")) {
+            isInBody = true;
+        } else if (theName.equals("html")) {
+            htmlLang = attribute(theEnd, "lang");
+            xmlLang = attribute(theEnd, "xml:lang");
+        } else if (theName.equals("meta")) {
+            readMeta(theEnd);
+        } else if (theName.equals("base")) {
+            String theHref = theBaseHref == null ? attribute(theEnd, "href") : null;
+
+            if (theHref != null) {
+                // only the first base counts (as in a browser)
+                theBaseHref = decode(theHref.trim());
+            }
+        } else if (theName.equals("script") || theName.equals("style")) {
+            skipPast("</" + theName);
+            skipPast(">");
+        } else if (!isInBody && !theName.equals("head") && !theName.equals("link")) {
+            // content without a body tag
+            isInBody = true;
+        }
+    }
+
+    private void readMeta(int theAttributesStart) {
+        String theEquiv = attribute(theAttributesStart, "http-equiv");
+
+        if (theEquiv != null) {
+            theEquiv = theEquiv.toLowerCase(Locale.ENGLISH);
+
+            if (theEquiv.indexOf("content-language") >= 0 && contentLanguage == null) {
+                contentLanguage = attribute(theAttributesStart, "content");
+            } else if (theEquiv.indexOf("content-type") >= 0 && theCharset == null) {
+                theCharset = attribute(theAttributesStart, "content");
+            }
+        } else if (theCharset == null) {
+            theCharset = attribute(theAttributesStart, "charset");
+        }
+    }
+
+    private void endLink() {
+        if (theLinkHref == null) {
+            return;
+        }
+
+        TokenizedLink theLink = new TokenizedLink(decode(theLinkHref),
+                decode(theLinkText.toString().replaceAll("\\s+", " ").trim()));
+        ++theLinkCount;
+
+        if (linkLimit <= 0 || theLinks.size() < linkLimit) {
+            theLinks.add(theLink);
+        } else {
+            int theSlot = theRandom.nextInt(theLinkCount);
+
+            if (theSlot < linkLimit) {
+                theLinks.set(theSlot, theLink);
+            }
+        }
+
+        theLinkHref = null;
+        theLinkText = null;
+    }
+
+    /**
+     * @param theStart - where the attributes start in the tag.
+     * @param theName - the (lower case) attribute name.
+     * @return - the value of the attribute or null if it is not there.
+     */
+    private String attribute(int theStart, String theName) {
+        int i = theStart;
+        int theLength = theTag.length();
+
+        while (i < theLength) {
+            while (i < theLength && (Character.isWhitespace(theTag.charAt(i)) || theTag.charAt(i) == '/')) {
+                ++i;
+            }
+
+            int theNameStart = i;
+
+            while (i < theLength && theTag.charAt(i) != '=' && theTag.charAt(i) != '/'
+                    && !Character.isWhitespace(theTag.charAt(i))) {
+                ++i;
+            }
+
+            int theNameEnd = i;
+
+            while (i < theLength && Character.isWhitespace(theTag.charAt(i))) {
+                ++i;
+            }
+
+            String theValue = "";
+
+            if (i < theLength && theTag.charAt(i) == '=') {
+                ++i;
+
+                while (i < theLength && Character.isWhitespace(theTag.charAt(i))) {
+                    ++i;
+                }
+
+                if (i < theLength && (theTag.charAt(i) == '"' || theTag.charAt(i) == '\'')) {
+                    char theQuote = theTag.charAt(i++);
+                    int theValueStart = i;
+
+                    while (i < theLength && theTag.charAt(i) != theQuote) {
+                        ++i;
+                    }
+
+                    theValue = theTag.substring(theValueStart, i);
+                    ++i;
+                } else {
+                    int theValueStart = i;
+
+                    while (i < theLength && !Character.isWhitespace(theTag.charAt(i))) {
+                        ++i;
+                    }
+
+                    theValue = theTag.substring(theValueStart, i);
+                }
+            }
+
+            if (theNameEnd - theNameStart == theName.length()
+                    && theTag.substring(theNameStart, theNameEnd).equalsIgnoreCase(theName)) {
+                return theValue;
+            }
+
+            if (theNameEnd == theNameStart) {
+                ++i;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * @return - the text with the common character references replaced.
+     */
+    static String decode(String theText) {
+        if (theText.indexOf('&') < 0) {
+            return theText;
+        }
+
+        StringBuilder theResult = new StringBuilder(theText.length());
+        int i = 0;
+
+        while (i < theText.length()) {
+            char theChar = theText.charAt(i);
+            int theEnd = theChar == '&' ? theText.indexOf(';', i) : -1;
+
+            if (theEnd > i && theEnd - i <= 10) {
+                String theEntity = theText.substring(i + 1, theEnd);
+                int theCode = -1;
+
+                if (theEntity.equals("amp")) {
+                    theCode = '&';
+                } else if (theEntity.equals("lt")) {
+                    theCode = '<';
+                } else if (theEntity.equals("gt")) {
+                    theCode = '>';
+                } else if (theEntity.equals("quot")) {
+                    theCode = '"';
+                } else if (theEntity.equals("apos")) {
+                    theCode = '\'';
+                } else if (theEntity.equals("nbsp")) {
+                    theCode = ' ';
+                } else if (theEntity.startsWith("#")) {
+                    try {
+                        theCode = theEntity.startsWith("#x") || theEntity.startsWith("#X")
+                                ? Integer.parseInt(theEntity.substring(2), 16)
+                                : Integer.parseInt(theEntity.substring(1));
+                    } catch (NumberFormatException ex) {
+                        theCode = -1;
+                    }
+                }
+
+                if (theCode >= 0 && theCode <= Character.MAX_CODE_POINT) {
+                    theResult.appendCodePoint(theCode);
+                    i = theEnd + 1;
+                    continue;
+                }
+            }
+
+            theResult.append(theChar);
+            ++i;
+        }
+
+        return theResult.toString();
+    }
+}
@@ -0,0 +1,143 @@
+package randomwebwalk.http;
+
+import java.util.Locale;
+import randomwebwalk.browser.LanguageVerdict;
+
+/**
+ *
+ * @author al
+ * What a HEAD (or range GET) request found out about a candidate link
+ * without loading it - enough to predict whether following it would fail.
+ * A link is predicted to succeed if the server answers with a success (after
+ * redirects) with html (or an undeclared type) and any Content-Language is
+ * english. Links that are predicted to succeed are ranked by how sure that
+ * is (english declared first) and then by how quickly the server answered.
+ * @invariant - immutable.
+ */
+public class ProbeResult implements Comparable<ProbeResult> {
+
+    // why a link is predicted to fail (or none)
+    public enum Outcome {
+
+        ok,
+        notFound,
+        permissionDenied,
+        notHtml,
+        notEnglish,
+        timedOut,
+        failed
+    };
+    private final String theURL;
+    private final Outcome theOutcome;
+    private final int theStatusCode;
+    private final String theContentType;
+    private final String theContentLanguage;
+    private final long theProbeTime;
+
+    ProbeResult(String newURL,
+            int newStatusCode,
+            String newContentType,
+            String newContentLanguage,
+            long newProbeTime) {
+        theURL = newURL;
+        theStatusCode = newStatusCode;
+        theContentType = newContentType == null ? "" : newContentType;
+        theContentLanguage = newContentLanguage;
+        theProbeTime = newProbeTime;
+        theOutcome = predict();
+    }
+
+    /**
+     * @param newURL - the link probed.
+     * @param newOutcome - timedOut or failed.
+     * @param newProbeTime - how long the probe took (ms).
+     */
+    ProbeResult(String newURL,
+            Outcome newOutcome,
+            long newProbeTime) {
+        theURL = newURL;
+        theStatusCode = -1;
+        theContentType = "";
+        theContentLanguage = null;
+        theProbeTime = newProbeTime;
+        theOutcome = newOutcome;
+    }
+
+    private Outcome predict() {
+        if (theStatusCode == 401 || theStatusCode == 403) {
+            return Outcome.permissionDenied;
+        }
+
+        if (theStatusCode < 200 || theStatusCode >= 300) {
+            return Outcome.notFound;
+        }
+
+        String theType = theContentType.toLowerCase(Locale.ENGLISH);
+
+        if (!theType.isEmpty() && !theType.contains("html")) {
+            return Outcome.notHtml;
+        }
+
+        if (!isEnglishDeclared() && theContentLanguage != null) {
+            return Outcome.notEnglish;
+        }
+
+        return Outcome.ok;
+    }
+
+    private boolean isEnglishDeclared() {
+        return theContentLanguage != null
+                && LanguageVerdict.fromDeclarations(null, null, null,
+                theContentLanguage, null, null).isEnglish();
+    }
+
+    /**
+     * @return - the link probed (as given, before any redirects).
+     */
+    public String getURL() {
+        return theURL;
+    }
+
+    /**
+     * @return - the prediction.
+     */
+    public Outcome getOutcome() {
+        return theOutcome;
+    }
+
+    /**
+     * @return - whether following the link is predicted to succeed.
+     */
+    public boolean isPredictedToSucceed() {
+        return theOutcome == Outcome.ok;
+    }
+
+    /**
+     * @return - how long the probe took (ms).
+     */
+    public long getProbeTime() {
+        return theProbeTime;
+    }
+
+    /**
+     * Best first: predicted successes, english declared, fastest.
+     */
+    public int compareTo(ProbeResult other) {
+        if (isPredictedToSucceed() != other.isPredictedToSucceed()) {
+            return isPredictedToSucceed() ? -1 : 1;
+        }
+
+        if (isEnglishDeclared() != other.isEnglishDeclared()) {
+            return isEnglishDeclared() ? -1 : 1;
+        }
+
+        return theProbeTime < other.theProbeTime ? -1
+                : (theProbeTime == other.theProbeTime ? 0 : 1);
+    }
+
+    @Override
+    public String toString() {
+        return theOutcome + " " + theStatusCode + " " + theContentType
+                + " lang=" + theContentLanguage + " " + theProbeTime + "ms " + theURL;
+    }
+}
@@ -0,0 +1,42 @@
+package randomwebwalk.http;
+
+/**
+ *
+ * @author al
+ * An anchor found by the LinkTokenizer - its href as written in the page
+ * (possibly relative) and its text.
+ * @invariant - immutable.
+ */
+public class TokenizedLink {
+
+    private final String theHref;
+    private final String theText;
+
+    /**
+     * @param newHref - the href attribute (entities decoded).
+     * @param newText - the text of the anchor.
+     */
+    TokenizedLink(String newHref, String newText) {
+        theHref = newHref;
+        theText = newText;
+    }
+
+    /**
+     * @return - the href as written in the page.
+     */
+    public String getHref() {
+        return theHref;
+    }
+
+    /**
+     * @return - the text displayed for the link.
+     */
+    public String getText() {
+        return theText;
+    }
+
+    @Override
+    public String toString() {
+        return "TokenizedLink{" + "theHref=" + theHref + ", theText=" + theText + '}';
+    }
+}
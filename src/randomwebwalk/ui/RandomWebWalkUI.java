@@ -9,13 +9,14 @@ import java.net.URL;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.swing.*;
-import randomwebwalk.RandomWebWalkController;
+import randomwebwalk.WalkerFleet;
 
 /*
  * User interface class for random web walker.
  * Simple interface that includes: an input field for the start URL
  * a status display text field
  * two buttons indicating whether the program is running pausec or stopped.
+ * The buttons play, pause and stop the whole fleet of walkers.
  */
 
 public class RandomWebWalkUI extends JFrame {
@@ -32,13 +33,12 @@ public class RandomWebWalkUI extends JFrame {
     JLabel passwordLabel;
     JButton playPauseButton;
     JButton stopButton;
-    Thread taskThread = null;
     PlayPauseListener thePlayPauseListener = null;
     StopListener theStopListener = null;
     String idString = null;
     String passwordString = null;
     URL initialURL = null;
-    RandomWebWalkController theController = null;
+    WalkerFleet theFleet = null;
 
     // @param images - needs to be three images at least
     public RandomWebWalkUI(BufferedImage[] images) {
@@ -50,8 +50,8 @@ public class RandomWebWalkUI extends JFrame {
 
     public void start() {
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
-        if (theController != null
-                && theController.needsStartPage()) {
+        if (theFleet != null
+                && theFleet.needsStartPage()) {
             getContentPane().add(getStartPagePanel(), "First");
         }
         getContentPane().add(getLabel());
@@ -66,8 +66,8 @@ public class RandomWebWalkUI extends JFrame {
             initialURL = null;
             boolean isValidURL = false;
 
-            if (theController != null) {
-                if (theController.needsStartPage()) {
+            if (theFleet != null) {
+                if (theFleet.needsStartPage()) {
                     String initialURLStr = startPageTextField.getText();
 
                     try {
@@ -75,7 +75,7 @@ public class RandomWebWalkUI extends JFrame {
                             if(initialURLStr.contains("http://")){
                                 initialURL = new URL(initialURLStr);
                             } else {
-                                String theFullURLStr = theController.getBaseURL() + initialURLStr;
+                                String theFullURLStr = theFleet.getBaseURL() + initialURLStr;
                                 initialURL = new URL(theFullURLStr);                                
                             }
                             isValidURL = true;
@@ -101,8 +101,8 @@ public class RandomWebWalkUI extends JFrame {
         if (isPlaying()) {
             playPauseButton.setIcon(playIcon);
 
-            if (theController != null) {
-                theController.pauseTask();
+            if (theFleet != null) {
+                theFleet.pause();
             }
 
             System.out.println("pause - setting icon to play");
@@ -110,20 +110,15 @@ public class RandomWebWalkUI extends JFrame {
     }
 
     public void stop() {
-        if (theController != null) {
-            theController.stopTask();
+        if (theFleet != null) {
+            theFleet.stop();
         }
         System.out.println("stop - setting icon to play");
         playPauseButton.setIcon(playIcon);
     }
 
     public boolean isPlaying() {
-        if (taskThread != null
-                && taskThread.isAlive()) {
-            return true;
-        } else {
-            return false;
-        }
+        return theFleet != null && theFleet.isPlaying();
     }
 
     private void walk() {
@@ -131,14 +126,9 @@ public class RandomWebWalkUI extends JFrame {
             System.out.println("Thread is running - not starting new task");
         } else {
             WalkStatusDisplay theStatusDisplay = new JLabelWrapper(statusLabel);
-            theController.setNotificationDisplay(theStatusDisplay);
             PlayPauseDisplay thePlayPauseDisplay = new JButtonWrapper(playPauseButton, playIcon);
-            theController.setPlayPauseDisplay(thePlayPauseDisplay);
-            theController.setInitialURL(initialURL);
-            taskThread = new Thread(theController);
-
-            taskThread.setPriority(Thread.NORM_PRIORITY);
-            taskThread.start();
+            theFleet.setDisplays(theStatusDisplay, thePlayPauseDisplay);
+            theFleet.play(initialURL);
         }
     }
 
@@ -210,7 +200,7 @@ public class RandomWebWalkUI extends JFrame {
         return panel;
     }
 
-    public void setController(RandomWebWalkController newController) {
-        theController = newController;
+    public void setFleet(WalkerFleet newFleet) {
+        theFleet = newFleet;
     }
 }
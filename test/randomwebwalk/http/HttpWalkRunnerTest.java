@@ -0,0 +1,126 @@
+package randomwebwalk.http;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Logger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import randomwebwalk.RandomWebWalkRunner.WalkStatus;
+import randomwebwalk.RandomWebWalkRunner.WalkType;
+import randomwebwalk.browser.UrlCanonicalizer;
+import randomwebwalk.browser.VisitedUrlSet;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author al
+ * Walks pages served by an embedded http server.
+ */
+public class HttpWalkRunnerTest {
+
+    private HttpServer theServer;
+    private String theServerURL;
+    private final List<String> theRequests = Collections.synchronizedList(new ArrayList<String>());
+    private final UrlCanonicalizer theCanonicalizer = new UrlCanonicalizer();
+    private final VisitedUrlSet visitedUrls = new VisitedUrlSet(1000, null);
+    private HttpWalkRunner theRunner;
+
+    @Before
+    public void setUp() throws IOException {
+        theServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        theServer.createContext("/", new HttpHandler() {
+
+            public void handle(HttpExchange theExchange) throws IOException {
+                String thePath = theExchange.getRequestURI().getPath();
+                theRequests.add(thePath);
+
+                if (thePath.equals("/start")) {
+                    // only the base resolved link can be walked
+                    send(theExchange, 200, "<html lang=\"en\"><head><title>Start</title>"
+                            + "<base href=\"/dir/\"></head><body>"
+                            + "<a href=\"page.html\">Page</a>"
+                            + "<a href=\"edit.html\">edit</a>"
+                            + "<a href=\"login.html\">Log in</a>"
+                            + "<a href=\"javascript:void(0)\">Script</a>"
+                            + "<a href=\"mailto:someone@example.com\">Mail</a>"
+                            + "</body></html>");
+                } else if (thePath.equals("/dir/page.html")) {
+                    send(theExchange, 200, "<html lang=\"en\"><body>"
+                            + "<a href=\"/missing\">1</a><a href=\"/missing\">2</a><a href=\"/missing\">3</a>"
+                            + "<a href=\"/missing\">4</a><a href=\"/missing\">5</a>"
+                            + "</body></html>");
+                } else {
+                    send(theExchange, 404, "<html><body>Not found</body></html>");
+                }
+            }
+        });
+        theServer.start();
+        theServerURL = "http://127.0.0.1:" + theServer.getAddress().getPort();
+
+        theRunner = new HttpWalkRunner(WalkType.free, "", Logger.getAnonymousLogger());
+        theRunner.setFetcher(new HttpFetcher(5000, 5000));
+        theRunner.setCanonicalizer(theCanonicalizer);
+        theRunner.setVisitedUrls(visitedUrls);
+        theRunner.setSeed(1);
+    }
+
+    @After
+    public void tearDown() {
+        theRunner.stop();
+        theServer.stop(0);
+    }
+
+    private static void send(HttpExchange theExchange, int theCode, String thePage) throws IOException {
+        byte[] theBytes = thePage.getBytes("UTF-8");
+        theExchange.getResponseHeaders().set("Content-Type", "text/html; charset=UTF-8");
+        theExchange.sendResponseHeaders(theCode, theBytes.length);
+        OutputStream out = theExchange.getResponseBody();
+
+        try {
+            out.write(theBytes);
+        } finally {
+            out.close();
+        }
+    }
+
+    @Test
+    public void testStepFollowsLinkResolvedAgainstBase() throws IOException {
+        theRunner.setInitialURL(new URL(theServerURL + "/start"));
+        theRunner.startUp(null, null, null);
+
+        assertTrue(theRunner.isStarted());
+        assertEquals(WalkStatus.successfulStep, theRunner.checkStatus());
+        assertTrue(visitedUrls.contains(theCanonicalizer.fingerprint(theServerURL + "/start")));
+
+        theRunner.step();
+
+        assertEquals(WalkStatus.successfulStep, theRunner.checkStatus());
+        assertTrue(visitedUrls.contains(theCanonicalizer.fingerprint(theServerURL + "/dir/page.html")));
+        assertEquals(Collections.singletonList("/dir/page.html"), theRequests.subList(1, theRequests.size()));
+    }
+
+    @Test
+    public void testStepToMissingPageStaysPut() throws IOException {
+        theRunner.setInitialURL(new URL(theServerURL + "/dir/page.html"));
+        theRunner.startUp(null, null, null);
+        theRunner.step();
+
+        assertEquals(WalkStatus.pageNotFound, theRunner.checkStatus());
+        assertFalse(visitedUrls.contains(theCanonicalizer.fingerprint(theServerURL + "/missing")));
+
+        theRunner.goBack();
+        theRunner.step();
+
+        assertEquals(WalkStatus.pageNotFound, theRunner.checkStatus());
+        assertEquals(3, theRequests.size());
+    }
+}
@@ -0,0 +1,121 @@
+package randomwebwalk.http;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author al
+ */
+public class LinkTokenizerTest {
+
+    private static HtmlSummary tokenize(String thePage, int theLinkLimit, Random theRandom) throws IOException {
+        return new LinkTokenizer(new StringReader(thePage), theLinkLimit, 2000, theRandom).tokenize();
+    }
+
+    private static String anchors(int theCount) {
+        StringBuilder theResult = new StringBuilder("<html><body>");
+
+        for (int i = 0; i < theCount; ++i) {
+            theResult.append("<a href=\"page").append(i).append(".html\">Page ").append(i).append("</a>\n");
+        }
+
+        return theResult.append("</body></html>").toString();
+    }
+
+    @Test
+    public void testRelativeLinksAreKeptAsWritten() throws IOException {
+        HtmlSummary theSummary = tokenize("<html lang=\"en\"><head><title> The  Title </title></head><body>"
+                + "<a href=\"../up.html\">Up</a>"
+                + "<A HREF='/root.html'>  Root\n page </A>"
+                + "<a href=\"?q=1&amp;r=2\">Query</a>"
+                + "<a href=\"#top\">Top</a>"
+                + "<a name=\"anchor\">no href</a>"
+                + "</body></html>", 0, new Random(1));
+        List<TokenizedLink> theLinks = theSummary.getLinks();
+
+        assertEquals("The Title", theSummary.getTitle());
+        assertEquals(4, theSummary.getLinkCount());
+        assertEquals(4, theLinks.size());
+        assertEquals("../up.html", theLinks.get(0).getHref());
+        assertEquals("Up", theLinks.get(0).getText());
+        assertEquals("/root.html", theLinks.get(1).getHref());
+        assertEquals("Root page", theLinks.get(1).getText());
+        assertEquals("?q=1&r=2", theLinks.get(2).getHref());
+        assertEquals("#top", theLinks.get(3).getHref());
+    }
+
+    @Test
+    public void testLinksInScriptsAndCommentsAreSkipped() throws IOException {
+        HtmlSummary theSummary = tokenize("<html><body>"
+                + "<script>document.write('<a href=\"script.html\">x</a>');</script>"
+                + "<!-- <a href=\"comment.html\">x</a> -->"
+                + "<a href=\"real.html\">Real</a>"
+                + "</body></html>", 0, new Random(1));
+
+        assertEquals(1, theSummary.getLinkCount());
+        assertEquals("real.html", theSummary.getLinks().get(0).getHref());
+    }
+
+    @Test
+    public void testBaseHref() throws IOException {
+        HtmlSummary theSummary = tokenize("<html><head>"
+                + "<base href=\" http://example.com/dir/?a=1&amp;b=2 \">"
+                + "<base href=\"http://example.com/other/\">"
+                + "</head><body><a href=\"page.html\">Page</a></body></html>", 0, new Random(1));
+
+        assertEquals("http://example.com/dir/?a=1&b=2", theSummary.getBaseHref());
+        assertEquals("page.html", theSummary.getLinks().get(0).getHref());
+    }
+
+    @Test
+    public void testNoBaseHref() throws IOException {
+        HtmlSummary theSummary = tokenize("<html><head><base target=\"_blank\"></head>"
+                + "<body><a href=\"page.html\">Page</a></body></html>", 0, new Random(1));
+
+        assertNull(theSummary.getBaseHref());
+    }
+
+    @Test
+    public void testSampleKeepsLimitAndCountsAll() throws IOException {
+        HtmlSummary theSummary = tokenize(anchors(1000), 10, new Random(1));
+        Set<String> theHrefs = new HashSet<String>();
+
+        for (TokenizedLink theLink : theSummary.getLinks()) {
+            theHrefs.add(theLink.getHref());
+        }
+
+        assertEquals(1000, theSummary.getLinkCount());
+        assertEquals(10, theSummary.getLinks().size());
+        assertEquals(10, theHrefs.size());
+    }
+
+    @Test
+    public void testSampleIsUniform() throws IOException {
+        final int theLinkCount = 20;
+        final int theLimit = 5;
+        final int theRuns = 4000;
+        String thePage = anchors(theLinkCount);
+        Random theRandom = new Random(42);
+        int[] theKeptCounts = new int[theLinkCount];
+
+        for (int i = 0; i < theRuns; ++i) {
+            for (TokenizedLink theLink : tokenize(thePage, theLimit, theRandom).getLinks()) {
+                String theHref = theLink.getHref();
+                ++theKeptCounts[Integer.parseInt(theHref.substring(4, theHref.indexOf('.')))];
+            }
+        }
+
+        // each link is kept with probability 1/4 - 1000 times expected, sd about 27
+        for (int i = 0; i < theLinkCount; ++i) {
+            assertTrue("link " + i + " kept " + theKeptCounts[i] + " times",
+                    theKeptCounts[i] > 850 && theKeptCounts[i] < 1150);
+        }
+    }
+}